@@ -1,10 +1,21 @@
 package ast;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import csem.Beta;
 import csem.Delta;
+import scanner.Literal_Codec;
 
 /*
  * Abstract Syntax Tree:
@@ -13,95 +24,278 @@ import csem.Delta;
  //group 44 
 public class AST{
   public AST_Nd root;
-  private ArrayDeque<PendingDeltaBody> pendingDeltaQ;
   private boolean standardized;
-  private Delta currentDelta;
-  private Delta rootDelta;
-  private int deltaIndex;
+  private ForkJoinPool pool; //standardize and build the deltas on it, if set
+
+  private static final int MIN_TASK_NODES = 4096; //smallest subtree forked as a task
+  private static final int MAX_SURPLUS_TASKS = 2; //fork only while fewer tasks wait
+  private static final int SMALL = -1; //a subtree with fewer than MIN_TASK_NODES nodes
+
+  //print names split around their %s, so a node is printed without formatting
+  private static final String[] PRINT_BEFORE_VALUE = new String[AST_Nd_Type.values().length];
+  private static final String[] PRINT_AFTER_VALUE = new String[PRINT_BEFORE_VALUE.length];
+  static{
+    for(AST_Nd_Type type: AST_Nd_Type.values()){
+      String printName = type.getPrintName();
+      int value = printName.indexOf("%s");
+      PRINT_BEFORE_VALUE[type.ordinal()] = value<0 ? printName : printName.substring(0, value);
+      PRINT_AFTER_VALUE[type.ordinal()] = value<0 ? null : printName.substring(value+2);
+    }
+  }
+
+  private static final String LINE_SEPARATOR = System.lineSeparator(); //println's, for the nodes without a value
 
   public AST(AST_Nd node){
     this.root = node;
   }
 
+  /**
+   * A tree that is standardized already, e.g. by the parser as it was built.
+   */
+  public AST(AST_Nd node, boolean standardized){
+    this.root = node;
+    this.standardized = standardized;
+  }
+
   /**
    * Prints the tree nodes in pre-order style.
    */
   public void print(){
-    preOrderPrint(root,"");
+    try{
+      Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1<<20);
+      print(out);
+      out.flush();
+    }catch(IOException e){
+      throw new UncheckedIOException(e);
+    }
   }
 
-  private void preOrderPrint(AST_Nd node, String printPrefix){
-    if(node==null)
-      return;
-
-    Print_AST_Node(node, printPrefix);
-    preOrderPrint(node.child,printPrefix+".");
-    preOrderPrint(node.sibling,printPrefix);
+  /**
+   * Prints the tree to out, as print() does. Walks the tree with an explicit stack
+   * of (node, depth), so neither deep nor wide trees run out of Java stack; a
+   * node's sibling is pushed before its child, so the child's whole subtree is
+   * printed first. Every line's dots are written from one shared run of dots.
+   */
+  public void print(Writer out) throws IOException{
+    WalkStack pending = new WalkStack();
+    char[] dots = new char[64];
+    Arrays.fill(dots, '.');
+    if(root!=null)
+      pending.push(root, 0);
+    while(!pending.isEmpty()){
+      AST_Nd node = pending.node();
+      int depth = pending.value();
+      pending.pop();
+      if(depth>dots.length){
+        dots = new char[Math.max(depth, 2*dots.length)];
+        Arrays.fill(dots, '.');
+      }
+      out.write(dots, 0, depth);
+      printNode(out, node);
+      if(node.sibling!=null)
+        pending.push(node.sibling, depth);
+      if(node.child!=null)
+        pending.push(node.child, depth+1);
+    }
   }
 
-  private void Print_AST_Node(AST_Nd node, String printPrefix){
+  private static void printNode(Writer out, AST_Nd node) throws IOException{
+    out.write(PRINT_BEFORE_VALUE[node.type.ordinal()]);
     if(node.type == AST_Nd_Type.IDENTIFIER ||
         node.type == AST_Nd_Type.INTEGER){
-      System.out.printf(printPrefix+node.type.getPrintName()+"\n",node.value);
+      out.write(String.valueOf(node.value));
+      out.write(PRINT_AFTER_VALUE[node.type.ordinal()]);
+      out.write('\n');
+    }
+    else if(node.type == AST_Nd_Type.STRING){
+      out.write(Literal_Codec.escape(node.value));
+      out.write(PRINT_AFTER_VALUE[node.type.ordinal()]);
+      out.write('\n');
     }
-    else if(node.type == AST_Nd_Type.STRING)
-      System.out.printf(printPrefix+node.type.getPrintName()+"\n",node.value);
     else
-      System.out.println(printPrefix+node.type.getPrintName());
+      out.write(LINE_SEPARATOR);
   }
 
   /**
    * Standardize the tree
    */
   public void standardize(){
-    standardizeTree(root);
+    if(standardized)
+      return;
+    if(pool!=null)
+      pool.invoke(new Standardize_Task(root));
+    else
+      standardizeTree(root, false);
     standardized = true;
   }
 
+  /**
+   * Folds the constant expressions of the tree, standardizing it first if it is
+   * not yet; see {@link Constant_Folder}. The program computes the same output.
+   */
+  public void foldConstants(){
+    standardize();
+    new Constant_Folder().fold(root);
+  }
+
+  /**
+   * Makes the curried functions of the tree take their arguments in one tuple,
+   * standardizing it first if it is not yet; see {@link Uncurrier}, which counts
+   * what it raised.
+   */
+  public Uncurrier raiseArities(){
+    standardize();
+    Uncurrier uncurrier = new Uncurrier();
+    uncurrier.uncurry(root);
+    return uncurrier;
+  }
+
+  /**
+   * Inlines the small lambdas of the tree, standardizing it first if it is not
+   * yet; see {@link Inliner}, which counts what it did. Bound names are renamed.
+   */
+  public Inliner inlineLambdas(){
+    standardize();
+    Inliner inliner = new Inliner();
+    inliner.inline(root);
+    return inliner;
+  }
+
+  /**
+   * Binds the pure expressions a function body computes more than once,
+   * standardizing the tree first if it is not yet; see
+   * {@link Common_Subexpression_Eliminator}, which counts what it bound.
+   */
+  public Common_Subexpression_Eliminator eliminateCommonSubexpressions(){
+    standardize();
+    Common_Subexpression_Eliminator eliminator = new Common_Subexpression_Eliminator();
+    eliminator.eliminate(root);
+    return eliminator;
+  }
+
+  /**
+   * Removes the bindings nothing refers to, standardizing the tree first if it is
+   * not yet; see {@link Dead_Binding_Eliminator}, which counts what went.
+   */
+  public Dead_Binding_Eliminator eliminateDeadBindings(){
+    standardize();
+    Dead_Binding_Eliminator eliminator = new Dead_Binding_Eliminator();
+    eliminator.eliminate(root);
+    return eliminator;
+  }
+
+  /**
+   * Standardizes and builds the deltas on the given pool, forking subtrees and
+   * delta bodies of at least MIN_TASK_NODES nodes while the pool is short of work;
+   * null, the default, does both on the calling thread. The tree and the deltas,
+   * indexes included, are the same.
+   */
+  public void setForkJoinPool(ForkJoinPool pool){
+    this.pool = pool;
+  }
+
   /**
    * Standardize the tree bottom-up
    * 
+   * The walk keeps the nodes still to be done on an explicit stack instead of
+   * recursing: a node is pushed once to have its children pushed above it (last
+   * child first, so they are done in order), and is standardized when it comes up
+   * again with all of them done. Every node is standardized once.
+   *
+   * When forking (on a pool), a child of at least MIN_TASK_NODES nodes is forked
+   * instead of pushed while the pool is short of queued work. The value of a
+   * node's entry is 0 until its children are out, or SMALL if it is known to be
+   * too small to fork anything under it (always, when not forking); then it is one
+   * plus the number of tasks forked for it. Those tasks are the last ones on
+   * forked when the node comes up again, as those of the nodes above it have been
+   * joined by then.
    */
-  private void standardizeTree(AST_Nd node){ //
-    //standardize the children first
-    if(node.child!=null){
-      AST_Nd childNode = node.child;
-      while(childNode!=null){
-        standardizeTree(childNode);
-        childNode = childNode.sibling;
+  private static void standardizeTree(AST_Nd node, boolean forking){ //
+    WalkStack pending = new WalkStack();
+    WalkStack children = new WalkStack();
+    ArrayList<Standardize_Task> forked = new ArrayList<Standardize_Task>();
+    pending.push(node, forking ? 0 : SMALL);
+    while(!pending.isEmpty()){
+      node = pending.node();
+      int value = pending.value();
+      if(value<=0){ //standardize the children first
+        int tasks = 0;
+        for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling){
+          if(value==SMALL || childNode.child==null)
+            children.push(childNode, SMALL);
+          else if(ForkJoinTask.getSurplusQueuedTaskCount()>MAX_SURPLUS_TASKS)
+            children.push(childNode, 0);
+          else if(!hasAtLeast(childNode, MIN_TASK_NODES))
+            children.push(childNode, SMALL);
+          else{
+            Standardize_Task task = new Standardize_Task(childNode);
+            task.fork();
+            forked.add(task);
+            tasks++;
+          }
+        }
+        pending.setValue(1+tasks);
+        while(!children.isEmpty()){ //last child first
+          pending.push(children.node(), children.value());
+          children.pop();
+        }
+      }
+      else{ //. now standardize the current node
+        for(int tasks=value-1;tasks>0;tasks--)
+          forked.remove(forked.size()-1).join();
+        pending.pop();
+        standardizeNode(node);
       }
     }
+  }
 
-    //. now standardize the current node
+  /**
+   * Standardizes a node whose children are standardized already, as the parser
+   * does when it reduces a production. No rule looks above the node it rewrites,
+   * so doing every node as it is built gives the tree standardize() would.
+   */
+  public static void standardizeReduced(AST_Nd node){
+    standardizeNode(node);
+  }
+
+  private static void standardizeLet(AST_Nd node){
+    //       LET              GAMMA
+    //     /     \           /     \
+    //    EQUAL   P   ->   LAMBDA   E
+    //   /   \             /    \
+    //  X     E           X      P
+    AST_Nd equalNode = node.child;
+    if(equalNode.type!=AST_Nd_Type.EQUAL)
+      throw new ST_expct("LET/WHERE: left child is not EQUAL"); //safety
+    AST_Nd e = equalNode.child.sibling;
+    equalNode.child.setSibling(equalNode.sibling);
+    equalNode.setSibling(e);
+    equalNode.setType(AST_Nd_Type.LAMBDA);
+    node.setType(AST_Nd_Type.GAMMA);
+  }
+
+  /**
+   * Standardizes a node whose children are standardized.
+   */
+  private static void standardizeNode(AST_Nd node){
     switch(node.type){
-      case LET:
-        //       LET              GAMMA
-        //     /     \           /     \
-        //    EQUAL   P   ->   LAMBDA   E
-        //   /   \             /    \
-        //  X     E           X      P
-        AST_Nd equalNode = node.child;
-        if(equalNode.type!=AST_Nd_Type.EQUAL)
-          throw new ST_expct("LET/WHERE: left child is not EQUAL"); //safety
-        AST_Nd e = equalNode.child.sibling;
-        equalNode.child.setSibling(equalNode.sibling);
-        equalNode.setSibling(e);
-        equalNode.setType(AST_Nd_Type.LAMBDA);
-        node.setType(AST_Nd_Type.GAMMA);
-        break;
       case WHERE:
-        //make this is a LET node and standardize that
+        //make this is a LET node and standardize that; its children are
+        //standardized already, and stay so
         //       WHERE               LET
         //       /   \             /     \
         //      P    EQUAL   ->  EQUAL   P
         //           /   \       /   \
         //          X     E     X     E
-        equalNode = node.child.sibling;
+        AST_Nd equalNode = node.child.sibling;
         node.child.setSibling(null);
         equalNode.setSibling(node.child);
         node.setChild(equalNode);
         node.setType(AST_Nd_Type.LET);
-        standardizeTree(node);
+        standardizeLet(node);
+        break;
+      case LET:
+        standardizeLet(node);
         break;
       case FCNFORM:
         //       FCN_FORM                EQUAL
@@ -167,9 +361,15 @@ public class AST{
         commaNode.setType(AST_Nd_Type.COMMA);
         AST_Nd tauNode = new AST_Nd();
         tauNode.setType(AST_Nd_Type.TAU);
+        AST_Nd lastX = null, lastE = null;
         AST_Nd childNode = node.child;
         while(childNode!=null){
-          populateCommaAndTauNode(childNode, commaNode, tauNode);
+          if(childNode.type!=AST_Nd_Type.EQUAL)
+            throw new ST_expct("SIMULTDEF: one of the children is not EQUAL"); //safety
+          AST_Nd x = childNode.child;
+          AST_Nd e = x.sibling;
+          lastX = appendChild(commaNode, lastX, x);
+          lastE = appendChild(tauNode, lastE, e);
           childNode = childNode.sibling;
         }
         commaNode.setSibling(tauNode);
@@ -202,6 +402,7 @@ public class AST{
         xWithSiblingGamma.setSibling(gammaNode);
         xWithSiblingGamma.setType(x.type);
         xWithSiblingGamma.setValue(x.value);
+        xWithSiblingGamma.setSymId(x.symId);
         node.setChild(xWithSiblingGamma);
         node.setType(AST_Nd_Type.EQUAL);
         break;
@@ -218,93 +419,97 @@ public class AST{
     }
   }
 
-  private void populateCommaAndTauNode(AST_Nd equalNode, AST_Nd commaNode, AST_Nd tauNode){
-    if(equalNode.type!=AST_Nd_Type.EQUAL)
-      throw new ST_expct("SIMULTDEF: one of the children is not EQUAL"); //safety
-    AST_Nd x = equalNode.child;
-    AST_Nd e = x.sibling;
-    setChild(commaNode, x);
-    setChild(tauNode, e);
-  }
-
   /**
-   * Either creates a new child of the parent or attaches the child node passed in
-   * as the last sibling of the parent's childs
+   * Attaches childNode as the last child of parentNode, after lastChild (null if
+   * the parent has no children yet), and returns it, to be passed in as lastChild
+   * next time; the siblings are not walked to find the end.
    */
-  private void setChild(AST_Nd parentNode, AST_Nd childNode){
-    if(parentNode.child==null)
+  private static AST_Nd appendChild(AST_Nd parentNode, AST_Nd lastChild, AST_Nd childNode){
+    if(lastChild==null)
       parentNode.setChild(childNode);
-    else{
-      AST_Nd lastSibling = parentNode.child;
-      while(lastSibling.sibling!=null)
-        lastSibling = lastSibling.sibling;
-      lastSibling.setSibling(childNode);
-    }
+    else
+      lastChild.setSibling(childNode);
     childNode.setSibling(null);
+    return childNode;
   }
 
-  private AST_Nd constructLambdaChain(AST_Nd node){
+  /**
+   * Turns V1 V2 ... Vn E (siblings) into LAMBDA(V1, LAMBDA(V2, ... LAMBDA(Vn, E))),
+   * one LAMBDA per variable, outermost first; a lone node is returned as it is.
+   */
+  private static AST_Nd constructLambdaChain(AST_Nd node){
     if(node.sibling==null)
       return node;
     
     AST_Nd lambdaNode = new AST_Nd();
     lambdaNode.setType(AST_Nd_Type.LAMBDA);
     lambdaNode.setChild(node);
-    if(node.sibling.sibling!=null)
-      node.setSibling(constructLambdaChain(node.sibling));
+    while(node.sibling.sibling!=null){ //more than E after node
+      AST_Nd innerLambdaNode = new AST_Nd();
+      innerLambdaNode.setType(AST_Nd_Type.LAMBDA);
+      innerLambdaNode.setChild(node.sibling);
+      node.setSibling(innerLambdaNode);
+      node = innerLambdaNode.child;
+    }
     return lambdaNode;
   }
 
   /**
    * Creates delta structures from the standardized tree
    * 
+   * The bodies are built breadth first: the root's, then those of the deltas met
+   * in it, and so on. Each records the deltas met in it, in order, and the deltas
+   * are numbered from those lists at the end in the same order, so building the
+   * bodies on a pool gives the same indexes.
    */
   public Delta createDeltas(){
-    pendingDeltaQ = new ArrayDeque<PendingDeltaBody>();
-    deltaIndex = 0;
-    currentDelta = createDelta(root);
-    processPendingDeltaStack();
-    return rootDelta;
-  }
-
-  private Delta createDelta(AST_Nd startBodyNode){
-    
-    PendingDeltaBody pendingDelta = new PendingDeltaBody();
-    pendingDelta.startNode = startBodyNode;
-    pendingDelta.body = new Stack<AST_Nd>();
-    pendingDeltaQ.add(pendingDelta);
-    
-    Delta d = new Delta();
-    d.setBody(pendingDelta.body);
-    d.setIndex(deltaIndex++);
-    currentDelta = d;
-    
-    if(startBodyNode==root)
-      rootDelta = currentDelta;
-    
-    return d;
+    PendingDeltaBody rootBody = new PendingDeltaBody(new Delta(), root);
+    if(pool!=null)
+      pool.invoke(new Delta_Body_Task(rootBody));
+    else{
+      ArrayDeque<PendingDeltaBody> pendingDeltaQ = new ArrayDeque<PendingDeltaBody>();
+      pendingDeltaQ.add(rootBody);
+      while(!pendingDeltaQ.isEmpty()){
+        PendingDeltaBody pendingDeltaBody = pendingDeltaQ.pop();
+        buildDeltaBody(pendingDeltaBody.startNode, pendingDeltaBody.delta.body, pendingDeltaBody);
+        pendingDeltaQ.addAll(pendingDeltaBody.nested);
+      }
+    }
+    numberDeltas(rootBody);
+    return rootBody.delta;
   }
 
-  private void processPendingDeltaStack(){
+  private static void numberDeltas(PendingDeltaBody rootBody){
+    ArrayDeque<PendingDeltaBody> pendingDeltaQ = new ArrayDeque<PendingDeltaBody>();
+    int deltaIndex = 0;
+    rootBody.delta.setIndex(deltaIndex++);
+    pendingDeltaQ.add(rootBody);
     while(!pendingDeltaQ.isEmpty()){
-      PendingDeltaBody pendingDeltaBody = pendingDeltaQ.pop();
-      buildDeltaBody(pendingDeltaBody.startNode, pendingDeltaBody.body);
+      for(PendingDeltaBody nested: pendingDeltaQ.pop().nested){
+        nested.delta.setIndex(deltaIndex++);
+        pendingDeltaQ.add(nested);
+      }
     }
   }
-  
-  private void buildDeltaBody(AST_Nd node, Stack<AST_Nd> body){
+
+  /**
+   * Adds node to body; the deltas met are added to owner's nested ones, with their
+   * bodies still to be built.
+   */
+  private static void buildDeltaBody(AST_Nd node, Stack<AST_Nd> body, PendingDeltaBody owner){
     if(node.type==AST_Nd_Type.LAMBDA){ //create a new delta
-      Delta d = createDelta(node.child.sibling); 
+      Delta d = new Delta();
+      owner.nested.add(new PendingDeltaBody(d, node.child.sibling));
       if(node.child.type==AST_Nd_Type.COMMA){ 
         AST_Nd commaNode = node.child;
         AST_Nd childNode = commaNode.child;
         while(childNode!=null){
-          d.addBoundVars(childNode.value);
+          d.addBoundVars(childNode.value, childNode.symId);
           childNode = childNode.sibling;
         }
       }
       else
-        d.addBoundVars(node.child.value);
+        d.addBoundVars(node.child.value, node.child.symId);
       body.push(d); //add  new delta to the existing delta's body
       return;
     }
@@ -318,12 +523,12 @@ public class AST{
       //Add a Beta node.
       Beta betaNode = new Beta();
       
-      buildDeltaBody(thenNode, betaNode.then_Part);
-      buildDeltaBody(elseNode, betaNode.else_Part);
+      buildDeltaBody(thenNode, betaNode.then_Part, owner);
+      buildDeltaBody(elseNode, betaNode.else_Part, owner);
       
       body.push(betaNode);
       
-      buildDeltaBody(conditionNode, body);
+      buildDeltaBody(conditionNode, body, owner);
       
       return;
     }
@@ -332,14 +537,140 @@ public class AST{
     body.push(node);
     AST_Nd childNode = node.child;
     while(childNode!=null){
-      buildDeltaBody(childNode, body);
+      buildDeltaBody(childNode, body, owner);
       childNode = childNode.sibling;
     }
   }
 
-  private class PendingDeltaBody{
-    Stack<AST_Nd> body;
-    AST_Nd startNode;
+  /**
+   * Whether the subtree under node has at least count nodes; stops counting there.
+   */
+  private static boolean hasAtLeast(AST_Nd node, int count){
+    WalkStack pending = new WalkStack();
+    count--; //node itself; not its siblings
+    if(node.child!=null)
+      pending.push(node.child, 0);
+    while(!pending.isEmpty() && count>0){
+      node = pending.node();
+      pending.pop();
+      count--;
+      if(node.sibling!=null)
+        pending.push(node.sibling, 0);
+      if(node.child!=null)
+        pending.push(node.child, 0);
+    }
+    return count<=0;
+  }
+
+  /**
+   * Standardizes a subtree on a pool: the walk is standardizeTree's, but a child's
+   * subtree that is big enough is forked as a task of its own instead of being
+   * pushed, and joined before its parent is standardized.
+   */
+  private static class Standardize_Task extends RecursiveAction{
+    private static final long serialVersionUID = 1L;
+    private final AST_Nd root;
+
+    Standardize_Task(AST_Nd root){
+      this.root = root;
+    }
+
+    @Override
+    protected void compute(){
+      standardizeTree(root, true);
+    }
+  }
+
+  /**
+   * Builds the body of a delta and, breadth first, those of the deltas met in it,
+   * forking the ones of at least MIN_TASK_NODES nodes as tasks of their own while
+   * the pool is short of queued work. A delta inside a small one is small too.
+   */
+  private static class Delta_Body_Task extends RecursiveAction{
+    private static final long serialVersionUID = 1L;
+    private final PendingDeltaBody first;
+
+    Delta_Body_Task(PendingDeltaBody first){
+      this.first = first;
+    }
+
+    @Override
+    protected void compute(){
+      ArrayDeque<PendingDeltaBody> pendingDeltaQ = new ArrayDeque<PendingDeltaBody>();
+      ArrayList<Delta_Body_Task> forked = new ArrayList<Delta_Body_Task>();
+      pendingDeltaQ.add(first);
+      while(!pendingDeltaQ.isEmpty()){
+        PendingDeltaBody pendingDeltaBody = pendingDeltaQ.pop();
+        buildDeltaBody(pendingDeltaBody.startNode, pendingDeltaBody.delta.body, pendingDeltaBody);
+        for(PendingDeltaBody nested: pendingDeltaBody.nested){
+          if(pendingDeltaBody.small || ForkJoinTask.getSurplusQueuedTaskCount()>MAX_SURPLUS_TASKS)
+            nested.small = pendingDeltaBody.small;
+          else if(!hasAtLeast(nested.startNode, MIN_TASK_NODES))
+            nested.small = true;
+          else{
+            Delta_Body_Task task = new Delta_Body_Task(nested);
+            task.fork();
+            forked.add(task);
+            continue;
+          }
+          pendingDeltaQ.add(nested);
+        }
+      }
+      for(Delta_Body_Task task: forked)
+        task.join();
+    }
+  }
+
+  /**
+   * Stack of (node, int) pairs for the walks that would otherwise recurse as deep
+   * as the tree.
+   */
+  private static class WalkStack{
+    private AST_Nd[] nodes = new AST_Nd[64];
+    private int[] values = new int[64];
+    private int size;
+
+    void push(AST_Nd node, int value){
+      if(size==nodes.length){
+        nodes = Arrays.copyOf(nodes, 2*size);
+        values = Arrays.copyOf(values, 2*size);
+      }
+      nodes[size] = node;
+      values[size++] = value;
+    }
+
+    boolean isEmpty(){
+      return size==0;
+    }
+
+    AST_Nd node(){
+      return nodes[size-1];
+    }
+
+    int value(){
+      return values[size-1];
+    }
+
+    void setValue(int value){
+      values[size-1] = value;
+    }
+
+    void pop(){
+      nodes[--size] = null;
+    }
+  }
+
+  private static class PendingDeltaBody{
+    final Delta delta;
+    final AST_Nd startNode;
+    final ArrayList<PendingDeltaBody> nested = new ArrayList<PendingDeltaBody>(); //deltas met in the body, in order
+    boolean small; //fewer than MIN_TASK_NODES nodes, so never forked
+
+    PendingDeltaBody(Delta delta, AST_Nd startNode){
+      this.delta = delta;
+      this.startNode = startNode;
+      delta.setBody(new Stack<AST_Nd>());
+    }
   }
 
   public boolean isStandardized(){
@@ -0,0 +1,489 @@
+package ast;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Stack;
+
+import csem.Beta;
+import csem.Delta;
+import scanner.Sym_Table;
+
+/**
+ * Abstract syntax tree stored as parallel arrays instead of one AST_Nd per node.
+ *
+ * A node is an index: its type (the ordinal of its AST_Nd_Type), first child, next
+ * sibling and line are kept in int arrays, and its text in a pool of literals
+ * interned per tree, which also holds the symbol id of a name and the value of an
+ * integer. A node takes 20 bytes in the arrays; an AST_Nd object takes about twice
+ * that, and every step of a walk over it follows a pointer.
+ *
+ * The parser can build the tree here (Parser.buildArena), and it can be
+ * standardized and turned into deltas here; only the nodes the CSE machine works
+ * on are made into AST_Nd objects, when the deltas are built.
+ */
+public class AST_Arena{
+  public static final int NONE = -1;
+
+  private static final AST_Nd_Type[] TYPES = AST_Nd_Type.values();
+
+  private int[] type = new int[1024];
+  private int[] child = new int[1024];
+  private int[] sibling = new int[1024];
+  private int[] line = new int[1024];
+  private int[] literal = new int[1024]; //index into the literal pool, or NONE
+  private int size;
+
+  private final HashMap<String, Integer> literalIndex = new HashMap<String, Integer>();
+  private String[] literals = new String[64];
+  private int[] literalSymIds = new int[64];
+  private int[] literalIntValues = new int[64];
+  private int literalCount;
+
+  private int root = NONE;
+  private boolean standardized;
+
+  private AST_Nd[] objects; //node i as an AST_Nd, while deltas are built
+  private ArrayDeque<PendingDeltaBody> pendingDeltaQ;
+  private Delta rootDelta;
+  private int deltaIndex;
+
+  /**
+   * Adds a leaf; value is the text of the node, symId and intValue those of a name
+   * and of an integer.
+   */
+  public int addLeaf(AST_Nd_Type nodeType, String value, int symId, int intValue, int sourceLineNumber){
+    int node = newNode(nodeType);
+    line[node] = sourceLineNumber;
+    if(value!=null)
+      literal[node] = intern(value, symId, intValue);
+    return node;
+  }
+
+  /**
+   * Adds a node whose children are nodes[first..first+count), in order; like the
+   * parser's nodes, it is on the line of its first child.
+   */
+  public int addNode(AST_Nd_Type nodeType, int[] nodes, int first, int count){
+    int node = newNode(nodeType);
+    if(count>0){
+      child[node] = nodes[first];
+      for(int i=first;i<first+count-1;i++)
+        sibling[nodes[i]] = nodes[i+1];
+      sibling[nodes[first+count-1]] = NONE;
+      line[node] = line[nodes[first]];
+    }
+    return node;
+  }
+
+  public void setRoot(int root){
+    this.root = root;
+  }
+
+  /**
+   * Sets the root of a tree that is standardized already, e.g. by the parser as it
+   * was built.
+   */
+  public void setRoot(int root, boolean standardized){
+    this.root = root;
+    this.standardized = standardized;
+  }
+
+  public int getRoot(){
+    return root;
+  }
+
+  public int size(){
+    return size;
+  }
+
+  public AST_Nd_Type type(int node){
+    return TYPES[type[node]];
+  }
+
+  public int child(int node){
+    return child[node];
+  }
+
+  public int sibling(int node){
+    return sibling[node];
+  }
+
+  public String value(int node){
+    return literal[node]==NONE ? null : literals[literal[node]];
+  }
+
+  public boolean isStandardized(){
+    return standardized;
+  }
+
+  private int newNode(AST_Nd_Type nodeType){
+    if(size==type.length)
+      resize(size+(size>>1)+16);
+    int node = size++;
+    type[node] = nodeType.ordinal();
+    child[node] = NONE;
+    sibling[node] = NONE;
+    line[node] = 0;
+    literal[node] = NONE;
+    return node;
+  }
+
+  /**
+   * Drops the room kept for nodes still to come.
+   */
+  public void trimToSize(){
+    resize(size);
+  }
+
+  private void resize(int capacity){
+    type = Arrays.copyOf(type, capacity);
+    child = Arrays.copyOf(child, capacity);
+    sibling = Arrays.copyOf(sibling, capacity);
+    line = Arrays.copyOf(line, capacity);
+    literal = Arrays.copyOf(literal, capacity);
+  }
+
+  /**
+   * The literals of a tree are few and repeat a lot, so each text is kept once. A
+   * text is the text of at most one name or integer, so the ids kept with it do
+   * not clash.
+   */
+  private int intern(String value, int symId, int intValue){
+    Integer index = literalIndex.get(value);
+    if(index!=null){
+      if(symId!=Sym_Table.NONE)
+        literalSymIds[index] = symId;
+      if(intValue!=0)
+        literalIntValues[index] = intValue;
+      return index;
+    }
+    if(literalCount==literals.length){
+      literals = Arrays.copyOf(literals, 2*literalCount);
+      literalSymIds = Arrays.copyOf(literalSymIds, 2*literalCount);
+      literalIntValues = Arrays.copyOf(literalIntValues, 2*literalCount);
+    }
+    literals[literalCount] = value;
+    literalSymIds[literalCount] = symId;
+    literalIntValues[literalCount] = intValue;
+    literalIndex.put(value, literalCount);
+    return literalCount++;
+  }
+
+  private void setChild(int node, int childNode){
+    child[node] = childNode;
+  }
+
+  private void setSibling(int node, int siblingNode){
+    sibling[node] = siblingNode;
+  }
+
+  private void setType(int node, AST_Nd_Type nodeType){
+    type[node] = nodeType.ordinal();
+  }
+
+  private boolean is(int node, AST_Nd_Type nodeType){
+    return type[node]==nodeType.ordinal();
+  }
+
+  /**
+   * The same tree as AST_Nd objects.
+   */
+  public AST toAST(){
+    AST_Nd[] nodes = materialize();
+    return new AST(root==NONE ? null : nodes[root], standardized);
+  }
+
+  /**
+   * Makes an AST_Nd for every node, linked as the nodes are, in two passes so it
+   * does not recurse.
+   */
+  private AST_Nd[] materialize(){
+    AST_Nd[] nodes = new AST_Nd[size];
+    for(int i=0;i<size;i++){
+      AST_Nd node = new AST_Nd();
+      AST_Nd_Type nodeType = TYPES[type[i]];
+      node.setType(nodeType);
+      node.setSourceLineNumber(line[i]);
+      if(literal[i]!=NONE){
+        node.setValue(literals[literal[i]]);
+        if(nodeType==AST_Nd_Type.IDENTIFIER)
+          node.setSymId(literalSymIds[literal[i]]);
+        else if(nodeType==AST_Nd_Type.INTEGER)
+          node.setIntValue(literalIntValues[literal[i]]);
+      }
+      nodes[i] = node;
+    }
+    for(int i=0;i<size;i++){
+      if(child[i]!=NONE)
+        nodes[i].setChild(nodes[child[i]]);
+      if(sibling[i]!=NONE)
+        nodes[i].setSibling(nodes[sibling[i]]);
+    }
+    return nodes;
+  }
+
+  /**
+   * Standardize the tree, with the rules of {@link AST#standardize()}.
+   */
+  public void standardize(){
+    if(standardized)
+      return;
+    standardizeTree(root);
+    standardized = true;
+  }
+
+  /**
+   * Post-order walk on an explicit stack, as in AST: a node is standardized when it
+   * comes up the second time, with all its children done, and only then.
+   */
+  private void standardizeTree(int node){
+    int[] pending = new int[64];
+    boolean[] expanded = new boolean[64];
+    int top = 0;
+    int[] children = new int[16];
+    pending[top++] = node;
+    while(top>0){
+      node = pending[top-1];
+      if(!expanded[top-1]){ //standardize the children first
+        expanded[top-1] = true;
+        int count = 0;
+        for(int childNode=child[node];childNode!=NONE;childNode=sibling[childNode]){
+          if(count==children.length)
+            children = Arrays.copyOf(children, 2*count);
+          children[count++] = childNode;
+        }
+        if(top+count>pending.length){
+          pending = Arrays.copyOf(pending, 2*(top+count));
+          expanded = Arrays.copyOf(expanded, pending.length);
+        }
+        for(int i=count-1;i>=0;i--){
+          pending[top] = children[i];
+          expanded[top++] = false;
+        }
+      }
+      else{ //. now standardize the current node
+        top--;
+        standardizeNode(node);
+      }
+    }
+  }
+
+  /**
+   * Standardizes a node whose children are standardized already, as the parser
+   * does when it reduces a production; see {@link AST#standardizeReduced(AST_Nd)}.
+   */
+  public void standardizeReduced(int node){
+    standardizeNode(node);
+  }
+
+  private void standardizeLet(int node){
+    int equalNode = child[node];
+    if(!is(equalNode, AST_Nd_Type.EQUAL))
+      throw new ST_expct("LET/WHERE: left child is not EQUAL"); //safety
+    int e = sibling[child[equalNode]];
+    setSibling(child[equalNode], sibling[equalNode]);
+    setSibling(equalNode, e);
+    setType(equalNode, AST_Nd_Type.LAMBDA);
+    setType(node, AST_Nd_Type.GAMMA);
+  }
+
+  /**
+   * Standardizes a node whose children are standardized; see AST for the pictures.
+   */
+  private void standardizeNode(int node){
+    switch(TYPES[type[node]]){
+      case WHERE:{
+        int equalNode = sibling[child[node]];
+        setSibling(child[node], NONE);
+        setSibling(equalNode, child[node]);
+        setChild(node, equalNode);
+        setType(node, AST_Nd_Type.LET);
+        standardizeLet(node); //its children are standardized
+        return;
+      }
+      case LET:
+        standardizeLet(node);
+        return;
+      case FCNFORM:
+        setSibling(child[node], constructLambdaChain(sibling[child[node]]));
+        setType(node, AST_Nd_Type.EQUAL);
+        return;
+      case AT:{
+        int e1 = child[node];
+        int n = sibling[e1];
+        int e2 = sibling[n];
+        int gammaNode = newNode(AST_Nd_Type.GAMMA);
+        setChild(gammaNode, n);
+        setSibling(n, e1);
+        setSibling(e1, NONE);
+        setSibling(gammaNode, e2);
+        setChild(node, gammaNode);
+        setType(node, AST_Nd_Type.GAMMA);
+        return;
+      }
+      case WITHIN:{
+        if(!is(child[node], AST_Nd_Type.EQUAL) || !is(sibling[child[node]], AST_Nd_Type.EQUAL))
+          throw new ST_expct("WITHIN: one of the children is not EQUAL"); //safety
+        int x1 = child[child[node]];
+        int e1 = sibling[x1];
+        int x2 = child[sibling[child[node]]];
+        int e2 = sibling[x2];
+        int lambdaNode = newNode(AST_Nd_Type.LAMBDA);
+        setSibling(x1, e2);
+        setChild(lambdaNode, x1);
+        setSibling(lambdaNode, e1);
+        int gammaNode = newNode(AST_Nd_Type.GAMMA);
+        setChild(gammaNode, lambdaNode);
+        setSibling(x2, gammaNode);
+        setChild(node, x2);
+        setType(node, AST_Nd_Type.EQUAL);
+        return;
+      }
+      case SIMULTDEF:{
+        int commaNode = newNode(AST_Nd_Type.COMMA);
+        int tauNode = newNode(AST_Nd_Type.TAU);
+        int lastX = NONE;
+        int lastE = NONE;
+        for(int equalNode=child[node];equalNode!=NONE;equalNode=sibling[equalNode]){
+          if(!is(equalNode, AST_Nd_Type.EQUAL))
+            throw new ST_expct("SIMULTDEF: one of the children is not EQUAL"); //safety
+          int x = child[equalNode];
+          int e = sibling[x];
+          if(lastX==NONE)
+            setChild(commaNode, x);
+          else
+            setSibling(lastX, x);
+          if(lastE==NONE)
+            setChild(tauNode, e);
+          else
+            setSibling(lastE, e);
+          lastX = x;
+          lastE = e;
+        }
+        setSibling(lastX, NONE);
+        setSibling(lastE, NONE);
+        setSibling(commaNode, tauNode);
+        setChild(node, commaNode);
+        setType(node, AST_Nd_Type.EQUAL);
+        return;
+      }
+      case REC:{
+        int childNode = child[node];
+        if(!is(childNode, AST_Nd_Type.EQUAL))
+          throw new ST_expct("REC: child is not EQUAL"); //safety
+        int x = child[childNode];
+        int lambdaNode = newNode(AST_Nd_Type.LAMBDA);
+        setChild(lambdaNode, x); //x is already attached to e
+        int yStarNode = newNode(AST_Nd_Type.YSTAR);
+        setSibling(yStarNode, lambdaNode);
+        int gammaNode = newNode(AST_Nd_Type.GAMMA);
+        setChild(gammaNode, yStarNode);
+        int xWithSiblingGamma = newNode(TYPES[type[x]]); //same as x except the sibling is not e but gamma
+        setChild(xWithSiblingGamma, child[x]);
+        setSibling(xWithSiblingGamma, gammaNode);
+        literal[xWithSiblingGamma] = literal[x];
+        setChild(node, xWithSiblingGamma);
+        setType(node, AST_Nd_Type.EQUAL);
+        return;
+      }
+      case LAMBDA:
+        setSibling(child[node], constructLambdaChain(sibling[child[node]]));
+        return;
+      default:
+        return;
+    }
+  }
+
+  /**
+   * V1 V2 ... Vn E becomes LAMBDA(V1, LAMBDA(V2, ... LAMBDA(Vn, E))), built from
+   * the front.
+   */
+  private int constructLambdaChain(int node){
+    if(sibling[node]==NONE)
+      return node;
+    int lambdaNode = newNode(AST_Nd_Type.LAMBDA);
+    setChild(lambdaNode, node);
+    while(sibling[sibling[node]]!=NONE){ //more than E after node
+      int innerLambdaNode = newNode(AST_Nd_Type.LAMBDA);
+      setChild(innerLambdaNode, sibling[node]);
+      setSibling(node, innerLambdaNode);
+      node = child[innerLambdaNode];
+    }
+    return lambdaNode;
+  }
+
+  /**
+   * Creates delta structures from the standardized tree, as
+   * {@link AST#createDeltas()} does. The nodes put on the delta bodies are AST_Nd
+   * objects linked like the arena's, so the CSE machine sees the same structures.
+   */
+  public Delta createDeltas(){
+    objects = materialize();
+    pendingDeltaQ = new ArrayDeque<PendingDeltaBody>();
+    deltaIndex = 0;
+    createDelta(root);
+    processPendingDeltaStack();
+    objects = null;
+    return rootDelta;
+  }
+
+  private Delta createDelta(int startBodyNode){
+    PendingDeltaBody pendingDelta = new PendingDeltaBody();
+    pendingDelta.startNode = startBodyNode;
+    pendingDelta.body = new Stack<AST_Nd>();
+    pendingDeltaQ.add(pendingDelta);
+
+    Delta d = new Delta();
+    d.setBody(pendingDelta.body);
+    d.setIndex(deltaIndex++);
+
+    if(startBodyNode==root)
+      rootDelta = d;
+
+    return d;
+  }
+
+  private void processPendingDeltaStack(){
+    while(!pendingDeltaQ.isEmpty()){
+      PendingDeltaBody pendingDeltaBody = pendingDeltaQ.pop();
+      buildDeltaBody(pendingDeltaBody.startNode, pendingDeltaBody.body);
+    }
+  }
+
+  private void buildDeltaBody(int node, Stack<AST_Nd> body){
+    if(is(node, AST_Nd_Type.LAMBDA)){ //create a new delta
+      Delta d = createDelta(sibling[child[node]]);
+      if(is(child[node], AST_Nd_Type.COMMA)){
+        for(int childNode=child[child[node]];childNode!=NONE;childNode=sibling[childNode])
+          d.addBoundVars(objects[childNode].value, objects[childNode].symId);
+      }
+      else
+        d.addBoundVars(objects[child[node]].value, objects[child[node]].symId);
+      body.push(d); //add new delta to the existing delta's body
+      return;
+    }
+    else if(is(node, AST_Nd_Type.CONDITIONAL)){
+      //cond -> then else becomes then else Beta cond
+      int conditionNode = child[node];
+      int thenNode = sibling[conditionNode];
+      int elseNode = sibling[thenNode];
+
+      Beta betaNode = new Beta();
+      buildDeltaBody(thenNode, betaNode.then_Part);
+      buildDeltaBody(elseNode, betaNode.else_Part);
+      body.push(betaNode);
+      buildDeltaBody(conditionNode, body);
+      return;
+    }
+
+    body.push(objects[node]);
+    for(int childNode=child[node];childNode!=NONE;childNode=sibling[childNode])
+      buildDeltaBody(childNode, body);
+  }
+
+  private static class PendingDeltaBody{
+    Stack<AST_Nd> body;
+    int startNode;
+  }
+}
@@ -1,6 +1,7 @@
 package ast;
 
 import csem.NodeCopier;
+import scanner.Sym_Table;
 
 /**
  * Abstract Syntax Tree node
@@ -12,6 +13,8 @@ public class AST_Nd{
   public AST_Nd child;
   public AST_Nd sibling;
   public int sourceLineNumber;
+  public int symId = Sym_Table.NONE; //interned name of an IDENTIFIER
+  public int intValue; //value of an INTEGER; its value text may be left null
   
   public String getName(){
     return type.name();
@@ -41,6 +44,14 @@ public class AST_Nd{
     this.value = value;
   }
 
+  public void setIntValue(int intValue){
+    this.intValue = intValue;
+  }
+
+  public void setSymId(int symId){
+    this.symId = symId;
+  }
+
   public AST_Nd acceptNode(NodeCopier nodeCopier){
     return nodeCopier.copy(this);
   }
@@ -0,0 +1,509 @@
+package ast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import scanner.Sym_Table;
+
+/**
+ * Binds the pure expressions that a function body computes more than once to a
+ * variable of their own, in place: the body's repeated E becomes
+ * GAMMA(LAMBDA t# ...t#...t#..., E) around the least subtree holding all of them.
+ *
+ * Pure subtrees are hash-consed: equal ones, with each name bound by the same
+ * binding, get the same number. Pure means operators, tuples, and Order, Null,
+ * ItoS, Stem, Stern and the type tests applied to pure expressions. Print, Conc
+ * and aug are not, nor is T N, as T may be a function that prints.
+ *
+ * A pure expression may still fail, e.g. N - 1 for a string N, so E is only
+ * bound where it is evaluated first: its first use must be evaluated before
+ * anything that could print or fail, and not in a branch of a conditional. A
+ * lambda's body is a body of its own; a let's is part of the one around it.
+ * A binding costs a frame, so E is only bound if it saves MIN_SAVED_NODES nodes.
+ */
+public class Common_Subexpression_Eliminator{
+  private static final int MIN_SAVED_NODES = 4; //(uses-1)*(nodes-1) of E
+  private static final int MAX_SCAN_NODES = 1024; //most nodes looked at for E's first use
+
+  private int[] binders = new int[256]; //per symbol id: number of its innermost binding, 0 when free
+  private int numBinders;
+  private int names;
+  private int introducedBindings;
+  private int replacedUses;
+
+  //the nodes of a body, in preorder, for one round
+  private AST_Nd[] nodes = new AST_Nd[256];
+  private int[] parents = new int[256];
+  private int[] depths = new int[256];
+  private int[] sizes = new int[256]; //of the subtree, in nodes of this body
+  private int[] numbers = new int[256]; //value number of a pure subtree, or -1
+  private int[] branches = new int[256]; //innermost branch (its index) or 0 for none
+  private boolean[] bound = new boolean[256]; //a name in scope or a builtin
+  private int[] marks = new int[256];
+  private boolean[] taken = new boolean[256]; //in a use replaced this round
+  private int numNodes;
+  private final IdentityHashMap<AST_Nd, Integer> indexes = new IdentityHashMap<AST_Nd, Integer>();
+  private final HashMap<String, Integer> valueNumbers = new HashMap<String, Integer>();
+  private int mark;
+  private int scanned;
+
+  Common_Subexpression_Eliminator(){
+  }
+
+  public int getIntroducedBindings(){
+    return introducedBindings;
+  }
+
+  public int getReplacedUses(){
+    return replacedUses;
+  }
+
+  void eliminate(AST_Nd body){
+    while(eliminateRound(body))
+      ;
+    eliminateInFunctions(body);
+  }
+
+  /**
+   * Runs eliminate on the bodies of the lambdas in this body that are not lets.
+   */
+  private void eliminateInFunctions(AST_Nd node){
+    switch(node.type){
+      case LAMBDA:
+        int[] saved = enter(node.child);
+        eliminate(node.child.sibling);
+        leave(node.child, saved);
+        return;
+      case GAMMA:
+        AST_Nd rator = node.child;
+        if(rator.type==AST_Nd_Type.LAMBDA){ //let: its body is part of this one
+          eliminateInFunctions(rator.sibling);
+          saved = enter(rator.child);
+          eliminateInFunctions(rator.child.sibling);
+          leave(rator.child, saved);
+          return;
+        }
+        eliminateInFunctions(rator);
+        eliminateInFunctions(rator.sibling);
+        return;
+      default:
+        for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+          eliminateInFunctions(childNode);
+        return;
+    }
+  }
+
+  /**
+   * Numbers the body's pure subtrees and binds the repeated ones it can, biggest
+   * first; returns whether it bound any.
+   */
+  private boolean eliminateRound(AST_Nd body){
+    numNodes = 0;
+    indexes.clear();
+    valueNumbers.clear();
+    number(body, -1, 0, 0);
+
+    //uses of each number, by its first one
+    int[] firsts = new int[valueNumbers.size()];
+    int[] counts = new int[valueNumbers.size()];
+    Arrays.fill(firsts, -1);
+    ArrayList<Integer> repeated = new ArrayList<Integer>();
+    for(int i=0;i<numNodes;i++){
+      int n = numbers[i];
+      if(n<0 || sizes[i]<2)
+        continue;
+      if(firsts[n]<0)
+        firsts[n] = i;
+      if(++counts[n]==2)
+        repeated.add(n);
+    }
+    if(repeated.isEmpty())
+      return false;
+    repeated.sort((a, b) -> sizes[firsts[b]]-sizes[firsts[a]]);
+
+    boolean changed = false;
+    Arrays.fill(taken, 0, numNodes, false);
+    for(int n: repeated){
+      int[] uses = new int[counts[n]];
+      int numUses = 0;
+      for(int i=firsts[n];i<numNodes;i++)
+        if(numbers[i]==n && !taken[i])
+          uses[numUses++] = i;
+      if(bind(Arrays.copyOf(uses, numUses))){
+        changed = true;
+        continue;
+      }
+      for(int u=0;u<numUses;u++){ //not all of them, but maybe those in one branch
+        int branch = branches[uses[u]];
+        int numInBranch = 0;
+        for(int v=0;v<numUses;v++)
+          if(branches[uses[v]]==branch)
+            numInBranch++;
+        if(numInBranch==numUses || branchOf(uses, u)<u)
+          continue;
+        int[] inBranch = new int[numInBranch];
+        numInBranch = 0;
+        for(int v=u;v<numUses;v++)
+          if(branches[uses[v]]==branch)
+            inBranch[numInBranch++] = uses[v];
+        if(bind(inBranch))
+          changed = true;
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * The first of uses in the same branch as uses[u].
+   */
+  private int branchOf(int[] uses, int u){
+    for(int v=0;;v++)
+      if(branches[uses[v]]==branches[uses[u]])
+        return v;
+  }
+
+  /**
+   * Binds the uses of one expression around their least common subtree, if that
+   * is worth it and safe.
+   */
+  private boolean bind(int[] uses){
+    if(uses.length<2 || (uses.length-1)*(sizes[uses[0]]-1)<MIN_SAVED_NODES)
+      return false;
+    int ancestor = uses[0];
+    for(int use: uses)
+      ancestor = commonAncestor(ancestor, use);
+    mark++;
+    for(int use: uses)
+      marks[use] = mark;
+    scanned = 0;
+    if(evaluatedFirst(nodes[ancestor])!=FOUND)
+      return false;
+
+    int symId = Sym_Table.intern("t#"+(++names));
+    AST_Nd definition = copyNode(nodes[uses[0]]);
+    for(int use: uses){
+      Arrays.fill(taken, use, use+sizes[use], true);
+      AST_Nd useNode = nodes[use];
+      useNode.setType(AST_Nd_Type.IDENTIFIER);
+      useNode.setValue(Sym_Table.name(symId));
+      useNode.setIntValue(0);
+      useNode.setSymId(symId);
+      useNode.setChild(null);
+      bound[use] = true;
+    }
+    AST_Nd ancestorNode = nodes[ancestor];
+    AST_Nd parameter = new AST_Nd();
+    parameter.setType(AST_Nd_Type.IDENTIFIER);
+    parameter.setValue(Sym_Table.name(symId));
+    parameter.setSymId(symId);
+    parameter.setSourceLineNumber(ancestorNode.sourceLineNumber);
+    parameter.setSibling(copyNode(ancestorNode));
+    AST_Nd lambdaNode = new AST_Nd();
+    lambdaNode.setType(AST_Nd_Type.LAMBDA);
+    lambdaNode.setSourceLineNumber(ancestorNode.sourceLineNumber);
+    lambdaNode.setChild(parameter);
+    lambdaNode.setSibling(definition);
+    ancestorNode.setType(AST_Nd_Type.GAMMA);
+    ancestorNode.setValue(null);
+    ancestorNode.setIntValue(0);
+    ancestorNode.setSymId(Sym_Table.NONE);
+    ancestorNode.setChild(lambdaNode);
+    introducedBindings++;
+    replacedUses += uses.length;
+    return true;
+  }
+
+  private int commonAncestor(int a, int b){
+    while(depths[a]>depths[b])
+      a = parents[a];
+    while(depths[b]>depths[a])
+      b = parents[b];
+    while(a!=b){
+      a = parents[a];
+      b = parents[b];
+    }
+    return a;
+  }
+
+  private static final int NOT_FOUND = 0;
+  private static final int FOUND = 1;
+  private static final int UNSAFE = 2;
+
+  /**
+   * Is a marked use the first thing evaluated in node that could print or fail,
+   * and not in a branch? The CSE machine evaluates a node's children last first,
+   * a let's definition before its body, and a conditional's condition before
+   * either branch.
+   */
+  private int evaluatedFirst(AST_Nd node){
+    Integer index = indexes.get(node);
+    if(index!=null && marks[index]==mark)
+      return FOUND;
+    if(++scanned>MAX_SCAN_NODES)
+      return UNSAFE;
+    switch(node.type){
+      case LAMBDA: //not a let's, so it has no uses
+        return NOT_FOUND;
+      case CONDITIONAL:
+        int found = evaluatedFirst(node.child);
+        return found!=NOT_FOUND ? found : UNSAFE;
+      case GAMMA:
+        if(node.child.type==AST_Nd_Type.LAMBDA){ //let
+          found = evaluatedFirst(node.child.sibling);
+          if(found!=NOT_FOUND)
+            return found;
+          return hasNoEffect(node.child.sibling) ? evaluatedFirst(node.child.child.sibling) : UNSAFE;
+        }
+        return childEvaluatedFirst(node);
+      default:
+        return childEvaluatedFirst(node);
+    }
+  }
+
+  /**
+   * evaluatedFirst over node's children, last first.
+   */
+  private int childEvaluatedFirst(AST_Nd node){
+    ArrayList<AST_Nd> children = new ArrayList<AST_Nd>();
+    for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+      children.add(childNode);
+    for(int i=children.size()-1;i>=0;i--){
+      int found = evaluatedFirst(children.get(i));
+      if(found!=NOT_FOUND)
+        return found;
+      if(!hasNoEffect(children.get(i)))
+        return UNSAFE;
+    }
+    return NOT_FOUND;
+  }
+
+  /**
+   * Can evaluating node neither print nor fail? A lambda, a literal, a name in
+   * scope or a builtin, a rec definition, or a tuple of those.
+   */
+  private boolean hasNoEffect(AST_Nd node){
+    switch(node.type){
+      case LAMBDA:
+      case INTEGER:
+      case STRING:
+      case TRUE:
+      case FALSE:
+      case NIL:
+      case DUMMY:
+        return true;
+      case IDENTIFIER:
+        Integer index = indexes.get(node);
+        return index==null || bound[index];
+      case GAMMA:
+        return node.child.type==AST_Nd_Type.YSTAR && node.child.sibling.type==AST_Nd_Type.LAMBDA;
+      case TAU:
+        for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+          if(!hasNoEffect(childNode))
+            return false;
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Records node and what is under it in this body, in preorder, and returns its
+   * value number, or -1 if it is not pure.
+   */
+  private int number(AST_Nd node, int parent, int depth, int branch){
+    int index = add(node, parent, depth, branch);
+    int n = -1;
+    switch(node.type){
+      case INTEGER:
+        n = valueNumber(node.type.ordinal()+":"+node.intValue);
+        break;
+      case STRING:
+        n = valueNumber(node.type.ordinal()+":"+node.value);
+        break;
+      case TRUE:
+      case FALSE:
+      case NIL:
+      case DUMMY:
+        n = valueNumber(Integer.toString(node.type.ordinal()));
+        break;
+      case IDENTIFIER:
+        int binder = node.symId>=0 && node.symId<binders.length ? binders[node.symId] : 0;
+        bound[index] = binder>0 || Sym_Table.isBuiltin(node.symId);
+        n = valueNumber(binder>0 ? "b"+binder : "f"+node.symId);
+        break;
+      case LAMBDA: //a body of its own
+        break;
+      case GAMMA:
+        AST_Nd rator = node.child;
+        if(rator.type==AST_Nd_Type.LAMBDA){ //let
+          number(rator.sibling, index, depth+1, branch);
+          int lambdaIndex = add(rator, index, depth+1, branch);
+          int[] saved = enter(rator.child);
+          numberChildren(rator, lambdaIndex, depth+2, branch);
+          leave(rator.child, saved);
+          sizes[lambdaIndex] = numNodes-lambdaIndex;
+          break;
+        }
+        if(rator.type==AST_Nd_Type.YSTAR){
+          numberChildren(node, index, depth+1, branch);
+          break;
+        }
+        int ratorNumber = number(rator, index, depth+1, branch);
+        int rand = number(rator.sibling, index, depth+1, branch);
+        if(ratorNumber>=0 && rand>=0 && isPureBuiltin(rator))
+          n = valueNumber(node.type.ordinal()+":"+ratorNumber+","+rand);
+        break;
+      case CONDITIONAL:
+        AST_Nd conditionNode = node.child;
+        number(conditionNode, index, depth+1, branch);
+        number(conditionNode.sibling, index, depth+1, numNodes);
+        number(conditionNode.sibling.sibling, index, depth+1, numNodes);
+        break;
+      case PLUS:
+      case MINUS:
+      case MULT:
+      case DIV:
+      case EXP:
+      case LS:
+      case LE:
+      case GR:
+      case GE:
+      case EQ:
+      case NE:
+      case OR:
+      case AND:
+      case NOT:
+      case NEG:
+      case TAU:
+        StringBuilder key = new StringBuilder().append(node.type.ordinal()).append(':');
+        boolean pure = true;
+        for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling){
+          int childNumber = number(childNode, index, depth+1, branch);
+          pure &= childNumber>=0;
+          key.append(childNumber).append(',');
+        }
+        if(pure)
+          n = valueNumber(key.toString());
+        break;
+      default:
+        numberChildren(node, index, depth+1, branch);
+        break;
+    }
+    numbers[index] = n;
+    sizes[index] = numNodes-index;
+    return n;
+  }
+
+  private void numberChildren(AST_Nd node, int index, int depth, int branch){
+    for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+      number(childNode, index, depth, branch);
+  }
+
+  private int add(AST_Nd node, int parent, int depth, int branch){
+    if(numNodes==nodes.length){
+      int length = 2*numNodes;
+      nodes = Arrays.copyOf(nodes, length);
+      parents = Arrays.copyOf(parents, length);
+      depths = Arrays.copyOf(depths, length);
+      sizes = Arrays.copyOf(sizes, length);
+      numbers = Arrays.copyOf(numbers, length);
+      branches = Arrays.copyOf(branches, length);
+      bound = Arrays.copyOf(bound, length);
+      marks = Arrays.copyOf(marks, length);
+      taken = Arrays.copyOf(taken, length);
+    }
+    int index = numNodes++;
+    nodes[index] = node;
+    parents[index] = parent;
+    depths[index] = depth;
+    branches[index] = branch;
+    numbers[index] = -1;
+    sizes[index] = 1;
+    bound[index] = false;
+    marks[index] = 0;
+    indexes.put(node, index);
+    return index;
+  }
+
+  private int valueNumber(String key){
+    Integer n = valueNumbers.get(key);
+    if(n==null){
+      n = valueNumbers.size();
+      valueNumbers.put(key, n);
+    }
+    return n;
+  }
+
+  /**
+   * A builtin that computes its result from its argument alone, without
+   * printing; not Conc, which takes the next argument off the control.
+   */
+  private boolean isPureBuiltin(AST_Nd rator){
+    if(rator.type!=AST_Nd_Type.IDENTIFIER || (rator.symId<binders.length && binders[rator.symId]>0))
+      return false;
+    switch(rator.symId){
+      case Sym_Table.ISINTEGER:
+      case Sym_Table.ISSTRING:
+      case Sym_Table.ISTUPLE:
+      case Sym_Table.ISDUMMY:
+      case Sym_Table.ISTRUTHVALUE:
+      case Sym_Table.ISFUNCTION:
+      case Sym_Table.ITOS:
+      case Sym_Table.ORDER:
+      case Sym_Table.STERN:
+      case Sym_Table.STEM:
+      case Sym_Table.NULL:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Brings the names bound by parameter into scope, each with a binding number
+   * of its own; returns the numbers they shadow.
+   */
+  private int[] enter(AST_Nd parameter){
+    AST_Nd[] xs = names(parameter);
+    int[] saved = new int[xs.length];
+    for(int i=0;i<xs.length;i++){
+      int symId = xs[i].symId;
+      if(symId<0)
+        continue;
+      if(symId>=binders.length)
+        binders = Arrays.copyOf(binders, Math.max(2*binders.length, symId+1));
+      saved[i] = binders[symId];
+      binders[symId] = ++numBinders;
+    }
+    return saved;
+  }
+
+  private void leave(AST_Nd parameter, int[] saved){
+    AST_Nd[] xs = names(parameter);
+    for(int i=xs.length-1;i>=0;i--)
+      if(xs[i].symId>=0)
+        binders[xs[i].symId] = saved[i];
+  }
+
+  private static AST_Nd[] names(AST_Nd parameter){
+    if(parameter.type!=AST_Nd_Type.COMMA)
+      return new AST_Nd[]{parameter};
+    ArrayList<AST_Nd> xs = new ArrayList<AST_Nd>();
+    for(AST_Nd childNode=parameter.child;childNode!=null;childNode=childNode.sibling)
+      xs.add(childNode);
+    return xs.toArray(new AST_Nd[0]);
+  }
+
+  private static AST_Nd copyNode(AST_Nd node){
+    AST_Nd copy = new AST_Nd();
+    copy.setType(node.type);
+    copy.setValue(node.value);
+    copy.setIntValue(node.intValue);
+    copy.setSymId(node.symId);
+    copy.setSourceLineNumber(node.sourceLineNumber);
+    copy.setChild(node.child);
+    return copy;
+  }
+}
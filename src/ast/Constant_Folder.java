@@ -0,0 +1,321 @@
+package ast;
+
+import java.util.Arrays;
+
+import scanner.Sym_Table;
+
+/**
+ * Folds constant expressions of a standardized tree in place: operators and
+ * builtins applied to literals, conditionals on a literal truthvalue, and
+ * GAMMA(LAMBDA x E, literal), which becomes E with the literal for x.
+ *
+ * A node is only folded where the CSE machine would compute a value without an
+ * error; anything else, e.g. a division by zero or an operand of the wrong type,
+ * is left to fail at run time as before. A folded value is the node the machine
+ * would have pushed: computed values carry no line number, while ItoS, Stem and
+ * Stern keep their operand's, as they change it in place.
+ */
+class Constant_Folder{
+  private static final AST_Nd BOUND = new AST_Nd(); //bound to something not constant
+
+  private AST_Nd[] bindings = new AST_Nd[256]; //per symbol id: BOUND, a literal, or null
+  private int[] undoSymIds = new int[64];
+  private AST_Nd[] undoBindings = new AST_Nd[64];
+  private int undoSize;
+
+  void fold(AST_Nd node){
+    switch(node.type){
+      case IDENTIFIER:
+        AST_Nd binding = binding(node.symId);
+        if(binding!=null && binding!=BOUND)
+          become(node, binding);
+        return;
+      case LAMBDA:
+        int mark = undoSize;
+        bindParameters(node.child);
+        fold(node.child.sibling);
+        unbind(mark);
+        return;
+      case GAMMA:
+        AST_Nd rator = node.child;
+        AST_Nd rand = rator.sibling;
+        fold(rand);
+        boolean folded = rator.type!=AST_Nd_Type.LAMBDA;
+        if(folded) //may become a LAMBDA, as the inner GAMMA of f 1 2 does
+          fold(rator);
+        if(rator.type==AST_Nd_Type.LAMBDA && rator.child.type==AST_Nd_Type.IDENTIFIER && isLiteral(rand)){
+          mark = undoSize;
+          bind(rator.child.symId, rand);
+          AST_Nd body = rator.child.sibling;
+          fold(body);
+          unbind(mark);
+          become(node, body);
+          return;
+        }
+        if(!folded)
+          fold(rator);
+        foldBuiltin(node, rator, rand);
+        return;
+      case CONDITIONAL:
+        AST_Nd conditionNode = node.child;
+        foldChildren(node);
+        if(conditionNode.type==AST_Nd_Type.TRUE)
+          become(node, conditionNode.sibling);
+        else if(conditionNode.type==AST_Nd_Type.FALSE)
+          become(node, conditionNode.sibling.sibling);
+        return;
+      case PLUS:
+      case MINUS:
+      case MULT:
+      case DIV:
+      case EXP:
+      case LS:
+      case LE:
+      case GR:
+      case GE:
+      case EQ:
+      case NE:
+      case OR:
+      case AND:
+        foldChildren(node);
+        foldBinary(node, node.child, node.child.sibling);
+        return;
+      case NOT:
+      case NEG:
+        foldChildren(node);
+        foldUnary(node, node.child);
+        return;
+      default:
+        foldChildren(node);
+        return;
+    }
+  }
+
+  private void foldChildren(AST_Nd node){
+    for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+      fold(childNode);
+  }
+
+  // RULE 6, for what binaryArithmeticOp, binaryLogicalEqNeOp and binaryLogicalOrAndOp compute
+  private static void foldBinary(AST_Nd node, AST_Nd rand1, AST_Nd rand2){
+    if(rand1.type==AST_Nd_Type.INTEGER && rand2.type==AST_Nd_Type.INTEGER){
+      int a = rand1.intValue;
+      int b = rand2.intValue;
+      switch(node.type){
+        case PLUS: becomeInteger(node, a+b); return;
+        case MINUS: becomeInteger(node, a-b); return;
+        case MULT: becomeInteger(node, a*b); return;
+        case DIV:
+          if(b!=0) //left to throw at run time
+            becomeInteger(node, a/b);
+          return;
+        case EXP: becomeInteger(node, (int)Math.pow(a, b)); return;
+        case LS: becomeTruthValue(node, a<b); return;
+        case LE: becomeTruthValue(node, a<=b); return;
+        case GR: becomeTruthValue(node, a>b); return;
+        case GE: becomeTruthValue(node, a>=b); return;
+        case EQ: becomeTruthValue(node, a==b); return;
+        case NE: becomeTruthValue(node, a!=b); return;
+        default: return;
+      }
+    }
+    if(isTruthValue(rand1) && isTruthValue(rand2)){
+      boolean a = rand1.type==AST_Nd_Type.TRUE;
+      boolean b = rand2.type==AST_Nd_Type.TRUE;
+      switch(node.type){
+        case EQ: becomeTruthValue(node, a==b); return;
+        case NE: becomeTruthValue(node, a!=b); return;
+        case OR: becomeTruthValue(node, a || b); return;
+        case AND: becomeTruthValue(node, a && b); return;
+        default: return;
+      }
+    }
+    if(rand1.type==AST_Nd_Type.STRING && rand2.type==AST_Nd_Type.STRING){
+      if(node.type==AST_Nd_Type.EQ)
+        becomeTruthValue(node, rand1.value.equals(rand2.value));
+      else if(node.type==AST_Nd_Type.NE)
+        becomeTruthValue(node, !rand1.value.equals(rand2.value));
+    }
+  }
+
+  // RULE 7
+  private static void foldUnary(AST_Nd node, AST_Nd rand){
+    if(node.type==AST_Nd_Type.NOT && isTruthValue(rand))
+      becomeTruthValue(node, rand.type==AST_Nd_Type.FALSE);
+    else if(node.type==AST_Nd_Type.NEG && rand.type==AST_Nd_Type.INTEGER)
+      becomeInteger(node, -1*rand.intValue);
+  }
+
+  /**
+   * A builtin applied to literals: GAMMA(builtin, literal), or
+   * GAMMA(GAMMA(Conc, string), string).
+   */
+  private void foldBuiltin(AST_Nd node, AST_Nd rator, AST_Nd rand){
+    if(rator.type==AST_Nd_Type.GAMMA && isBuiltin(rator.child)
+       && (rator.child.symId==Sym_Table.CONC || rator.child.symId==Sym_Table.CONC_LOWER)
+       && rator.child.sibling.type==AST_Nd_Type.STRING && rand.type==AST_Nd_Type.STRING){
+      becomeLiteral(node, AST_Nd_Type.STRING, rator.child.sibling.value+rand.value, 0, 0);
+      return;
+    }
+    if(!isBuiltin(rator))
+      return;
+    switch(rator.symId){
+      case Sym_Table.ISINTEGER:
+      case Sym_Table.ISSTRING:
+      case Sym_Table.ISDUMMY:
+      case Sym_Table.ISFUNCTION:
+      case Sym_Table.ISTUPLE:
+      case Sym_Table.ISTRUTHVALUE:
+        if(isLiteral(rand))
+          becomeTruthValue(node, hasType(rator.symId, rand.type));
+        return;
+      case Sym_Table.ITOS:
+        if(rand.type==AST_Nd_Type.INTEGER)
+          becomeLiteral(node, AST_Nd_Type.STRING, Integer.toString(rand.intValue), 0, rand.sourceLineNumber);
+        return;
+      case Sym_Table.STEM:
+        if(rand.type==AST_Nd_Type.STRING)
+          becomeLiteral(node, AST_Nd_Type.STRING, rand.value.isEmpty() ? "" : rand.value.substring(0, 1), 0,
+                        rand.sourceLineNumber);
+        return;
+      case Sym_Table.STERN:
+        if(rand.type==AST_Nd_Type.STRING)
+          becomeLiteral(node, AST_Nd_Type.STRING, rand.value.length()<=1 ? "" : rand.value.substring(1), 0,
+                        rand.sourceLineNumber);
+        return;
+      case Sym_Table.ORDER:
+      case Sym_Table.NULL:
+        int numChildren = literalTupleSize(rand);
+        if(numChildren<0)
+          return;
+        if(rator.symId==Sym_Table.ORDER)
+          becomeInteger(node, numChildren);
+        else
+          becomeTruthValue(node, numChildren==0);
+        return;
+      default:
+        return;
+    }
+  }
+
+  /**
+   * Is rand's type the one the type test checks for? nil is a tuple.
+   */
+  private static boolean hasType(int symId, AST_Nd_Type type){
+    switch(symId){
+      case Sym_Table.ISINTEGER: return type==AST_Nd_Type.INTEGER;
+      case Sym_Table.ISSTRING: return type==AST_Nd_Type.STRING;
+      case Sym_Table.ISDUMMY: return type==AST_Nd_Type.DUMMY;
+      case Sym_Table.ISTUPLE: return type==AST_Nd_Type.NIL;
+      case Sym_Table.ISTRUTHVALUE: return type==AST_Nd_Type.TRUE || type==AST_Nd_Type.FALSE;
+      default: return false; //ISFUNCTION
+    }
+  }
+
+  /**
+   * Number of elements of nil or of a tau of literals, whose elements have nothing
+   * to evaluate; -1 for anything else.
+   */
+  private static int literalTupleSize(AST_Nd node){
+    if(node.type==AST_Nd_Type.NIL)
+      return 0;
+    if(node.type!=AST_Nd_Type.TAU)
+      return -1;
+    int numChildren = 0;
+    for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling){
+      if(!isLiteral(childNode))
+        return -1;
+      numChildren++;
+    }
+    return numChildren;
+  }
+
+  private boolean isBuiltin(AST_Nd node){
+    return node.type==AST_Nd_Type.IDENTIFIER && binding(node.symId)==null && Sym_Table.isBuiltin(node.symId);
+  }
+
+  private static boolean isLiteral(AST_Nd node){
+    switch(node.type){
+      case INTEGER:
+      case STRING:
+      case TRUE:
+      case FALSE:
+      case NIL:
+      case DUMMY:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isTruthValue(AST_Nd node){
+    return node.type==AST_Nd_Type.TRUE || node.type==AST_Nd_Type.FALSE;
+  }
+
+  private static void becomeInteger(AST_Nd node, int intValue){
+    becomeLiteral(node, AST_Nd_Type.INTEGER, Integer.toString(intValue), intValue, 0);
+  }
+
+  private static void becomeTruthValue(AST_Nd node, boolean truthValue){
+    if(truthValue)
+      becomeLiteral(node, AST_Nd_Type.TRUE, "true", 0, 0);
+    else
+      becomeLiteral(node, AST_Nd_Type.FALSE, "false", 0, 0);
+  }
+
+  private static void becomeLiteral(AST_Nd node, AST_Nd_Type type, String value, int intValue, int sourceLineNumber){
+    node.setType(type);
+    node.setValue(value);
+    node.setIntValue(intValue);
+    node.setSymId(Sym_Table.NONE);
+    node.setSourceLineNumber(sourceLineNumber);
+    node.setChild(null);
+  }
+
+  /**
+   * Makes node a copy of other, keeping its own place among its siblings.
+   */
+  private static void become(AST_Nd node, AST_Nd other){
+    node.setType(other.type);
+    node.setValue(other.value);
+    node.setIntValue(other.intValue);
+    node.setSymId(other.symId);
+    node.setSourceLineNumber(other.sourceLineNumber);
+    node.setChild(other.child);
+  }
+
+  private void bindParameters(AST_Nd parameter){
+    if(parameter.type==AST_Nd_Type.COMMA){
+      for(AST_Nd childNode=parameter.child;childNode!=null;childNode=childNode.sibling)
+        bind(childNode.symId, BOUND);
+    }
+    else
+      bind(parameter.symId, BOUND);
+  }
+
+  private AST_Nd binding(int symId){
+    return symId>=0 && symId<bindings.length ? bindings[symId] : null;
+  }
+
+  private void bind(int symId, AST_Nd binding){
+    if(symId<0) //() binds no name
+      return;
+    if(symId>=bindings.length)
+      bindings = Arrays.copyOf(bindings, Math.max(2*bindings.length, symId+1));
+    if(undoSize==undoSymIds.length){
+      undoSymIds = Arrays.copyOf(undoSymIds, 2*undoSize);
+      undoBindings = Arrays.copyOf(undoBindings, 2*undoSize);
+    }
+    undoSymIds[undoSize] = symId;
+    undoBindings[undoSize++] = bindings[symId];
+    bindings[symId] = binding;
+  }
+
+  private void unbind(int mark){
+    while(undoSize>mark){
+      undoSize--;
+      bindings[undoSymIds[undoSize]] = undoBindings[undoSize];
+      undoBindings[undoSize] = null;
+    }
+  }
+}
@@ -0,0 +1,275 @@
+package ast;
+
+import java.util.Arrays;
+
+import scanner.Sym_Table;
+
+/**
+ * Removes the bindings of a standardized tree that nothing refers to, in place:
+ * GAMMA(LAMBDA x E, D) becomes E when E never uses x and evaluating D has no
+ * effect. For let X1 = D1 and X2 = D2 ..., i.e. GAMMA(LAMBDA (X1, X2, ...) E,
+ * TAU(D1, D2, ...)), the unused components are dropped from the COMMA and the TAU.
+ *
+ * D has no effect if evaluating it can neither print nor fail: a lambda, a literal,
+ * a name in scope or a builtin, a rec definition (Y* applied to a lambda), or a
+ * tuple of those. Anything else is kept, e.g. 1/0 or a call, so the program
+ * prints and fails as before.
+ *
+ * Uses are counted in one walk: a body is walked before its definitions, so a
+ * definition that is only used by another one removed first is removed too.
+ */
+public class Dead_Binding_Eliminator{
+  private int[] uses = new int[256]; //per symbol id: uses of its innermost binding so far
+  private int[] bound = new int[256]; //per symbol id: bindings of it in scope
+  private int removedBindings;
+  private int removedNodes;
+  private int removedDeltas;
+
+  Dead_Binding_Eliminator(){
+  }
+
+  public int getRemovedBindings(){
+    return removedBindings;
+  }
+
+  public int getRemovedNodes(){
+    return removedNodes;
+  }
+
+  public int getRemovedDeltas(){
+    return removedDeltas;
+  }
+
+  void eliminate(AST_Nd node){
+    switch(node.type){
+      case IDENTIFIER:
+        if(node.symId>=0 && node.symId<uses.length)
+          uses[node.symId]++;
+        return;
+      case LAMBDA:
+        int[] saved = enter(node.child);
+        eliminate(node.child.sibling);
+        leave(node.child, saved);
+        return;
+      case GAMMA:
+        if(node.child.type==AST_Nd_Type.LAMBDA)
+          eliminateBinding(node, node.child, node.child.sibling);
+        else
+          eliminateChildren(node);
+        return;
+      default:
+        eliminateChildren(node);
+        return;
+    }
+  }
+
+  private void eliminateChildren(AST_Nd node){
+    for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+      eliminate(childNode);
+  }
+
+  /**
+   * GAMMA(LAMBDA X E, D): E is walked in the scope of X first, then what is left
+   * of D outside it.
+   */
+  private void eliminateBinding(AST_Nd gammaNode, AST_Nd lambdaNode, AST_Nd definition){
+    AST_Nd parameter = lambdaNode.child;
+    AST_Nd body = parameter.sibling;
+    int[] saved = enter(parameter);
+    eliminate(body);
+    int[] counts = counts(parameter);
+    leave(parameter, saved);
+
+    if(parameter.type==AST_Nd_Type.IDENTIFIER && counts[0]==0 && hasNoEffect(definition)){
+      remove(gammaNode);
+      become(gammaNode, body); //walked already
+      return;
+    }
+    if(parameter.type==AST_Nd_Type.COMMA && definition.type==AST_Nd_Type.TAU
+       && countChildren(definition)==counts.length){
+      if(pruneComponents(gammaNode, lambdaNode, parameter, definition, counts))
+        return;
+      definition = lambdaNode.sibling;
+    }
+    eliminate(definition);
+  }
+
+  /**
+   * Drops the unused components of GAMMA(LAMBDA (X1, X2, ...) E, TAU(D1, D2, ...));
+   * one left becomes GAMMA(LAMBDA Xi E, Di), and none left becomes E, in which
+   * case true is returned.
+   */
+  private boolean pruneComponents(AST_Nd gammaNode, AST_Nd lambdaNode, AST_Nd commaNode, AST_Nd tauNode, int[] counts){
+    AST_Nd lastX = null, lastD = null;
+    AST_Nd x = commaNode.child, d = tauNode.child;
+    int kept = 0;
+    for(int i=0;i<counts.length;i++){
+      AST_Nd nextX = x.sibling, nextD = d.sibling;
+      if(counts[i]==0 && hasNoEffect(d)){
+        removedNodes += size(x)+size(d);
+        removedDeltas += countDeltas(d);
+      }
+      else{
+        lastX = link(commaNode, lastX, x);
+        lastD = link(tauNode, lastD, d);
+        kept++;
+      }
+      x = nextX;
+      d = nextD;
+    }
+    if(kept==counts.length)
+      return false;
+    removedBindings += counts.length-kept;
+    if(kept==0){
+      AST_Nd body = commaNode.sibling;
+      removedNodes += 4; //GAMMA, LAMBDA, COMMA and TAU
+      removedDeltas++;
+      become(gammaNode, body); //walked already
+      return true;
+    }
+    if(kept==1){ //a lone name binds the value itself, not a tuple of one
+      commaNode.child.setSibling(commaNode.sibling);
+      lambdaNode.setChild(commaNode.child);
+      tauNode.child.setSibling(null);
+      lambdaNode.setSibling(tauNode.child);
+      removedNodes += 2;
+    }
+    return false;
+  }
+
+  private static AST_Nd link(AST_Nd parentNode, AST_Nd lastChild, AST_Nd childNode){
+    if(lastChild==null)
+      parentNode.setChild(childNode);
+    else
+      lastChild.setSibling(childNode);
+    childNode.setSibling(null);
+    return childNode;
+  }
+
+  /**
+   * Can evaluating node neither print nor fail?
+   */
+  private boolean hasNoEffect(AST_Nd node){
+    switch(node.type){
+      case LAMBDA:
+      case INTEGER:
+      case STRING:
+      case TRUE:
+      case FALSE:
+      case NIL:
+      case DUMMY:
+        return true;
+      case IDENTIFIER:
+        return (node.symId>=0 && node.symId<bound.length && bound[node.symId]>0) || Sym_Table.isBuiltin(node.symId);
+      case GAMMA:
+        return node.child.type==AST_Nd_Type.YSTAR && node.child.sibling.type==AST_Nd_Type.LAMBDA;
+      case TAU:
+        for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+          if(!hasNoEffect(childNode))
+            return false;
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Brings the names bound by parameter into scope, with no uses yet; returns
+   * the counts they shadow.
+   */
+  private int[] enter(AST_Nd parameter){
+    int[] symIds = symIds(parameter);
+    int[] saved = new int[symIds.length];
+    for(int i=0;i<symIds.length;i++){
+      int symId = symIds[i];
+      if(symId<0)
+        continue;
+      if(symId>=uses.length){
+        uses = Arrays.copyOf(uses, Math.max(2*uses.length, symId+1));
+        bound = Arrays.copyOf(bound, uses.length);
+      }
+      saved[i] = uses[symId];
+      uses[symId] = 0;
+      bound[symId]++;
+    }
+    return saved;
+  }
+
+  private void leave(AST_Nd parameter, int[] saved){
+    int[] symIds = symIds(parameter);
+    for(int i=symIds.length-1;i>=0;i--){
+      if(symIds[i]<0)
+        continue;
+      uses[symIds[i]] = saved[i];
+      bound[symIds[i]]--;
+    }
+  }
+
+  /**
+   * Uses of each name bound by parameter, while it is in scope.
+   */
+  private int[] counts(AST_Nd parameter){
+    int[] symIds = symIds(parameter);
+    int[] counts = new int[symIds.length];
+    for(int i=0;i<symIds.length;i++)
+      counts[i] = symIds[i]<0 ? 1 : uses[symIds[i]]; //() binds nothing, but keep it
+    return counts;
+  }
+
+  private static int[] symIds(AST_Nd parameter){
+    if(parameter.type!=AST_Nd_Type.COMMA)
+      return new int[]{parameter.symId};
+    int[] symIds = new int[countChildren(parameter)];
+    int i = 0;
+    for(AST_Nd childNode=parameter.child;childNode!=null;childNode=childNode.sibling)
+      symIds[i++] = childNode.symId;
+    return symIds;
+  }
+
+  private static int countChildren(AST_Nd node){
+    int numChildren = 0;
+    for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+      numChildren++;
+    return numChildren;
+  }
+
+  /**
+   * Counts GAMMA(LAMBDA X E, D) as removed, but for E, which stays.
+   */
+  private void remove(AST_Nd gammaNode){
+    AST_Nd lambdaNode = gammaNode.child;
+    AST_Nd definition = lambdaNode.sibling;
+    removedBindings++;
+    removedNodes += 2+size(lambdaNode.child)+size(definition);
+    removedDeltas += 1+countDeltas(definition);
+  }
+
+  /**
+   * Nodes in the subtree under node, node included.
+   */
+  private static int size(AST_Nd node){
+    int size = 1;
+    for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+      size += size(childNode);
+    return size;
+  }
+
+  private static int countDeltas(AST_Nd node){
+    int deltas = node.type==AST_Nd_Type.LAMBDA ? 1 : 0;
+    for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+      deltas += countDeltas(childNode);
+    return deltas;
+  }
+
+  /**
+   * Makes node a copy of other, keeping its own place among its siblings.
+   */
+  private static void become(AST_Nd node, AST_Nd other){
+    node.setType(other.type);
+    node.setValue(other.value);
+    node.setIntValue(other.intValue);
+    node.setSymId(other.symId);
+    node.setSourceLineNumber(other.sourceLineNumber);
+    node.setChild(other.child);
+  }
+}
@@ -0,0 +1,413 @@
+package ast;
+
+import java.util.Arrays;
+
+import scanner.Sym_Table;
+
+/**
+ * Inlines the small lambdas of a standardized tree in place, so calling them
+ * needs no closure and no frame at run time.
+ *
+ * Every bound name is first renamed to one of its own (x to x'1, x'2, ...; no
+ * source name has a quote), so a name means the same binding wherever it is in
+ * scope, and a lambda can be copied anywhere its name is in scope without any
+ * name in it being captured. A name that let binds to a lambda of at most
+ * MAX_INLINE_NODES nodes is known, and a call of it gets a copy of the lambda,
+ * with new names for what the copy binds itself. rec binds through Y*, so a
+ * recursive lambda is never known, and inlining ends.
+ *
+ * GAMMA(LAMBDA x E, A), written so or made so by inlining, becomes E with A for x
+ * when that evaluates the same things in the same order as applying the lambda:
+ * A is a literal or a name; A has no effect and x is not used; or A is not a
+ * lambda, and x is used once, not under a lambda or in a branch of a conditional,
+ * with nothing of effect evaluated before it in E. Otherwise it is left as it is;
+ * so is a curried call whose first argument is neither, f (g x) y.
+ */
+public class Inliner{
+  private static final int MAX_INLINE_NODES = 40; //largest lambda copied into a call
+  private static final int MAX_SCAN_NODES = 256; //most nodes of E looked at for where x is evaluated
+
+  private int[] renamed = new int[256]; //per symbol id: the new id it is renamed to, or 0
+  private boolean[] bound = new boolean[256]; //per symbol id: a new, bound name
+  private int[] uses = new int[256]; //per new id: at least its number of uses
+  private AST_Nd[] substitutions = new AST_Nd[256]; //per new id: what it is replaced with
+  private AST_Nd[] known = new AST_Nd[256]; //per new id: the lambda it is bound to
+  private int names;
+  private int budget; //nodes that may still be copied into calls
+  private int scanned;
+  private int inlinedCalls;
+  private int reducedBindings;
+
+  Inliner(){
+  }
+
+  public int getInlinedCalls(){
+    return inlinedCalls;
+  }
+
+  public int getReducedBindings(){
+    return reducedBindings;
+  }
+
+  void inline(AST_Nd root){
+    budget = Math.max(1000, rename(root));
+    walk(root);
+  }
+
+  private void walk(AST_Nd node){
+    switch(node.type){
+      case IDENTIFIER:
+        if(node.symId>=0 && node.symId<substitutions.length && substitutions[node.symId]!=null)
+          become(node, copy(substitutions[node.symId]));
+        return;
+      case GAMMA:
+        AST_Nd rator = node.child;
+        AST_Nd rand = rator.sibling;
+        walk(rand);
+        boolean call = rator.type!=AST_Nd_Type.LAMBDA; //not a let
+        if(call){
+          walk(rator); //may become a LAMBDA, as the inner GAMMA of f 1 2 does
+          AST_Nd lambdaNode = rator.type==AST_Nd_Type.IDENTIFIER ? known(rator.symId) : null;
+          if(lambdaNode!=null && budget>=size(lambdaNode) && isReducible(lambdaNode, rand)){
+            budget -= size(lambdaNode);
+            become(rator, copy(lambdaNode));
+          }
+        }
+        if(rator.type==AST_Nd_Type.LAMBDA){
+          if(reduce(node, rator, rand, call))
+            return;
+          know(rator.child, rand);
+          walk(rator);
+        }
+        return;
+      default:
+        for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+          walk(childNode);
+        return;
+    }
+  }
+
+  /**
+   * Makes GAMMA(LAMBDA X E, A) E with A for X, if it isReducible; E is walked
+   * then, which substitutes.
+   */
+  private boolean reduce(AST_Nd gammaNode, AST_Nd lambdaNode, AST_Nd rand, boolean call){
+    if(!isReducible(lambdaNode, rand))
+      return false;
+    AST_Nd parameter = lambdaNode.child;
+    if(parameter.type==AST_Nd_Type.IDENTIFIER)
+      substitutions[parameter.symId] = rand;
+    else if(parameter.type==AST_Nd_Type.COMMA){
+      AST_Nd d = rand.child;
+      for(AST_Nd x=parameter.child;x!=null;x=x.sibling,d=d.sibling)
+        substitutions[x.symId] = d;
+    }
+    become(gammaNode, parameter.sibling);
+    if(call)
+      inlinedCalls++;
+    else
+      reducedBindings++;
+    walk(gammaNode);
+    return true;
+  }
+
+  private boolean isReducible(AST_Nd lambdaNode, AST_Nd rand){
+    AST_Nd parameter = lambdaNode.child;
+    switch(parameter.type){
+      case IDENTIFIER:
+        int count = uses[parameter.symId];
+        if(isValue(rand) || (count==0 && hasNoEffect(rand)))
+          return true;
+        if(count!=1 || rand.type==AST_Nd_Type.LAMBDA) //a lambda is copied into the calls of it only
+          return false;
+        scanned = 0;
+        return evaluatesFirst(parameter.sibling, parameter.symId)==FOUND;
+      case COMMA:
+        if(rand.type!=AST_Nd_Type.TAU)
+          return false;
+        AST_Nd d = rand.child;
+        for(AST_Nd x=parameter.child;x!=null;x=x.sibling,d=d.sibling)
+          if(d==null || x.type!=AST_Nd_Type.IDENTIFIER || !(isValue(d) || (uses[x.symId]==0 && hasNoEffect(d))))
+            return false;
+        return d==null;
+      case PAREN: //() binds nothing
+        return hasNoEffect(rand);
+      default:
+        return false;
+    }
+  }
+
+  private static final int NOT_FOUND = 0;
+  private static final int FOUND = 1;
+  private static final int UNSAFE = 2;
+
+  /**
+   * Is x evaluated in node with nothing of effect evaluated before it, and not
+   * under a lambda or in a branch? The CSE machine evaluates a node's children
+   * last first, and the condition of a conditional before either branch. Looking
+   * at more than MAX_SCAN_NODES nodes is UNSAFE.
+   */
+  private int evaluatesFirst(AST_Nd node, int symId){
+    if(++scanned>MAX_SCAN_NODES)
+      return UNSAFE;
+    switch(node.type){
+      case IDENTIFIER:
+        return node.symId==symId ? FOUND : NOT_FOUND;
+      case LAMBDA:
+        return contains(node, symId) ? UNSAFE : NOT_FOUND;
+      case CONDITIONAL:
+        AST_Nd conditionNode = node.child;
+        int found = evaluatesFirst(conditionNode, symId);
+        if(found!=NOT_FOUND)
+          return found;
+        return contains(conditionNode.sibling, symId) || contains(conditionNode.sibling.sibling, symId)
+               ? UNSAFE : NOT_FOUND;
+      default:
+        AST_Nd[] children = children(node);
+        for(int i=children.length-1;i>=0;i--){
+          found = evaluatesFirst(children[i], symId);
+          if(found!=NOT_FOUND)
+            return found;
+          if(!hasNoEffect(children[i]))
+            return UNSAFE;
+        }
+        return NOT_FOUND;
+    }
+  }
+
+  /**
+   * Is x used in node? Counts against MAX_SCAN_NODES, past which it may be.
+   */
+  private boolean contains(AST_Nd node, int symId){
+    if(++scanned>MAX_SCAN_NODES || (node.type==AST_Nd_Type.IDENTIFIER && node.symId==symId))
+      return true;
+    for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+      if(contains(childNode, symId))
+        return true;
+    return false;
+  }
+
+  /**
+   * A literal, or a name that is bound or a builtin: a copy of it anywhere, any
+   * number of times, has the value binding it would.
+   */
+  private boolean isValue(AST_Nd node){
+    switch(node.type){
+      case INTEGER:
+      case STRING:
+      case TRUE:
+      case FALSE:
+      case NIL:
+      case DUMMY:
+        return true;
+      case IDENTIFIER:
+        return (node.symId>=0 && node.symId<bound.length && bound[node.symId]) || Sym_Table.isBuiltin(node.symId);
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Can evaluating node neither print nor fail? A value, a lambda, a rec
+   * definition (Y* applied to a lambda), or a tuple of those.
+   */
+  private boolean hasNoEffect(AST_Nd node){
+    switch(node.type){
+      case LAMBDA:
+        return true;
+      case GAMMA:
+        return node.child.type==AST_Nd_Type.YSTAR && node.child.sibling.type==AST_Nd_Type.LAMBDA;
+      case TAU:
+        for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+          if(!hasNoEffect(childNode))
+            return false;
+        return true;
+      default:
+        return isValue(node);
+    }
+  }
+
+  /**
+   * Records the small lambdas that let binds to a name, or to the names of a
+   * simultaneous definition, as known.
+   */
+  private void know(AST_Nd parameter, AST_Nd definition){
+    if(parameter.type==AST_Nd_Type.IDENTIFIER){
+      if(definition.type==AST_Nd_Type.LAMBDA && size(definition)<=MAX_INLINE_NODES)
+        known[parameter.symId] = definition;
+    }
+    else if(parameter.type==AST_Nd_Type.COMMA && definition.type==AST_Nd_Type.TAU){
+      AST_Nd d = definition.child;
+      for(AST_Nd x=parameter.child;x!=null && d!=null;x=x.sibling,d=d.sibling)
+        know(x, d);
+    }
+  }
+
+  private AST_Nd known(int symId){
+    return symId>=0 && symId<known.length ? known[symId] : null;
+  }
+
+  /**
+   * Renames every bound name to a new one and counts its uses; returns the number
+   * of nodes.
+   */
+  private int rename(AST_Nd node){
+    switch(node.type){
+      case IDENTIFIER:
+        if(node.symId>=0 && node.symId<renamed.length && renamed[node.symId]>0){
+          setName(node, renamed[node.symId]);
+          uses[node.symId]++;
+        }
+        return 1;
+      case LAMBDA:
+        AST_Nd parameter = node.child;
+        int[] saved = bindNew(parameter);
+        int size = 1+size(parameter);
+        for(AST_Nd childNode=parameter.sibling;childNode!=null;childNode=childNode.sibling)
+          size += rename(childNode);
+        restore(saved);
+        return size;
+      default:
+        size = 1;
+        for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+          size += rename(childNode);
+        return size;
+    }
+  }
+
+  /**
+   * Gives the names parameter binds new ones, which renamed maps the old ids to
+   * until restore; returns pairs of an old id and what it mapped to before.
+   */
+  private int[] bindNew(AST_Nd parameter){
+    AST_Nd[] xs = parameter.type==AST_Nd_Type.COMMA ? children(parameter) : new AST_Nd[]{parameter};
+    int[] saved = new int[2*xs.length];
+    int numSaved = 0;
+    for(AST_Nd x: xs){
+      if(x.type!=AST_Nd_Type.IDENTIFIER || x.symId<0)
+        continue;
+      String name = x.value;
+      int quote = name.indexOf('\'');
+      int newId = Sym_Table.intern((quote<0 ? name : name.substring(0, quote))+"'"+(++names));
+      grow(Math.max(x.symId, newId));
+      saved[numSaved++] = x.symId;
+      saved[numSaved++] = renamed[x.symId];
+      renamed[x.symId] = newId;
+      bound[newId] = true;
+      setName(x, newId);
+    }
+    return Arrays.copyOf(saved, numSaved);
+  }
+
+  private void restore(int[] saved){
+    for(int i=saved.length-2;i>=0;i-=2)
+      renamed[saved[i]] = saved[i+1];
+  }
+
+  /**
+   * A copy of node's subtree, in which what it binds itself has new names, and
+   * each name it uses has one use more.
+   */
+  private AST_Nd copy(AST_Nd node){
+    AST_Nd copy = copyNode(node);
+    int[] saved = null;
+    AST_Nd last = null;
+    AST_Nd childNode = node.child;
+    if(node.type==AST_Nd_Type.LAMBDA){
+      last = copyParameter(childNode);
+      saved = bindNew(last);
+      copy.setChild(last);
+      childNode = childNode.sibling;
+    }
+    else if(node.type==AST_Nd_Type.IDENTIFIER && node.symId>=0){
+      if(node.symId<renamed.length && renamed[node.symId]>0)
+        setName(copy, renamed[node.symId]);
+      grow(copy.symId);
+      uses[copy.symId]++;
+    }
+    for(;childNode!=null;childNode=childNode.sibling){
+      AST_Nd childCopy = copy(childNode);
+      if(last==null)
+        copy.setChild(childCopy);
+      else
+        last.setSibling(childCopy);
+      last = childCopy;
+    }
+    if(saved!=null)
+      restore(saved);
+    return copy;
+  }
+
+  private static AST_Nd copyParameter(AST_Nd parameter){
+    AST_Nd copy = copyNode(parameter);
+    AST_Nd last = null;
+    for(AST_Nd x=parameter.child;x!=null;x=x.sibling){
+      AST_Nd xCopy = copyNode(x);
+      if(last==null)
+        copy.setChild(xCopy);
+      else
+        last.setSibling(xCopy);
+      last = xCopy;
+    }
+    return copy;
+  }
+
+  private static AST_Nd copyNode(AST_Nd node){
+    AST_Nd copy = new AST_Nd();
+    copy.setType(node.type);
+    copy.setValue(node.value);
+    copy.setIntValue(node.intValue);
+    copy.setSymId(node.symId);
+    copy.setSourceLineNumber(node.sourceLineNumber);
+    return copy;
+  }
+
+  private static void setName(AST_Nd node, int symId){
+    node.setSymId(symId);
+    node.setValue(Sym_Table.name(symId));
+  }
+
+  private void grow(int symId){
+    if(symId<renamed.length)
+      return;
+    int length = Math.max(2*renamed.length, symId+1);
+    renamed = Arrays.copyOf(renamed, length);
+    bound = Arrays.copyOf(bound, length);
+    uses = Arrays.copyOf(uses, length);
+    substitutions = Arrays.copyOf(substitutions, length);
+    known = Arrays.copyOf(known, length);
+  }
+
+  private static AST_Nd[] children(AST_Nd node){
+    int numChildren = 0;
+    for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+      numChildren++;
+    AST_Nd[] children = new AST_Nd[numChildren];
+    int i = 0;
+    for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+      children[i++] = childNode;
+    return children;
+  }
+
+  /**
+   * Nodes in the subtree under node, node included.
+   */
+  private static int size(AST_Nd node){
+    int size = 1;
+    for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+      size += size(childNode);
+    return size;
+  }
+
+  /**
+   * Makes node a copy of other, keeping its own place among its siblings.
+   */
+  private static void become(AST_Nd node, AST_Nd other){
+    node.setType(other.type);
+    node.setValue(other.value);
+    node.setIntValue(other.intValue);
+    node.setSymId(other.symId);
+    node.setSourceLineNumber(other.sourceLineNumber);
+    node.setChild(other.child);
+  }
+}
@@ -0,0 +1,331 @@
+package ast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import scanner.Sym_Table;
+
+/**
+ * Raises the arity of the curried functions of a standardized tree in place. A
+ * name bound by let or rec to LAMBDA x1 (LAMBDA x2 ... (LAMBDA xn E)), n>=2,
+ * is bound to LAMBDA (x1, x2, ..., xn) E instead, one delta for all n
+ * arguments; a call f a1 a2 ... an becomes f (a1, a2, ..., an), one call with no
+ * partial applications in between. The tau evaluates an, ..., a1 in the order
+ * the curried call did, and E runs after all of them in both.
+ *
+ * Any other use of f, e.g. f a1 or f passed on, gets a wrapper that takes the
+ * arguments one at a time, LAMBDA f$1 ... (LAMBDA f$n (f (f$1, ..., f$n))). A
+ * function is only raised if its saturated calls are at least as many as the
+ * uses that need a wrapper; a first walk counts them.
+ */
+public class Uncurrier{
+  private int[] targets = new int[256]; //per symbol id: the function its innermost binding names, 0 if none
+  private int[] arities = new int[64]; //per function, in the order the walk meets them
+  private int[] saturatedCalls = new int[64];
+  private int[] wrappedUses = new int[64];
+  private int numFunctions;
+  private boolean counting; //the first walk: count, change nothing
+  private int raisedFunctions;
+  private int raisedCalls;
+  private int wrappers;
+
+  Uncurrier(){
+  }
+
+  public int getRaisedFunctions(){
+    return raisedFunctions;
+  }
+
+  public int getRaisedCalls(){
+    return raisedCalls;
+  }
+
+  public int getWrappers(){
+    return wrappers;
+  }
+
+  void uncurry(AST_Nd root){
+    counting = true;
+    walk(root);
+    counting = false;
+    numFunctions = 0;
+    walk(root);
+  }
+
+  private void walk(AST_Nd node){
+    switch(node.type){
+      case IDENTIFIER:
+        int function = target(node.symId);
+        if(function==0)
+          return;
+        if(counting)
+          wrappedUses[function]++;
+        else{
+          wrap(node, arities[function]);
+          wrappers++;
+        }
+        return;
+      case LAMBDA:
+        int[] saved = enter(node.child, null);
+        walk(node.child.sibling);
+        leave(node.child, saved);
+        return;
+      case GAMMA:
+        if(node.child.type==AST_Nd_Type.LAMBDA)
+          walkLet(node.child);
+        else
+          walkCall(node);
+        return;
+      default:
+        for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+          walk(childNode);
+        return;
+    }
+  }
+
+  /**
+   * GAMMA(LAMBDA X E, D): D outside the scope of X, with the functions it defines
+   * raised, then E inside it.
+   */
+  private void walkLet(AST_Nd lambdaNode){
+    AST_Nd parameter = lambdaNode.child;
+    AST_Nd definition = lambdaNode.sibling;
+    int[] functions = null;
+    if(parameter.type==AST_Nd_Type.IDENTIFIER)
+      functions = new int[]{define(definition)};
+    else if(parameter.type==AST_Nd_Type.COMMA && definition.type==AST_Nd_Type.TAU
+            && countChildren(parameter)==countChildren(definition)){
+      functions = new int[countChildren(parameter)];
+      int i = 0;
+      for(AST_Nd d=definition.child;d!=null;d=d.sibling)
+        functions[i++] = define(d);
+    }
+    else
+      walk(definition);
+    int[] saved = enter(parameter, functions);
+    walk(parameter.sibling);
+    leave(parameter, saved);
+  }
+
+  /**
+   * Walks a definition, raising it if it is a curried function worth it; returns
+   * the function the name it is bound to then names, or 0.
+   */
+  private int define(AST_Nd definition){
+    AST_Nd recName = null;
+    AST_Nd chain = definition;
+    if(definition.type==AST_Nd_Type.GAMMA && definition.child.type==AST_Nd_Type.YSTAR
+       && definition.child.sibling.type==AST_Nd_Type.LAMBDA
+       && definition.child.sibling.child.type==AST_Nd_Type.IDENTIFIER){ //rec: Y* (LAMBDA f chain)
+      recName = definition.child.sibling.child;
+      chain = recName.sibling;
+    }
+    int arity = arity(chain);
+    if(arity<2){
+      walk(definition);
+      return 0;
+    }
+    int function = ++numFunctions;
+    if(counting){
+      if(function==arities.length){
+        arities = Arrays.copyOf(arities, 2*function);
+        saturatedCalls = Arrays.copyOf(saturatedCalls, 2*function);
+        wrappedUses = Arrays.copyOf(wrappedUses, 2*function);
+      }
+      arities[function] = arity;
+    }
+    else if(saturatedCalls[function]>0 && saturatedCalls[function]>=wrappedUses[function]){
+      raise(chain, arity);
+      raisedFunctions++;
+    }
+    else
+      function = 0;
+    if(recName!=null){
+      int[] saved = enter(recName, new int[]{function});
+      walk(chain);
+      leave(recName, saved);
+    }
+    else
+      walk(chain);
+    return function;
+  }
+
+  /**
+   * The number of nested lambdas with one, different, name each, from node down;
+   * 0 if node is not a lambda.
+   */
+  private static int arity(AST_Nd node){
+    int arity = 0;
+    for(AST_Nd lambdaNode=node;lambdaNode.type==AST_Nd_Type.LAMBDA
+        && lambdaNode.child.type==AST_Nd_Type.IDENTIFIER;lambdaNode=lambdaNode.child.sibling){
+      for(AST_Nd outer=node;outer!=lambdaNode;outer=outer.child.sibling)
+        if(outer.child.symId==lambdaNode.child.symId) //f x x: the second x is meant
+          return arity;
+      arity++;
+    }
+    return arity;
+  }
+
+  /**
+   * Makes LAMBDA x1 (LAMBDA x2 ... (LAMBDA xn E)) LAMBDA (x1, x2, ..., xn) E.
+   */
+  private static void raise(AST_Nd lambdaNode, int arity){
+    AST_Nd commaNode = new AST_Nd();
+    commaNode.setType(AST_Nd_Type.COMMA);
+    commaNode.setSourceLineNumber(lambdaNode.sourceLineNumber);
+    AST_Nd x = lambdaNode.child;
+    commaNode.setChild(x);
+    for(int i=1;i<arity;i++){
+      AST_Nd inner = x.sibling;
+      x.setSibling(inner.child);
+      x = inner.child;
+    }
+    commaNode.setSibling(x.sibling);
+    x.setSibling(null);
+    lambdaNode.setChild(commaNode);
+  }
+
+  /**
+   * A spine of applications f a1 a2 ... ak: saturated if f names a raised
+   * function of arity n<=k, whose first n arguments then become one tau.
+   */
+  private void walkCall(AST_Nd gammaNode){
+    ArrayList<AST_Nd> gammas = new ArrayList<AST_Nd>(); //outermost first
+    AST_Nd head = gammaNode;
+    while(head.type==AST_Nd_Type.GAMMA && head.child.type!=AST_Nd_Type.LAMBDA){
+      gammas.add(head);
+      head = head.child;
+    }
+    int k = gammas.size();
+    AST_Nd[] rands = new AST_Nd[k]; //walked a1 first either way, so both walks meet the definitions in one order
+    for(int i=0;i<k;i++)
+      rands[i] = gammas.get(k-1-i).child.sibling;
+    int function = head.type==AST_Nd_Type.IDENTIFIER ? target(head.symId) : 0;
+    if(function==0 || k<arities[function]){
+      walk(head);
+      for(AST_Nd rand: rands)
+        walk(rand);
+      return;
+    }
+    int arity = arities[function];
+    if(counting)
+      saturatedCalls[function]++;
+    else{
+      AST_Nd tauNode = new AST_Nd();
+      tauNode.setType(AST_Nd_Type.TAU);
+      tauNode.setSourceLineNumber(head.sourceLineNumber);
+      for(int i=arity-1;i>=0;i--){
+        rands[i].setSibling(tauNode.child);
+        tauNode.setChild(rands[i]);
+      }
+      AST_Nd call = gammas.get(k-arity);
+      head.setSibling(tauNode);
+      call.setChild(head);
+      raisedCalls++;
+    }
+    for(AST_Nd rand: rands)
+      walk(rand);
+  }
+
+  /**
+   * Makes a use of f that is not a saturated call
+   * LAMBDA f$1 (LAMBDA f$2 ... (LAMBDA f$n (f (f$1, f$2, ..., f$n)))); no name
+   * but f is used inside, so the f$i capture nothing.
+   */
+  private static void wrap(AST_Nd node, int arity){
+    AST_Nd f = new AST_Nd();
+    f.setType(AST_Nd_Type.IDENTIFIER);
+    f.setValue(node.value);
+    f.setSymId(node.symId);
+    f.setSourceLineNumber(node.sourceLineNumber);
+    AST_Nd tauNode = new AST_Nd();
+    tauNode.setType(AST_Nd_Type.TAU);
+    tauNode.setSourceLineNumber(node.sourceLineNumber);
+    f.setSibling(tauNode);
+    AST_Nd callNode = new AST_Nd();
+    callNode.setType(AST_Nd_Type.GAMMA);
+    callNode.setSourceLineNumber(node.sourceLineNumber);
+    callNode.setChild(f);
+
+    AST_Nd body = callNode;
+    AST_Nd lastArgument = null;
+    for(int i=arity;i>=1;i--){
+      int symId = Sym_Table.intern(node.value+"$"+i);
+      AST_Nd argument = identifier(symId, node.sourceLineNumber);
+      argument.setSibling(lastArgument);
+      lastArgument = argument;
+      AST_Nd x = identifier(symId, node.sourceLineNumber);
+      x.setSibling(body);
+      if(i==1){
+        node.setType(AST_Nd_Type.LAMBDA);
+        node.setValue(null);
+        node.setSymId(Sym_Table.NONE);
+        node.setChild(x);
+      }
+      else{
+        AST_Nd lambdaNode = new AST_Nd();
+        lambdaNode.setType(AST_Nd_Type.LAMBDA);
+        lambdaNode.setSourceLineNumber(node.sourceLineNumber);
+        lambdaNode.setChild(x);
+        body = lambdaNode;
+      }
+    }
+    tauNode.setChild(lastArgument);
+  }
+
+  private static AST_Nd identifier(int symId, int sourceLineNumber){
+    AST_Nd x = new AST_Nd();
+    x.setType(AST_Nd_Type.IDENTIFIER);
+    x.setValue(Sym_Table.name(symId));
+    x.setSymId(symId);
+    x.setSourceLineNumber(sourceLineNumber);
+    return x;
+  }
+
+  private int target(int symId){
+    return symId>=0 && symId<targets.length ? targets[symId] : 0;
+  }
+
+  /**
+   * Brings the names bound by parameter into scope, naming the given functions,
+   * or none if functions is null; returns what they shadow.
+   */
+  private int[] enter(AST_Nd parameter, int[] functions){
+    AST_Nd[] xs = names(parameter);
+    int[] saved = new int[xs.length];
+    for(int i=0;i<xs.length;i++){
+      int symId = xs[i].symId;
+      if(symId<0)
+        continue;
+      if(symId>=targets.length)
+        targets = Arrays.copyOf(targets, Math.max(2*targets.length, symId+1));
+      saved[i] = targets[symId];
+      targets[symId] = functions==null ? 0 : functions[i];
+    }
+    return saved;
+  }
+
+  private void leave(AST_Nd parameter, int[] saved){
+    AST_Nd[] xs = names(parameter);
+    for(int i=xs.length-1;i>=0;i--)
+      if(xs[i].symId>=0)
+        targets[xs[i].symId] = saved[i];
+  }
+
+  private static AST_Nd[] names(AST_Nd parameter){
+    if(parameter.type!=AST_Nd_Type.COMMA)
+      return new AST_Nd[]{parameter};
+    AST_Nd[] xs = new AST_Nd[countChildren(parameter)];
+    int i = 0;
+    for(AST_Nd childNode=parameter.child;childNode!=null;childNode=childNode.sibling)
+      xs[i++] = childNode;
+    return xs;
+  }
+
+  private static int countChildren(AST_Nd node){
+    int numChildren = 0;
+    for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+      numChildren++;
+    return numChildren;
+  }
+}
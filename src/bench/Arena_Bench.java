@@ -0,0 +1,131 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import ast.AST;
+import ast.AST_Arena;
+import ast.AST_Nd;
+import parser.Parser;
+import scanner.Token;
+
+/**
+ * AST_Nd objects against AST_Arena: heap per node, pre-order walks, standardizing
+ * and building the deltas, on the same tokens.
+ *
+ * usage: java -Xms2g -Xmx2g bench.Arena_Bench [megabytes] [rounds]
+ */
+public class Arena_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int megabytes = args.length>0 ? Integer.parseInt(args[0]) : 8;
+    int rounds = args.length>1 ? Integer.parseInt(args[1]) : 5;
+
+    Path file = Files.createTempFile("rpal-arena", ".rpal");
+    Token[] tokens;
+    try{
+      Program_Gen.write(file, megabytes*1024L*1024L);
+      tokens = Parse_Bench.scan(file.toString());
+    }finally{
+      Files.delete(file);
+    }
+
+    long before = heapInUse();
+    AST ast = new Parser(new Parse_Bench.Replay(tokens)).buildAST();
+    long objectBytes = heapInUse()-before;
+    int objectNodes = walk(ast.root);
+    before = heapInUse();
+    AST_Arena arena = new Parser(new Parse_Bench.Replay(tokens)).buildArena();
+    long arenaBytes = heapInUse()-before;
+    int arenaNodes = walk(arena);
+    if(objectNodes!=arenaNodes)
+      throw new IllegalStateException("trees differ: "+objectNodes+" vs "+arenaNodes+" nodes");
+    System.out.printf("source: %d MB, %d nodes; heap per node: AST_Nd %.1f bytes, AST_Arena %.1f bytes%n",
+                      megabytes, objectNodes, (double)objectBytes/objectNodes, (double)arenaBytes/arenaNodes);
+    ast = null;
+    arena = null;
+
+    for(int round=1;round<=rounds;round++){
+      ast = new Parser(new Parse_Bench.Replay(tokens)).buildAST();
+      arena = new Parser(new Parse_Bench.Replay(tokens)).buildArena();
+
+      long start = System.nanoTime();
+      walk(ast.root);
+      double objectWalk = (System.nanoTime()-start)/1e9;
+      start = System.nanoTime();
+      walk(arena);
+      double arenaWalk = (System.nanoTime()-start)/1e9;
+
+      start = System.nanoTime();
+      ast.standardize();
+      double objectStandardize = (System.nanoTime()-start)/1e9;
+      start = System.nanoTime();
+      arena.standardize();
+      double arenaStandardize = (System.nanoTime()-start)/1e9;
+
+      start = System.nanoTime();
+      ast.createDeltas();
+      double objectDeltas = (System.nanoTime()-start)/1e9;
+      start = System.nanoTime();
+      arena.createDeltas();
+      double arenaDeltas = (System.nanoTime()-start)/1e9;
+
+      System.out.printf("round %d: walk %.0f vs %.0f M nodes/s, standardize %.3f vs %.3f s, deltas %.3f vs %.3f s (AST_Nd vs AST_Arena)%n",
+                        round, objectNodes/objectWalk/1e6, arenaNodes/arenaWalk/1e6,
+                        objectStandardize, arenaStandardize, objectDeltas, arenaDeltas);
+      ast = null;
+      arena = null;
+    }
+  }
+
+  /**
+   * Pre-order walk over the objects; returns the number of nodes.
+   */
+  private static int walk(AST_Nd root){
+    AST_Nd[] pending = new AST_Nd[64];
+    int top = 0;
+    int nodes = 0;
+    pending[top++] = root;
+    while(top>0){
+      AST_Nd node = pending[--top];
+      nodes++;
+      if(top+2>pending.length)
+        pending = Arrays.copyOf(pending, 2*pending.length);
+      if(node.sibling!=null)
+        pending[top++] = node.sibling;
+      if(node.child!=null)
+        pending[top++] = node.child;
+    }
+    return nodes;
+  }
+
+  /**
+   * The same walk over the arena.
+   */
+  private static int walk(AST_Arena arena){
+    int[] pending = new int[64];
+    int top = 0;
+    int nodes = 0;
+    pending[top++] = arena.getRoot();
+    while(top>0){
+      int node = pending[--top];
+      nodes++;
+      if(top+2>pending.length)
+        pending = Arrays.copyOf(pending, 2*pending.length);
+      if(arena.sibling(node)!=AST_Arena.NONE)
+        pending[top++] = arena.sibling(node);
+      if(arena.child(node)!=AST_Arena.NONE)
+        pending[top++] = arena.child(node);
+    }
+    return nodes;
+  }
+
+  private static long heapInUse(){
+    Runtime runtime = Runtime.getRuntime();
+    for(int i=0;i<3;i++)
+      System.gc();
+    return runtime.totalMemory()-runtime.freeMemory();
+  }
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import ast.AST;
+import csem.Delta;
+import csem.Delta_Cache;
+import parser.Parser;
+import scanner.Table_Scanner;
+
+/**
+ * The front end (scan, parse, standardize, build the deltas) against loading the
+ * same deltas from a {@link Delta_Cache} entry.
+ *
+ * usage: java -Xmx2g bench.Cache_Bench [megabytes] [rounds]
+ */
+public class Cache_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int megabytes = args.length>0 ? Integer.parseInt(args[0]) : 4;
+    int rounds = args.length>1 ? Integer.parseInt(args[1]) : 5;
+
+    Path file = Files.createTempFile("rpal-cache", ".rpal");
+    Path directory = Files.createTempDirectory("rpal-cache");
+    try{
+      Program_Gen.write(file, megabytes*1024L*1024L);
+      Delta_Cache deltaCache = new Delta_Cache(directory, Long.MAX_VALUE);
+      byte[] key = Delta_Cache.key(Files.readAllBytes(file));
+
+      Delta rootDelta = frontEnd(file);
+      long start = System.nanoTime();
+      deltaCache.store(key, rootDelta);
+      double store = (System.nanoTime()-start)/1e9;
+      long entryBytes;
+      try(Stream<Path> entries = Files.list(directory)){
+        entryBytes = entries.mapToLong(entry -> entry.toFile().length()).sum();
+      }
+      System.out.printf("source: %d MB; cache entry %.1f MB, stored in %.2f s%n",
+                        megabytes, entryBytes/1048576.0, store);
+
+      for(int round=1;round<=rounds;round++){
+        start = System.nanoTime();
+        frontEnd(file);
+        double frontEnd = (System.nanoTime()-start)/1e9;
+        start = System.nanoTime();
+        byte[] source = Files.readAllBytes(file);
+        if(deltaCache.load(Delta_Cache.key(source))==null)
+          throw new IllegalStateException("cache miss");
+        double load = (System.nanoTime()-start)/1e9;
+        System.out.printf("round %d: front end %.2f s, hash and load %.2f s%n", round, frontEnd, load);
+      }
+    }finally{
+      Files.delete(file);
+      try(Stream<Path> entries = Files.walk(directory)){
+        entries.sorted(Comparator.reverseOrder()).forEach(entry -> entry.toFile().delete());
+      }
+    }
+  }
+
+  private static Delta frontEnd(Path file) throws IOException{
+    AST ast = new Parser(new Table_Scanner(file.toString())).buildAST();
+    ast.standardize();
+    return ast.createDeltas();
+  }
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import ast.AST;
+import csem.CSEMachine;
+import parser.Parser;
+import scanner.Scanner;
+
+/**
+ * The CSE machine on control stacks against compiled code, on a recursive
+ * function whose body has a number of conditional terms: every call copies that
+ * body onto a control stack, and every term a then or else part, unless the
+ * deltas are compiled.
+ *
+ * usage: java -Xss512m -Xmx2g bench.Code_Bench [terms] [calls] [rounds]
+ */
+public class Code_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int terms = args.length>0 ? Integer.parseInt(args[0]) : 60;
+    int calls = args.length>1 ? Integer.parseInt(args[1]) : 1000;
+    int rounds = args.length>2 ? Integer.parseInt(args[2]) : 5;
+
+    Path file = Files.createTempFile("rpal-code", ".rpal");
+    Files.write(file, source(terms, calls).getBytes());
+    PrintStream out = System.out;
+    try{
+      System.out.printf("%d terms, %d calls%n", terms, calls);
+      for(int round=1;round<=rounds;round++){
+        double stack = time(file, out, false);
+        double code = time(file, out, true);
+        System.out.printf("round %d: control stacks %.3f s, compiled %.3f s%n", round, stack, code);
+      }
+    }finally{
+      System.setOut(out);
+      Files.delete(file);
+    }
+  }
+
+  static String source(int terms, int calls){
+    StringBuilder sBuilder = new StringBuilder();
+    sBuilder.append("let rec Loop (N, Acc) = N eq 0 -> Acc | Loop (N - 1, Acc + (0");
+    for(int i=1;i<=terms;i++)
+      sBuilder.append(" + (N gr ").append(i).append(" -> N * ").append(i).append(" | ").append(i).append(" - N)");
+    sBuilder.append(") / 100)\nin Print (Loop (").append(calls).append(", 0))\n");
+    return sBuilder.toString();
+  }
+
+  private static double time(Path file, PrintStream out, boolean compiled) throws IOException{
+    AST ast = new Parser(new Scanner(file.toString())).buildAST();
+    ast.standardize();
+    CSEMachine cseMachine = new CSEMachine(ast);
+    long start = System.nanoTime();
+    if(compiled)
+      cseMachine.compile();
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    try{
+      cseMachine.evaluate_Program();
+    }finally{
+      System.setOut(out);
+    }
+    return (System.nanoTime()-start)/1e9;
+  }
+}
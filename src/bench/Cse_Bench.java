@@ -0,0 +1,74 @@
+package bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import ast.AST;
+import ast.Common_Subexpression_Eliminator;
+import csem.CSEMachine;
+import parser.Parser;
+import scanner.Scanner;
+
+/**
+ * A recursive walk over a tuple, like test.rpal's Psum, that computes Order T - N
+ * twice a step; run as it is and with the common subexpressions bound once, on
+ * compiled code (-pc). The runs include building and compiling the deltas.
+ *
+ * usage: java -Xss512m -Xms2g -Xmx2g bench.Cse_Bench [tuple size] [walks] [rounds]
+ */
+public class Cse_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int size = args.length>0 ? Integer.parseInt(args[0]) : 1000;
+    int walks = args.length>1 ? Integer.parseInt(args[1]) : 10;
+    int rounds = args.length>2 ? Integer.parseInt(args[2]) : 5;
+
+    Path file = Files.createTempFile("rpal-cse", ".rpal");
+    Files.write(file, source(size, walks).getBytes());
+    PrintStream out = System.out;
+    try{
+      for(int round=1;round<=rounds;round++){
+        double plain = run(file, out, false);
+        double eliminated = run(file, out, true);
+        System.out.printf("round %d: run %.3f s, with common subexpressions bound %.3f s%n", round, plain, eliminated);
+      }
+    }finally{
+      Files.delete(file);
+    }
+  }
+
+  static String source(int size, int walks){
+    StringBuilder sBuilder = new StringBuilder("let T = (");
+    for(int i=1;i<=size;i++)
+      sBuilder.append(i>1 ? ", " : "").append(i);
+    sBuilder.append(") in\n")
+            .append("let rec Psum (T, N) = N eq 0 -> 0\n")
+            .append("  | Psum (T, N - 1) + T N * (Order T - N) + (Order T - N) in\n")
+            .append("let rec Walk K = K eq 0 -> 0 | Psum (T, Order T) + Walk (K - 1)\n")
+            .append("in Print (Walk ").append(walks).append(")\n");
+    return sBuilder.toString();
+  }
+
+  private static double run(Path file, PrintStream out, boolean eliminated) throws IOException{
+    AST ast = new Parser(new Scanner(file.toString())).buildAST();
+    ast.standardize();
+    long start = System.nanoTime();
+    if(eliminated){
+      Common_Subexpression_Eliminator eliminator = ast.eliminateCommonSubexpressions();
+      if(eliminator.getIntroducedBindings()==0)
+        throw new IllegalStateException("nothing bound");
+    }
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    try{
+      CSEMachine cseMachine = new CSEMachine(ast);
+      cseMachine.compile();
+      cseMachine.evaluate_Program();
+    }finally{
+      System.setOut(out);
+    }
+    return (System.nanoTime()-start)/1e9;
+  }
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import ast.AST;
+import ast.Dead_Binding_Eliminator;
+import csem.CSEMachine;
+import parser.Parser;
+import scanner.Scanner;
+
+/**
+ * A program that defines a library of helpers, in groups of simultaneous
+ * definitions, and uses two of them; run as it is and with the unused
+ * definitions removed. The runs include building the deltas.
+ *
+ * usage: java -Xss256m -Xmx2g bench.Dead_Bench [groups] [helpers per group] [rounds]
+ */
+public class Dead_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int groups = args.length>0 ? Integer.parseInt(args[0]) : 200;
+    int width = args.length>1 ? Integer.parseInt(args[1]) : 50;
+    int rounds = args.length>2 ? Integer.parseInt(args[2]) : 5;
+
+    Path file = Files.createTempFile("rpal-dead", ".rpal");
+    Files.write(file, source(groups, width).getBytes());
+    PrintStream out = System.out;
+    try{
+      for(int round=1;round<=rounds;round++){
+        double plain = run(file, out, false);
+        double eliminated = run(file, out, true);
+        System.out.printf("round %d: run %.3f s, with dead bindings removed %.3f s%n", round, plain, eliminated);
+      }
+    }finally{
+      Files.delete(file);
+    }
+  }
+
+  static String source(int groups, int width){
+    StringBuilder sBuilder = new StringBuilder();
+    for(int group=0;group<groups;group++){
+      sBuilder.append("let ");
+      for(int i=0;i<width;i++){
+        if(i>0)
+          sBuilder.append(" and ");
+        sBuilder.append("H_").append(group).append('_').append(i).append(" (X, Y) = X * ").append(i+1)
+                .append(" + Y - (X ls Y -> X | Y)");
+      }
+      sBuilder.append(" in\n");
+    }
+    sBuilder.append("Print (H_0_0 (1, 2) + H_").append(groups-1).append("_0 (3, 4))\n");
+    return sBuilder.toString();
+  }
+
+  private static double run(Path file, PrintStream out, boolean eliminated) throws IOException{
+    AST ast = new Parser(new Scanner(file.toString())).buildAST();
+    ast.standardize();
+    long start = System.nanoTime();
+    if(eliminated){
+      Dead_Binding_Eliminator eliminator = ast.eliminateDeadBindings();
+      if(eliminator.getRemovedBindings()==0)
+        throw new IllegalStateException("nothing removed");
+    }
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    try{
+      new CSEMachine(ast).evaluate_Program();
+    }finally{
+      System.setOut(out);
+    }
+    return (System.nanoTime()-start)/1e9;
+  }
+}
@@ -0,0 +1,111 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import ast.AST;
+import parser.Parser;
+import scanner.Table_Scanner;
+
+/**
+ * Deeply nested programs: parses each shape with the iterative parser, then
+ * standardizes it, and prints the wide one, none of which may run out of Java
+ * stack. The recursive parser is tried on the same source for comparison.
+ *
+ * usage: java -Xmx2g bench.Deep_Bench [depth=1000000]
+ */
+public class Deep_Bench{
+
+  public static void main(String[] args){
+    int depth = args.length>0 ? Integer.parseInt(args[0]) : 1000000;
+    for(String shape: new String[]{"parens", "let", "aug", "conditional", "tuple", "where", "and", "fn"}){
+      char[] source = generate(shape, depth).toCharArray();
+
+      long start = System.nanoTime();
+      Parser parser = new Parser(new Table_Scanner(source));
+      parser.setIterative(true);
+      AST ast = parser.buildAST();
+      double parse = (System.nanoTime()-start)/1e9;
+
+      start = System.nanoTime();
+      ast.standardize();
+      double standardize = (System.nanoTime()-start)/1e9;
+
+      String print = "";
+      if(shape.equals("tuple") || shape.equals("and")){ //the deep shapes would print quadratically many dots
+        start = System.nanoTime();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try{
+          ast.print();
+        }finally{
+          System.setOut(out);
+        }
+        print = String.format(", print %.2f s", (System.nanoTime()-start)/1e9);
+      }
+
+      String recursive;
+      try{
+        new Parser(new Table_Scanner(source)).buildAST();
+        recursive = "ok";
+      }catch(StackOverflowError e){
+        recursive = "stack overflow";
+      }
+      System.out.printf("%-11s depth %d: parse %.2f s, standardize %.2f s%s | recursive parser: %s%n",
+                        shape, depth, parse, standardize, print, recursive);
+    }
+  }
+
+  static String generate(String shape, int depth){
+    StringBuilder sBuilder = new StringBuilder();
+    switch(shape){
+      case "parens": //((( ... 1 ... )))
+        for(int i=0;i<depth;i++)
+          sBuilder.append('(');
+        sBuilder.append('1');
+        for(int i=0;i<depth;i++)
+          sBuilder.append(')');
+        break;
+      case "let": //let x = 1 in let x = 1 in ... x
+        for(int i=0;i<depth;i++)
+          sBuilder.append("let x = 1 in\n");
+        sBuilder.append("x\n");
+        break;
+      case "aug": //nil aug 1 aug 1 ...
+        sBuilder.append("nil");
+        for(int i=0;i<depth;i++)
+          sBuilder.append(" aug 1");
+        break;
+      case "conditional": //true -> 1 | true -> 1 | ... 0
+        for(int i=0;i<depth;i++)
+          sBuilder.append("true -> 1 | ");
+        sBuilder.append('0');
+        break;
+      case "where": //x where x = x where x = ... 1
+        sBuilder.append("x");
+        for(int i=0;i<depth;i++)
+          sBuilder.append(" where x = x");
+        sBuilder.setLength(sBuilder.length()-1);
+        sBuilder.append('1');
+        break;
+      case "and": //let x = 1 and x = 1 and ... in x
+        sBuilder.append("let x = 1");
+        for(int i=0;i<depth;i++)
+          sBuilder.append(" and x = 1");
+        sBuilder.append(" in x");
+        break;
+      case "fn": //fn x x ... x . 1
+        sBuilder.append("fn");
+        for(int i=0;i<depth;i++)
+          sBuilder.append(" x");
+        sBuilder.append(" . 1");
+        break;
+      default: //1, 1, ... 1
+        sBuilder.append('1');
+        for(int i=0;i<depth;i++)
+          sBuilder.append(", 1");
+        break;
+    }
+    return sBuilder.toString();
+  }
+}
@@ -0,0 +1,62 @@
+package bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import ast.AST;
+import csem.CSEMachine;
+import parser.Parser;
+import scanner.Token;
+
+/**
+ * Running a generated program with and without its constant expressions folded;
+ * the fold is timed on its own and the runs include building the deltas.
+ *
+ * usage: java -Xss64m -Xmx2g bench.Fold_Bench [megabytes] [rounds]
+ */
+public class Fold_Bench{
+  private static double foldSeconds; //of the last folded run
+
+  public static void main(String[] args) throws IOException{
+    int megabytes = args.length>0 ? Integer.parseInt(args[0]) : 1;
+    int rounds = args.length>1 ? Integer.parseInt(args[1]) : 5;
+
+    Path file = Files.createTempFile("rpal-fold", ".rpal");
+    Token[] tokens;
+    try{
+      Program_Gen.write(file, megabytes*1024L*1024L);
+      tokens = Parse_Bench.scan(file.toString());
+    }finally{
+      Files.delete(file);
+    }
+    System.out.printf("source: %d MB, %d tokens%n", megabytes, tokens.length);
+
+    PrintStream out = System.out;
+    for(int round=1;round<=rounds;round++){
+      double plain = run(tokens, out, false);
+      double folded = run(tokens, out, true);
+      System.out.printf("round %d: run %.3f s; fold %.3f s, then run %.3f s%n", round, plain, foldSeconds, folded);
+    }
+  }
+
+  private static double run(Token[] tokens, PrintStream out, boolean folded){
+    AST ast = new Parser(new Parse_Bench.Replay(tokens)).buildAST();
+    ast.standardize();
+    if(folded){
+      long start = System.nanoTime();
+      ast.foldConstants();
+      foldSeconds = (System.nanoTime()-start)/1e9;
+    }
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    long start = System.nanoTime();
+    try{
+      new CSEMachine(ast).evaluate_Program();
+    }finally{
+      System.setOut(out);
+    }
+    return (System.nanoTime()-start)/1e9;
+  }
+}
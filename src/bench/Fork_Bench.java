@@ -0,0 +1,61 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import ast.AST;
+import parser.Parser;
+import scanner.Token;
+
+/**
+ * Standardizing and building the deltas in one thread and on ForkJoin pools
+ * of 1, 2, 4 .. max threads, on freshly parsed trees of the same tokens.
+ *
+ * usage: java -Xss64m -Xms2g -Xmx2g bench.Fork_Bench [megabytes] [max threads] [rounds]
+ */
+public class Fork_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int megabytes = args.length>0 ? Integer.parseInt(args[0]) : 8;
+    int maxThreads = args.length>1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    int rounds = args.length>2 ? Integer.parseInt(args[2]) : 5;
+
+    Path file = Files.createTempFile("rpal-fork", ".rpal");
+    Token[] tokens;
+    try{
+      Program_Gen.write(file, megabytes*1024L*1024L);
+      tokens = Parse_Bench.scan(file.toString());
+    }finally{
+      Files.delete(file);
+    }
+    System.out.printf("source: %d MB, %d tokens, %d processors%n",
+                      megabytes, tokens.length, Runtime.getRuntime().availableProcessors());
+
+    for(int round=1;round<=rounds;round++){
+      time(round, tokens, null);
+      for(int threads=1;threads<=maxThreads;threads*=2){
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try{
+          time(round, tokens, pool);
+        }finally{
+          pool.shutdown();
+        }
+      }
+    }
+  }
+
+  private static void time(int round, Token[] tokens, ForkJoinPool pool){
+    AST ast = new Parser(new Parse_Bench.Replay(tokens)).buildAST();
+    ast.setForkJoinPool(pool);
+    long start = System.nanoTime();
+    ast.standardize();
+    double standardize = (System.nanoTime()-start)/1e9;
+    start = System.nanoTime();
+    ast.createDeltas();
+    double deltas = (System.nanoTime()-start)/1e9;
+    System.out.printf("round %d, %s: standardize %.3f s, deltas %.3f s%n", round,
+                      pool==null ? "sequential" : pool.getParallelism()+" threads", standardize, deltas);
+  }
+}
@@ -0,0 +1,68 @@
+package bench;
+
+import java.util.Random;
+
+import parser.Incremental_Front_End;
+import parser.Parser;
+import scanner.Table_Scanner;
+
+/**
+ * Time to bring the tree up to date after a one character edit: Incremental_Front_End
+ * against scanning and parsing the whole edited source again.
+ * 
+ * The edits change the last element of the (1, 2, 3) tuples in the generated
+ * program, so every edited source is valid.
+ * 
+ * usage: java bench.Incremental_Bench [kilobytes] [edits]
+ */
+public class Incremental_Bench{
+
+  public static void main(String[] args){
+    int kilobytes = args.length>0 ? Integer.parseInt(args[0]) : 1024;
+    int edits = args.length>1 ? Integer.parseInt(args[1]) : 200;
+
+    String source = Program_Gen.generate(kilobytes*1024L);
+    int[] offsets = editOffsets(source);
+    System.out.printf("source: %.1f KB, %d editable places%n", source.length()/1024.0, offsets.length);
+
+    long start = System.nanoTime();
+    Incremental_Front_End frontEnd = new Incremental_Front_End(source);
+    System.out.printf("initial parse: %.2f ms%n", (System.nanoTime()-start)/1e6);
+
+    Random random = new Random(1);
+    char[] text = source.toCharArray();
+    long incremental = 0;
+    long full = 0;
+    long reparsedTokens = 0;
+    for(int i=0;i<edits;i++){
+      int offset = offsets[random.nextInt(offsets.length)];
+      char digit = (char)('1'+random.nextInt(9));
+      text[offset] = digit;
+
+      start = System.nanoTime();
+      frontEnd.edit(offset, 1, String.valueOf(digit));
+      incremental += System.nanoTime()-start;
+      reparsedTokens += frontEnd.getReparsedTokens();
+
+      start = System.nanoTime();
+      new Parser(new Table_Scanner(text)).buildAST();
+      full += System.nanoTime()-start;
+    }
+    System.out.printf("per edit: incremental %.3f ms (%.1f tokens parsed again), full %.3f ms%n",
+                      incremental/1e6/edits, reparsedTokens/(double)edits, full/1e6/edits);
+  }
+
+  /**
+   * Offsets of the 3 in every "(1, 2, 3)".
+   */
+  private static int[] editOffsets(String source){
+    int count = 0;
+    for(int i=source.indexOf("(1, 2, 3)");i>=0;i=source.indexOf("(1, 2, 3)", i+1))
+      count++;
+    int[] offsets = new int[count];
+    count = 0;
+    for(int i=source.indexOf("(1, 2, 3)");i>=0;i=source.indexOf("(1, 2, 3)", i+1))
+      offsets[count++] = i+7;
+    return offsets;
+  }
+}
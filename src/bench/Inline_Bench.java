@@ -0,0 +1,72 @@
+package bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import ast.AST;
+import ast.Inliner;
+import csem.CSEMachine;
+import parser.Parser;
+import scanner.Scanner;
+
+/**
+ * A loop that calls small helpers on every step; run as it is and with the
+ * helpers inlined, on compiled code (-pc). The runs include building and
+ * compiling the deltas. On control stacks every lookup of the loop copies its
+ * body, which inlining makes bigger.
+ *
+ * usage: java -Xss512m -Xmx2g bench.Inline_Bench [steps] [rounds]
+ */
+public class Inline_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int steps = args.length>0 ? Integer.parseInt(args[0]) : 200000;
+    int rounds = args.length>1 ? Integer.parseInt(args[1]) : 5;
+
+    Path file = Files.createTempFile("rpal-inline", ".rpal");
+    Files.write(file, source(steps).getBytes());
+    PrintStream out = System.out;
+    try{
+      for(int round=1;round<=rounds;round++){
+        double plain = run(file, out, false);
+        double inlined = run(file, out, true);
+        System.out.printf("round %d: run %.3f s, with the helpers inlined %.3f s%n", round, plain, inlined);
+      }
+    }finally{
+      Files.delete(file);
+    }
+  }
+
+  static String source(int steps){
+    return "let Inc x = x + 1 in\n"
+           +"let Mix x = Inc (x * 3) in\n"
+           +"let Add a b = a + b in\n"
+           +"let Pick c = c -> 1 | 2 in\n"
+           +"let Step (n, acc) = Add acc (Inc (Mix n) + Pick (n gr 5)) in\n"
+           +"let rec Loop n acc = n eq 0 -> acc | Loop (n - 1) (Step (n, acc)) in\n"
+           +"Print (Loop "+steps+" 0)\n";
+  }
+
+  private static double run(Path file, PrintStream out, boolean inlined) throws IOException{
+    AST ast = new Parser(new Scanner(file.toString())).buildAST();
+    ast.standardize();
+    long start = System.nanoTime();
+    if(inlined){
+      Inliner inliner = ast.inlineLambdas();
+      if(inliner.getInlinedCalls()==0)
+        throw new IllegalStateException("nothing inlined");
+    }
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    try{
+      CSEMachine cseMachine = new CSEMachine(ast);
+      cseMachine.compile();
+      cseMachine.evaluate_Program();
+    }finally{
+      System.setOut(out);
+    }
+    return (System.nanoTime()-start)/1e9;
+  }
+}
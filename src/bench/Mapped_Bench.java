@@ -0,0 +1,62 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import parser.Parser;
+import scanner.Lexer;
+import scanner.Mapped_Scanner;
+import scanner.Scanner;
+import scanner.Table_Scanner;
+
+/**
+ * Syntax checks a large generated program with each scanner and reports time and
+ * heap. Run it with a heap smaller than the source to see that the memory mapped
+ * scanner does not need the source on the heap:
+ * 
+ * usage: java -Xmx64m bench.Mapped_Bench [megabytes]
+ */
+public class Mapped_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int megabytes = args.length>0 ? Integer.parseInt(args[0]) : 100;
+
+    Path file = Files.createTempFile("rpal-mapped", ".rpal");
+    try{
+      Program_Gen.write(file, megabytes*1024L*1024L);
+      double size = Files.size(file)/(1024.0*1024.0);
+      System.out.printf("source: %.1f MB, max heap: %d MB%n", size, Runtime.getRuntime().maxMemory()/(1024*1024));
+      String fileName = file.toString();
+      for(String mode: new String[]{"Mapped_Scanner", "Scanner", "Table_Scanner"}){
+        try{
+          long start = System.nanoTime();
+          new Parser(createLexer(mode, fileName)).checkSyntax();
+          double seconds = (System.nanoTime()-start)/1e9;
+          System.out.printf("%-15s %6.2f s  %6.1f MB/s  heap after GC %d MB%n", mode, seconds, size/seconds, usedHeap()/(1024*1024));
+        }catch(OutOfMemoryError e){
+          System.out.printf("%-15s out of memory%n", mode);
+        }
+      }
+    }finally{
+      Files.delete(file);
+    }
+  }
+
+  private static Lexer createLexer(String mode, String fileName) throws IOException{
+    switch(mode){
+      case "Mapped_Scanner":
+        return new Mapped_Scanner(fileName);
+      case "Table_Scanner":
+        return new Table_Scanner(fileName);
+      default:
+        return new Scanner(fileName);
+    }
+  }
+
+  private static long usedHeap(){
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    return runtime.totalMemory()-runtime.freeMemory();
+  }
+}
@@ -0,0 +1,59 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import ast.AST;
+import ast.AST_Arena;
+import parser.Parser;
+import scanner.Token;
+
+/**
+ * Parsing and then standardizing in a pass of its own, against standardizing
+ * every node as the parser builds it, on the same tokens, for AST_Nd objects and
+ * for the arena.
+ *
+ * usage: java -Xms2g -Xmx2g bench.OnePass_Bench [megabytes] [rounds]
+ */
+public class OnePass_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int megabytes = args.length>0 ? Integer.parseInt(args[0]) : 8;
+    int rounds = args.length>1 ? Integer.parseInt(args[1]) : 5;
+
+    Path file = Files.createTempFile("rpal-onepass", ".rpal");
+    Token[] tokens;
+    try{
+      Program_Gen.write(file, megabytes*1024L*1024L);
+      tokens = Parse_Bench.scan(file.toString());
+    }finally{
+      Files.delete(file);
+    }
+    System.out.printf("source: %d MB, %d tokens%n", megabytes, tokens.length);
+
+    for(int round=1;round<=rounds;round++){
+      for(boolean arena: new boolean[]{false, true}){
+        double twoPass = time(tokens, arena, false);
+        double onePass = time(tokens, arena, true);
+        System.out.printf("round %d, %s: parse then standardize %.3f s, standardize while parsing %.3f s%n",
+                          round, arena ? "AST_Arena" : "AST_Nd", twoPass, onePass);
+      }
+    }
+  }
+
+  private static double time(Token[] tokens, boolean arena, boolean standardizing){
+    Parser parser = new Parser(new Parse_Bench.Replay(tokens));
+    parser.setStandardizing(standardizing);
+    long start = System.nanoTime();
+    if(arena){
+      AST_Arena tree = parser.buildArena();
+      tree.standardize();
+    }
+    else{
+      AST ast = parser.buildAST();
+      ast.standardize();
+    }
+    return (System.nanoTime()-start)/1e9;
+  }
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.concurrent.ForkJoinPool;
+
+import scanner.Lexer;
+import scanner.Parallel_Lexer;
+import scanner.Table_Scanner;
+import scanner.Token;
+
+/**
+ * Scan time of Parallel_Lexer on 1, 2, 4, ... worker threads against Table_Scanner,
+ * after checking that both produce the same tokens, on the generated source and on
+ * one whose chunks split inside a string with too large an integer in it.
+ * 
+ * usage: java bench.Par_Bench [megabytes] [max threads] [rounds]
+ */
+public class Par_Bench{
+
+  public static void main(String[] args){
+    int megabytes = args.length>0 ? Integer.parseInt(args[0]) : 8;
+    int maxThreads = args.length>1 ? Integer.parseInt(args[1]) : 16;
+    int rounds = args.length>2 ? Integer.parseInt(args[2]) : 3;
+
+    char[] source = Program_Gen.generate(megabytes*1024L*1024L).toCharArray();
+    System.out.printf("source: %.1f MB, %d cores%n", source.length/(1024.0*1024.0), Runtime.getRuntime().availableProcessors());
+    ForkJoinPool checkPool = new ForkJoinPool(Math.min(4, maxThreads));
+    check(source, checkPool);
+    check(splitString().toCharArray(), checkPool);
+    checkPool.shutdown();
+
+    double sequential = Double.MAX_VALUE;
+    for(int round=0;round<rounds;round++){
+      long start = System.nanoTime();
+      drain(new Table_Scanner(source));
+      sequential = Math.min(sequential, (System.nanoTime()-start)/1e9);
+    }
+    System.out.printf("Table_Scanner: %.2f s%n", sequential);
+    for(int threads=1;threads<=maxThreads;threads*=2){
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      double best = Double.MAX_VALUE;
+      for(int round=0;round<rounds;round++){
+        long start = System.nanoTime();
+        drain(new Parallel_Lexer(source, pool));
+        best = Math.min(best, (System.nanoTime()-start)/1e9);
+      }
+      pool.shutdown();
+      System.out.printf("Parallel_Lexer, %2d threads: %.2f s (%.2fx)%n", threads, best, sequential/best);
+    }
+  }
+
+  /**
+   * A string long enough to be split into chunks, one of which starts with digits
+   * that do not fit in an integer.
+   */
+  static String splitString(){
+    String a = "a".repeat(100000);
+    return "let s = '"+a+"\n99999999999\n"+a+"' in Print (Order (1,2))\n";
+  }
+
+  private static void check(char[] source, ForkJoinPool pool){
+    Lexer expected = new Table_Scanner(source);
+    Lexer actual = new Parallel_Lexer(source, pool);
+    for(long count=0;;count++){
+      Token e = expected.readNextToken();
+      Token a = actual.readNextToken();
+      if(e==null && a==null)
+        return;
+      if(e==null || a==null || e.type!=a.type || e.sourceLineNumber!=a.sourceLineNumber || !e.getValue().equals(a.getValue()))
+        throw new IllegalStateException("token "+count+" differs");
+    }
+  }
+
+  private static void drain(Lexer lexer){
+    while(lexer.readNextToken()!=null);
+  }
+}
@@ -0,0 +1,85 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import parser.Parser;
+import scanner.Lexer;
+import scanner.Table_Scanner;
+import scanner.Token;
+
+/**
+ * Parser throughput on its own: the source is scanned once up front, and every
+ * round parses the same tokens again, with the tree kept (buildAST) and without
+ * (checkSyntax), by recursive descent and by precedence climbing.
+ *
+ * usage: java bench.Parse_Bench [megabytes] [rounds]
+ */
+public class Parse_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int megabytes = args.length>0 ? Integer.parseInt(args[0]) : 8;
+    int rounds = args.length>1 ? Integer.parseInt(args[1]) : 5;
+
+    Path file = Files.createTempFile("rpal-parse", ".rpal");
+    Token[] tokens;
+    try{
+      Program_Gen.write(file, megabytes*1024L*1024L);
+      tokens = scan(file.toString());
+    }finally{
+      Files.delete(file);
+    }
+    System.out.printf("source: %d MB, %d tokens%n", megabytes, tokens.length);
+
+    for(int round=1;round<=rounds;round++){
+      for(boolean climbing: new boolean[]{false, true}){
+        double build = time(tokens, climbing, false);
+        double check = time(tokens, climbing, true);
+        System.out.printf("round %d, %s: buildAST %.2f s (%.1f M tokens/s), checkSyntax %.2f s (%.1f M tokens/s)%n",
+                          round, climbing ? "precedence climbing" : "recursive descent",
+                          build, tokens.length/build/1e6, check, tokens.length/check/1e6);
+      }
+    }
+  }
+
+  private static double time(Token[] tokens, boolean climbing, boolean checkOnly){
+    Parser parser = new Parser(new Replay(tokens));
+    parser.setPrecedenceClimbing(climbing);
+    long start = System.nanoTime();
+    if(checkOnly)
+      parser.checkSyntax();
+    else
+      parser.buildAST();
+    return (System.nanoTime()-start)/1e9;
+  }
+
+  static Token[] scan(String fileName) throws IOException{
+    Lexer lexer = new Table_Scanner(fileName);
+    Token[] tokens = new Token[1024];
+    int count = 0;
+    for(Token token=lexer.readNextToken();token!=null;token=lexer.readNextToken()){
+      if(count==tokens.length)
+        tokens = Arrays.copyOf(tokens, 2*count);
+      tokens[count++] = token;
+    }
+    return Arrays.copyOf(tokens, count);
+  }
+
+  /**
+   * Hands out already scanned tokens.
+   */
+  static class Replay implements Lexer{
+    private final Token[] tokens;
+    private int next;
+
+    Replay(Token[] tokens){
+      this.tokens = tokens;
+    }
+
+    public Token readNextToken(){
+      return next<tokens.length ? tokens[next++] : null;
+    }
+  }
+}
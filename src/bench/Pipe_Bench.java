@@ -0,0 +1,48 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import parser.Parser;
+import scanner.Lexer;
+import scanner.Pipelined_Lexer;
+import scanner.Scanner;
+import scanner.Table_Scanner;
+
+/**
+ * Front end time (scan + parse) with the lexer on the parser's thread against the
+ * lexer on its own thread feeding the parser through Pipelined_Lexer.
+ * 
+ * usage: java bench.Pipe_Bench [megabytes] [rounds]
+ */
+public class Pipe_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int megabytes = args.length>0 ? Integer.parseInt(args[0]) : 8;
+    int rounds = args.length>1 ? Integer.parseInt(args[1]) : 5;
+
+    Path file = Files.createTempFile("rpal-pipe", ".rpal");
+    try{
+      Program_Gen.write(file, megabytes*1024L*1024L);
+      String fileName = file.toString();
+      System.out.printf("source: %.1f MB, %d cores%n", Files.size(file)/(1024.0*1024.0), Runtime.getRuntime().availableProcessors());
+      for(int round=1;round<=rounds;round++){
+        double scanner = time(new Scanner(fileName));
+        double pipedScanner = time(new Pipelined_Lexer(new Scanner(fileName)));
+        double table = time(new Table_Scanner(fileName));
+        double pipedTable = time(new Pipelined_Lexer(new Table_Scanner(fileName)));
+        System.out.printf("round %d: Scanner %.2f s, piped %.2f s | Table_Scanner %.2f s, piped %.2f s%n",
+                          round, scanner, pipedScanner, table, pipedTable);
+      }
+    }finally{
+      Files.delete(file);
+    }
+  }
+
+  private static double time(Lexer lexer){
+    long start = System.nanoTime();
+    new Parser(lexer).buildAST();
+    return (System.nanoTime()-start)/1e9;
+  }
+}
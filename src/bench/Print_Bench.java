@@ -0,0 +1,74 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import ast.AST;
+import ast.AST_Nd;
+import ast.AST_Nd_Type;
+import parser.Parser;
+import scanner.Literal_Codec;
+
+/**
+ * Printing a large tree: AST.print through one buffered writer, against a printf
+ * or println per node with the prefix built anew for each, as print() used to.
+ * Both write to a file.
+ *
+ * usage: java -Xmx2g bench.Print_Bench [megabytes] [rounds]
+ */
+public class Print_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int megabytes = args.length>0 ? Integer.parseInt(args[0]) : 4;
+    int rounds = args.length>1 ? Integer.parseInt(args[1]) : 5;
+
+    Path file = Files.createTempFile("rpal-print", ".rpal");
+    Path out = Files.createTempFile("rpal-print", ".txt");
+    try{
+      Program_Gen.write(file, megabytes*1024L*1024L);
+      AST ast = new Parser(new Parse_Bench.Replay(Parse_Bench.scan(file.toString()))).buildAST();
+      ast.standardize();
+      for(int round=1;round<=rounds;round++){
+        long start = System.nanoTime();
+        try(Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(out)), 1<<20)){
+          ast.print(writer);
+        }
+        double buffered = (System.nanoTime()-start)/1e9;
+        long bytes = Files.size(out);
+
+        start = System.nanoTime();
+        try(PrintStream printStream = new PrintStream(Files.newOutputStream(out))){
+          perNode(ast.root, "", printStream);
+        }
+        double perNode = (System.nanoTime()-start)/1e9;
+        if(Files.size(out)!=bytes)
+          throw new IllegalStateException("outputs differ");
+        System.out.printf("round %d: %.1f MB printed; buffered writer %.2f s, per node %.2f s%n",
+                          round, bytes/1048576.0, buffered, perNode);
+      }
+    }finally{
+      Files.delete(file);
+      Files.delete(out);
+    }
+  }
+
+  /**
+   * The old printer; recursive, so run it on shallow trees only.
+   */
+  private static void perNode(AST_Nd node, String printPrefix, PrintStream out){
+    for(;node!=null;node=node.sibling){
+      if(node.type==AST_Nd_Type.IDENTIFIER || node.type==AST_Nd_Type.INTEGER)
+        out.printf(printPrefix+node.type.getPrintName()+"\n", node.value);
+      else if(node.type==AST_Nd_Type.STRING)
+        out.printf(printPrefix+node.type.getPrintName()+"\n", Literal_Codec.escape(node.value));
+      else
+        out.println(printPrefix+node.type.getPrintName());
+      perNode(node.child, printPrefix+".", out);
+    }
+  }
+}
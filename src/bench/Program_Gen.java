@@ -0,0 +1,65 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates large, valid RPAL programs for the benchmarks.
+ * 
+ * The program is one wide tuple, Print (Order (e0, e1, ...)), so its size does not
+ * depend on how deep the parser can recurse. The elements cycle through
+ * definitions, conditionals, strings and comments to give a realistic token mix.
+ */
+public class Program_Gen{
+
+  public static String generate(long targetBytes){
+    StringBuilder sBuilder = new StringBuilder();
+    sBuilder.append("// generated program\nPrint (Order (\n");
+    for(int i=0;sBuilder.length()<targetBytes;i++)
+      appendElement(sBuilder, i);
+    sBuilder.append("  0\n))\n");
+    return sBuilder.toString();
+  }
+
+  public static void write(Path file, long targetBytes) throws IOException{
+    try(BufferedWriter writer = Files.newBufferedWriter(file)){
+      write(writer, targetBytes);
+    }
+  }
+
+  public static void write(Writer writer, long targetBytes) throws IOException{
+    StringBuilder sBuilder = new StringBuilder();
+    writer.write("// generated program\nPrint (Order (\n");
+    long written = 0;
+    for(int i=0;written<targetBytes;i++){
+      sBuilder.setLength(0);
+      appendElement(sBuilder, i);
+      writer.append(sBuilder);
+      written += sBuilder.length();
+    }
+    writer.write("  0\n))\n");
+  }
+
+  private static void appendElement(StringBuilder sBuilder, int i){
+    switch(i%4){
+      case 0:
+        sBuilder.append("  (let Sum_").append(i).append(" (A) = Psum (A, Order A)\n")
+                .append("     where rec Psum (T, N) = N eq 0 -> 0 | Psum (T, N - 1) + T N\n")
+                .append("   in Sum_").append(i).append(" (1, 2, 3)),\n");
+        break;
+      case 1:
+        sBuilder.append("  Conc 'row ").append(i).append("\\t' (ItoS (").append(i).append(" * 2 + 1)), // a 'quoted' comment ();,\n");
+        break;
+      case 2:
+        sBuilder.append("  ((fn x y. x ** 2 - y / 3) ").append(i).append(" 7 gr 10 -> true | false & not (")
+                .append(i).append(" ls 3) or ").append(i).append(" ge 0),\n");
+        break;
+      default:
+        sBuilder.append("  (nil aug ").append(i).append(") aug 'x',\n");
+        break;
+    }
+  }
+}
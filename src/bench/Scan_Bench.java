@@ -0,0 +1,74 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import scanner.Lexer;
+import scanner.Scanner;
+import scanner.Table_Scanner;
+import scanner.Token;
+
+/**
+ * Scanner throughput: regex driven Scanner against the table driven Table_Scanner.
+ * 
+ * usage: java bench.Scan_Bench [megabytes] [rounds]
+ */
+public class Scan_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int megabytes = args.length>0 ? Integer.parseInt(args[0]) : 8;
+    int rounds = args.length>1 ? Integer.parseInt(args[1]) : 5;
+
+    Path file = Files.createTempFile("rpal-scan", ".rpal");
+    try{
+      Program_Gen.write(file, megabytes*1024L*1024L);
+      double size = Files.size(file)/(1024.0*1024.0);
+      String fileName = file.toString();
+      System.out.printf("source: %.1f MB, %d tokens%n", size, compare(fileName));
+
+      for(int round=1;round<=rounds;round++){
+        double regex = time(new Scanner(fileName));
+        double table = time(new Table_Scanner(fileName));
+        System.out.printf("round %d: Scanner %.1f MB/s, Table_Scanner %.1f MB/s (x%.1f)%n",
+                          round, size/regex, size/table, regex/table);
+      }
+    }finally{
+      Files.delete(file);
+    }
+  }
+
+  /**
+   * Seconds taken to drain the lexer.
+   */
+  static double time(Lexer lexer){
+    long start = System.nanoTime();
+    int tokens = 0;
+    while(lexer.readNextToken()!=null)
+      tokens++;
+    if(tokens==0)
+      throw new IllegalStateException("no tokens");
+    return (System.nanoTime()-start)/1e9;
+  }
+
+  /**
+   * Checks that both scanners produce the same token stream; returns its length.
+   */
+  static int compare(String fileName) throws IOException{
+    Lexer expected = new Scanner(fileName);
+    Lexer actual = new Table_Scanner(fileName);
+    int tokens = 0;
+    while(true){
+      Token e = expected.readNextToken();
+      Token a = actual.readNextToken();
+      if(e==null || a==null){
+        if(e!=a)
+          throw new IllegalStateException("token streams differ in length after "+tokens+" tokens");
+        return tokens;
+      }
+      if(e.type!=a.type || !e.getValue().equals(a.getValue()) || e.sourceLineNumber!=a.sourceLineNumber)
+        throw new IllegalStateException("token "+tokens+" differs: "+e.getValue()+" vs "+a.getValue());
+      tokens++;
+    }
+  }
+}
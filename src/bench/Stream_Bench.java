@@ -0,0 +1,71 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import parser.Parser;
+import scanner.Stream_Scanner;
+import scanner.Table_Scanner;
+
+/**
+ * End to end latency of handing a generated program to the front end (syntax
+ * check) through a temp file, against streaming it through a pipe into
+ * Stream_Scanner while it is being generated. With a small heap (e.g. -Xmx32m)
+ * only the streamed run fits.
+ * 
+ * usage: java bench.Stream_Bench [megabytes] [rounds]
+ */
+public class Stream_Bench{
+
+  public static void main(String[] args) throws Exception{
+    int megabytes = args.length>0 ? Integer.parseInt(args[0]) : 32;
+    int rounds = args.length>1 ? Integer.parseInt(args[1]) : 3;
+    long bytes = megabytes*1024L*1024L;
+
+    for(int round=1;round<=rounds;round++){
+      double stream = viaPipe(bytes);
+      String file;
+      try{
+        file = String.format("%.2f s", viaTempFile(bytes));
+      }catch(OutOfMemoryError e){
+        file = "out of memory";
+      }
+      System.out.printf("round %d: streamed %.2f s, temp file %s%n", round, stream, file);
+    }
+  }
+
+  private static double viaTempFile(long bytes) throws IOException{
+    long start = System.nanoTime();
+    Path file = Files.createTempFile("rpal-stream", ".rpal");
+    try{
+      Program_Gen.write(file, bytes);
+      new Parser(new Table_Scanner(file.toString())).checkSyntax();
+    }finally{
+      Files.delete(file);
+    }
+    return (System.nanoTime()-start)/1e9;
+  }
+
+  private static double viaPipe(long bytes) throws Exception{
+    long start = System.nanoTime();
+    PipedInputStream input = new PipedInputStream(64*1024);
+    PipedOutputStream output = new PipedOutputStream(input);
+    Thread generator = new Thread(()->{
+      try(Writer writer = new BufferedWriter(new OutputStreamWriter(output))){
+        Program_Gen.write(writer, bytes);
+      }catch(IOException e){
+        throw new RuntimeException(e);
+      }
+    }, "rpal-generator");
+    generator.start();
+    new Parser(new Stream_Scanner(input)).checkSyntax();
+    generator.join();
+    return (System.nanoTime()-start)/1e9;
+  }
+}
@@ -0,0 +1,71 @@
+package bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import ast.AST;
+import csem.CSEMachine;
+import parser.Parser;
+import scanner.Scanner;
+
+/**
+ * A loop that calls a function of a wide tuple, f (x1, ..., xn), on every step;
+ * on control stacks, where each call binds the n variables from a tuple, and on
+ * compiled code, where the tuple is not built at all.
+ *
+ * usage: java -Xss512m -Xmx2g bench.Tuple_Bench [width] [steps] [rounds]
+ */
+public class Tuple_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int width = args.length>0 ? Integer.parseInt(args[0]) : 64;
+    int steps = args.length>1 ? Integer.parseInt(args[1]) : 20000;
+    int rounds = args.length>2 ? Integer.parseInt(args[2]) : 5;
+
+    Path file = Files.createTempFile("rpal-tuple", ".rpal");
+    Files.write(file, source(width, steps).getBytes());
+    PrintStream out = System.out;
+    try{
+      System.out.printf("width %d, %d steps%n", width, steps);
+      for(int round=1;round<=rounds;round++){
+        double stack = time(file, out, false);
+        double code = time(file, out, true);
+        System.out.printf("round %d: control stacks %.3f s, compiled %.3f s%n", round, stack, code);
+      }
+    }finally{
+      Files.delete(file);
+    }
+  }
+
+  static String source(int width, int steps){
+    StringBuilder sBuilder = new StringBuilder();
+    sBuilder.append("let F (X1");
+    for(int i=2;i<=width;i++)
+      sBuilder.append(", X").append(i);
+    sBuilder.append(") = X1 + X").append(width).append(" in\n");
+    sBuilder.append("let rec Loop (N, Acc) = N eq 0 -> Acc | Loop (N - 1, Acc + F (N");
+    for(int i=2;i<=width;i++)
+      sBuilder.append(", ").append(i);
+    sBuilder.append(") / 100)\nin Print (Loop (").append(steps).append(", 0))\n");
+    return sBuilder.toString();
+  }
+
+  private static double time(Path file, PrintStream out, boolean compiled) throws IOException{
+    AST ast = new Parser(new Scanner(file.toString())).buildAST();
+    ast.standardize();
+    CSEMachine cseMachine = new CSEMachine(ast);
+    long start = System.nanoTime();
+    if(compiled)
+      cseMachine.compile();
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    try{
+      cseMachine.evaluate_Program();
+    }finally{
+      System.setOut(out);
+    }
+    return (System.nanoTime()-start)/1e9;
+  }
+}
@@ -0,0 +1,68 @@
+package bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import ast.AST;
+import ast.Uncurrier;
+import csem.CSEMachine;
+import parser.Parser;
+import scanner.Scanner;
+
+/**
+ * A loop of curried functions, called with all their arguments on every step;
+ * run as it is and with the functions taking their arguments in one tuple, on
+ * compiled code (-pc). The runs include building and compiling the deltas.
+ *
+ * usage: java -Xss512m -Xmx2g bench.Uncurry_Bench [steps] [rounds]
+ */
+public class Uncurry_Bench{
+
+  public static void main(String[] args) throws IOException{
+    int steps = args.length>0 ? Integer.parseInt(args[0]) : 200000;
+    int rounds = args.length>1 ? Integer.parseInt(args[1]) : 5;
+
+    Path file = Files.createTempFile("rpal-uncurry", ".rpal");
+    Files.write(file, source(steps).getBytes());
+    PrintStream out = System.out;
+    try{
+      for(int round=1;round<=rounds;round++){
+        double plain = run(file, out, false);
+        double uncurried = run(file, out, true);
+        System.out.printf("round %d: run %.3f s, uncurried %.3f s%n", round, plain, uncurried);
+      }
+    }finally{
+      Files.delete(file);
+    }
+  }
+
+  static String source(int steps){
+    return "let Mix a b c d = a * 3 + b - c + d in\n"
+           +"let Clamp lo hi x = x ls lo -> lo | x gr hi -> hi | x in\n"
+           +"let rec Loop n acc k = n eq 0 -> acc | Loop (n - 1) (Clamp 0 1000000 (Mix acc n k 7)) (k + 1) in\n"
+           +"Print (Loop "+steps+" 0 1)\n";
+  }
+
+  private static double run(Path file, PrintStream out, boolean uncurried) throws IOException{
+    AST ast = new Parser(new Scanner(file.toString())).buildAST();
+    ast.standardize();
+    long start = System.nanoTime();
+    if(uncurried){
+      Uncurrier uncurrier = ast.raiseArities();
+      if(uncurrier.getRaisedFunctions()==0)
+        throw new IllegalStateException("nothing uncurried");
+    }
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    try{
+      CSEMachine cseMachine = new CSEMachine(ast);
+      cseMachine.compile();
+      cseMachine.evaluate_Program();
+    }finally{
+      System.setOut(out);
+    }
+    return (System.nanoTime()-start)/1e9;
+  }
+}
@@ -1,15 +1,19 @@
 package csem;
 
+import java.util.EmptyStackException;
 import java.util.Stack;
 import ast.AST;
+import ast.AST_Arena;
 import ast.AST_Nd;
 import ast.AST_Nd_Type;
+import scanner.Sym_Table;
 
 //group 44
 public class CSEMachine{
 
   private Stack<AST_Nd> stack_Value;
   private Delta delta_Root;
+  private boolean compiled; //run each delta's Delta_Code with a program counter
 
   public CSEMachine(AST ast){
     if(!ast.isStandardized())
@@ -19,8 +23,41 @@ public class CSEMachine{
     stack_Value = new Stack<AST_Nd>();
   }
 
+  /**
+   * Runs a tree standardized in an arena; see {@link AST_Arena#createDeltas()}.
+   */
+  public CSEMachine(AST_Arena arena){
+    if(!arena.isStandardized())
+      throw new RuntimeException("AST has NOT been standardized!"); 
+    delta_Root = arena.createDeltas();
+    delta_Root.setLinkedEnv(new Environment()); //PE
+    stack_Value = new Stack<AST_Nd>();
+  }
+
+  /**
+   * Runs deltas built earlier, e.g. loaded from a {@link Delta_Cache}.
+   */
+  public CSEMachine(Delta rootDelta){
+    delta_Root = rootDelta;
+    delta_Root.setLinkedEnv(new Environment()); //PE
+    stack_Value = new Stack<AST_Nd>();
+  }
+
+  /**
+   * Lowers every delta to a {@link Delta_Code} and runs those from now on: a call
+   * or a conditional then moves a program counter instead of copying a body, or a
+   * then or else part, onto a new control stack.
+   */
+  public void compile(){
+    Delta_Code.compileAll(delta_Root);
+    compiled = true;
+  }
+
   public void evaluate_Program(){
-    process_CS(delta_Root, delta_Root.linkedEnv);
+    if(compiled)
+      run_Code(delta_Root, delta_Root.linkedEnv);
+    else
+      process_CS(delta_Root, delta_Root.linkedEnv);
   }
 
   private void process_CS(Delta currentDelta, Environment currentEnv){
@@ -32,6 +69,80 @@ public class CSEMachine{
       processCurrentNode(currentDelta, currentEnv, controlStack);
   }
 
+  /**
+   * process_CS over compiled code. Literals are pushed as copies and each lambda
+   * makes its own closure, as the code is shared by every call of the delta where
+   * a control stack would hold copies of the body's nodes.
+   */
+  private void run_Code(Delta currentDelta, Environment currentEnv){
+    Code_Frame frame = new Code_Frame(currentDelta.code);
+    byte[] ops = frame.code.ops;
+    AST_Nd[] nodes = frame.code.nodes;
+    int[] args = frame.code.args;
+    while(true){
+      AST_Nd node;
+      byte op;
+      if(frame.gammas>0){ //put back by RULE 13
+        frame.gammas--;
+        node = frame.gamma;
+        op = Delta_Code.APPLY;
+      }
+      else if(frame.pc<ops.length){
+        node = nodes[frame.pc];
+        op = ops[frame.pc];
+        frame.pc++;
+      }
+      else
+        return;
+      switch(op){
+        case Delta_Code.PUSH:
+          stack_Value.push(copyLeaf(node));
+          break;
+        case Delta_Code.LOAD: // RULE 1
+          stack_Value.push(currentEnv.get(args[frame.pc-1], frame.code.slots[frame.pc-1]));
+          break;
+        case Delta_Code.BUILTIN:
+          stack_Value.push(copyLeaf(node));
+          break;
+        case Delta_Code.TUPLE:
+          createTuple(args[frame.pc-1]);
+          break;
+        case Delta_Code.CLOSURE:
+          stack_Value.push(((Delta)node).closeOver(currentEnv)); //RULE 2
+          break;
+        case Delta_Code.APPLY:
+          applyGamma(currentDelta, node, currentEnv, null, frame);
+          break;
+        case Delta_Code.APPLY_TUPLE:
+          applyTuple(currentDelta, node, currentEnv, frame, args[frame.pc-1]);
+          break;
+        case Delta_Code.BINARY:
+          applyBinaryOperation(node);
+          break;
+        case Delta_Code.UNARY:
+          applyUnaryOperation(node);
+          break;
+        case Delta_Code.BRANCH: // RULE 8
+          if(!popTruthValue())
+            frame.pc = args[frame.pc-1];
+          break;
+        case Delta_Code.JUMP:
+          frame.pc = args[frame.pc-1];
+          break;
+      }
+    }
+  }
+
+  private static AST_Nd copyLeaf(AST_Nd node){
+    AST_Nd copy = new AST_Nd();
+    copy.setType(node.type);
+    copy.setValue(node.value);
+    copy.setSymId(node.symId);
+    copy.setIntValue(node.intValue);
+    copy.setSourceLineNumber(node.sourceLineNumber);
+    return copy;
+  }
+
   private void processCurrentNode(Delta currentDelta, Environment currentEnv, Stack<AST_Nd> currentControlStack){
     AST_Nd node = currentControlStack.pop();
     if(applyBinaryOperation(node))
@@ -45,13 +156,13 @@ public class CSEMachine{
           break;
         case NIL:
         case TAU:
-          createTuple(node);
+          createTuple(getNumChildren(node));
           break;
         case BETA:
           handleBeta((Beta)node, currentControlStack);
           break;
         case GAMMA:
-          applyGamma(currentDelta, node, currentEnv, currentControlStack);
+          applyGamma(currentDelta, node, currentEnv, currentControlStack, null);
           break;
         case DELTA:
           ((Delta)node).setLinkedEnv(currentEnv); //RULE 2
@@ -99,47 +210,47 @@ public class CSEMachine{
     AST_Nd rand1 = stack_Value.pop();
     AST_Nd rand2 = stack_Value.pop();
     if(rand1.type!=AST_Nd_Type.INTEGER || rand2.type!=AST_Nd_Type.INTEGER)
-      Evl_Err.printError(rand1.sourceLineNumber, "Expected two integers; was given \""+rand1.value+"\", \""+rand2.value+"\"");
+      Evl_Err.printError(rand1.sourceLineNumber, "Expected two integers; was given \""+valueOf(rand1)+"\", \""+valueOf(rand2)+"\"");
 
     AST_Nd result = new AST_Nd();
     result.setType(AST_Nd_Type.INTEGER);
 
     switch(type){
       case PLUS:
-        result.setValue(Integer.toString(Integer.parseInt(rand1.value)+Integer.parseInt(rand2.value)));
+        result.setIntValue(rand1.intValue+rand2.intValue);
         break;
       case MINUS:
-        result.setValue(Integer.toString(Integer.parseInt(rand1.value)-Integer.parseInt(rand2.value)));
+        result.setIntValue(rand1.intValue-rand2.intValue);
         break;
       case MULT:
-        result.setValue(Integer.toString(Integer.parseInt(rand1.value)*Integer.parseInt(rand2.value)));
+        result.setIntValue(rand1.intValue*rand2.intValue);
         break;
       case DIV:
-        result.setValue(Integer.toString(Integer.parseInt(rand1.value)/Integer.parseInt(rand2.value)));
+        result.setIntValue(rand1.intValue/rand2.intValue);
         break;
       case EXP:
-        result.setValue(Integer.toString((int)Math.pow(Integer.parseInt(rand1.value), Integer.parseInt(rand2.value))));
+        result.setIntValue((int)Math.pow(rand1.intValue, rand2.intValue));
         break;
       case LS:
-        if(Integer.parseInt(rand1.value)<Integer.parseInt(rand2.value))
+        if(rand1.intValue<rand2.intValue)
           pushTrueNode();
         else
           pushFalseNode();
         return;
       case LE:
-        if(Integer.parseInt(rand1.value)<=Integer.parseInt(rand2.value))
+        if(rand1.intValue<=rand2.intValue)
           pushTrueNode();
         else
           pushFalseNode();
         return;
       case GR:
-        if(Integer.parseInt(rand1.value)>Integer.parseInt(rand2.value))
+        if(rand1.intValue>rand2.intValue)
           pushTrueNode();
         else
           pushFalseNode();
         return;
       case GE:
-        if(Integer.parseInt(rand1.value)>=Integer.parseInt(rand2.value))
+        if(rand1.intValue>=rand2.intValue)
           pushTrueNode();
         else
           pushFalseNode();
@@ -156,20 +267,20 @@ public class CSEMachine{
 
     if(rand1.type==AST_Nd_Type.TRUE || rand1.type==AST_Nd_Type.FALSE){
       if(rand2.type!=AST_Nd_Type.TRUE && rand2.type!=AST_Nd_Type.FALSE)
-        Evl_Err.printError(rand1.sourceLineNumber, "Cannot compare dissimilar types; was given \""+rand1.value+"\", \""+rand2.value+"\"");
+        Evl_Err.printError(rand1.sourceLineNumber, "Cannot compare dissimilar types; was given \""+valueOf(rand1)+"\", \""+valueOf(rand2)+"\"");
       compareTruthValues(rand1, rand2, type);
       return;
     }
 
     if(rand1.type!=rand2.type)
-      Evl_Err.printError(rand1.sourceLineNumber, "Cannot compare dissimilar types; was given \""+rand1.value+"\", \""+rand2.value+"\"");
+      Evl_Err.printError(rand1.sourceLineNumber, "Cannot compare dissimilar types; was given \""+valueOf(rand1)+"\", \""+valueOf(rand2)+"\"");
 
     if(rand1.type==AST_Nd_Type.STRING)
       compareStrings(rand1, rand2, type);
     else if(rand1.type==AST_Nd_Type.INTEGER)
       compareIntegers(rand1, rand2, type);
     else
-      Evl_Err.printError(rand1.sourceLineNumber, "Don't know how to " + type + " \""+rand1.value+"\", \""+rand2.value+"\"");
+      Evl_Err.printError(rand1.sourceLineNumber, "Don't know how to " + type + " \""+valueOf(rand1)+"\", \""+valueOf(rand2)+"\"");
 
   }
 
@@ -200,7 +311,7 @@ public class CSEMachine{
   }
 
   private void compareIntegers(AST_Nd rand1, AST_Nd rand2, AST_Nd_Type type){
-    if(Integer.parseInt(rand1.value)==Integer.parseInt(rand2.value))
+    if(rand1.intValue==rand2.intValue)
       if(type==AST_Nd_Type.EQ)
         pushTrueNode();
       else
@@ -222,7 +333,7 @@ public class CSEMachine{
       return;
     }
 
-    Evl_Err.printError(rand1.sourceLineNumber, "Don't know how to " + type + " \""+rand1.value+"\", \""+rand2.value+"\"");
+    Evl_Err.printError(rand1.sourceLineNumber, "Don't know how to " + type + " \""+valueOf(rand1)+"\", \""+valueOf(rand2)+"\"");
   }
 
   private void orAndTruthValues(AST_Nd rand1, AST_Nd rand2, AST_Nd_Type type){
@@ -245,7 +356,7 @@ public class CSEMachine{
     AST_Nd rand2 = stack_Value.pop();
 
     if(rand1.type!=AST_Nd_Type.TUPLE)
-      Evl_Err.printError(rand1.sourceLineNumber, "Cannot augment a non-tuple \""+rand1.value+"\"");
+      Evl_Err.printError(rand1.sourceLineNumber, "Cannot augment a non-tuple \""+valueOf(rand1)+"\"");
 
     AST_Nd childNode = rand1.child;
     if(childNode==null)
@@ -277,7 +388,7 @@ public class CSEMachine{
   private void not(){
     AST_Nd rand = stack_Value.pop();
     if(rand.type!=AST_Nd_Type.TRUE && rand.type!=AST_Nd_Type.FALSE)
-      Evl_Err.printError(rand.sourceLineNumber, "Expecting a truthvalue; was given \""+rand.value+"\"");
+      Evl_Err.printError(rand.sourceLineNumber, "Expecting a truthvalue; was given \""+valueOf(rand)+"\"");
 
     if(rand.type==AST_Nd_Type.TRUE)
       pushFalseNode();
@@ -288,21 +399,25 @@ public class CSEMachine{
   private void neg(){
     AST_Nd rand = stack_Value.pop();
     if(rand.type!=AST_Nd_Type.INTEGER)
-      Evl_Err.printError(rand.sourceLineNumber, "Expecting a truthvalue; was given \""+rand.value+"\"");
+      Evl_Err.printError(rand.sourceLineNumber, "Expecting a truthvalue; was given \""+valueOf(rand)+"\"");
 
     AST_Nd result = new AST_Nd();
     result.setType(AST_Nd_Type.INTEGER);
-    result.setValue(Integer.toString(-1*Integer.parseInt(rand.value)));
+    result.setIntValue(-1*rand.intValue);
     stack_Value.push(result);
   }
 
-  //RULE 3
-  private void applyGamma(Delta currentDelta, AST_Nd node, Environment currentEnv, Stack<AST_Nd> currentControlStack){
+  //RULE 3; on compiled code currentControlStack is null and frame is the caller's
+  private void applyGamma(Delta currentDelta, AST_Nd node, Environment currentEnv, Stack<AST_Nd> currentControlStack, Code_Frame frame){
     AST_Nd rator = stack_Value.pop();
     AST_Nd rand = stack_Value.pop();
 
     if(rator.type==AST_Nd_Type.DELTA){
       Delta nextDelta = (Delta) rator;
+      if(frame!=null){
+        run_Code(nextDelta, new Environment(nextDelta.linkedEnv, bindSlots(nextDelta, rand)));
+        return;
+      }
       
     
       Environment newEnv = new Environment();
@@ -310,25 +425,31 @@ public class CSEMachine{
       
       //RULE 4
       if(nextDelta.boundVars.size()==1){
-        newEnv.doMapping(nextDelta.boundVars.get(0), rand);
+        newEnv.doMapping(nextDelta.boundVarIds[0], rand);
       }
       //RULE 11
       else{
         if(rand.type!=AST_Nd_Type.TUPLE)
-          Evl_Err.printError(rand.sourceLineNumber, "Expected a tuple; was given \""+rand.value+"\"");
+          Evl_Err.printError(rand.sourceLineNumber, "Expected a tuple; was given \""+valueOf(rand)+"\"");
         
+        AST_Nd childNode = rand.child; //one walk down the tuple, not one per variable
         for(int i = 0; i < nextDelta.boundVars.size(); i++){
-          newEnv.doMapping(nextDelta.boundVars.get(i), getNthTupleChild((Tau)rand, i+1)); //+ 1 coz tuple indexing starts at 1
+          newEnv.doMapping(nextDelta.boundVarIds[i], childNode);
+          if(childNode!=null)
+            childNode = childNode.sibling;
         }
       }
       
-      process_CS(nextDelta, newEnv);
+      if(frame!=null)
+        run_Code(nextDelta, newEnv);
+      else
+        process_CS(nextDelta, newEnv);
       return;
     }
     else if(rator.type==AST_Nd_Type.YSTAR){
       //RULE 12
       if(rand.type!=AST_Nd_Type.DELTA)
-        Evl_Err.printError(rand.sourceLineNumber, "Expected a Delta; was given \""+rand.value+"\"");
+        Evl_Err.printError(rand.sourceLineNumber, "Expected a Delta; was given \""+valueOf(rand)+"\"");
       
       Eta etaNode = new Eta();
       etaNode.setDelta((Delta)rand);
@@ -342,65 +463,115 @@ public class CSEMachine{
       stack_Value.push(rator);
       stack_Value.push(((Eta)rator).getDelta());
       //push back two gammas 
-      currentControlStack.push(node);
-      currentControlStack.push(node);
+      if(frame!=null){
+        frame.gamma = node;
+        frame.gammas += 2;
+      }
+      else{
+        currentControlStack.push(node);
+        currentControlStack.push(node);
+      }
       return;
     }
     else if(rator.type==AST_Nd_Type.TUPLE){
       tupleSelection((Tau)rator, rand);
       return;
     }
-    else if(evaluateReservedIdentifiers(rator, rand, currentControlStack))
+    else if(evaluateReservedIdentifiers(rator, rand, currentControlStack, frame))
       return;
     else
-      Evl_Err.printError(rator.sourceLineNumber, "Don't know how to evaluate \""+rator.value+"\"");
+      Evl_Err.printError(rator.sourceLineNumber, "Don't know how to evaluate \""+valueOf(rator)+"\"");
+  }
+
+  /**
+   * RULE 3 for a gamma on a tau whose numChildren values are still on the stack,
+   * under the rator, the first on top. A delta with as many bound variables gets
+   * them in its frame as they are (RULE 11 without the tuple); RULE 13 is run
+   * until the rator is something else, and any other rator gets the tuple.
+   */
+  private void applyTuple(Delta currentDelta, AST_Nd node, Environment currentEnv, Code_Frame frame, int numChildren){
+    AST_Nd rator = stack_Value.pop();
+    while(rator.type==AST_Nd_Type.ETA){ //the two gammas of RULE 13, the first one here
+      stack_Value.push(rator);
+      stack_Value.push(((Eta)rator).getDelta());
+      applyGamma(currentDelta, node, currentEnv, null, frame);
+      rator = stack_Value.pop();
+    }
+    if(rator.type==AST_Nd_Type.DELTA && ((Delta)rator).boundVars.size()==numChildren){
+      Delta nextDelta = (Delta)rator;
+      AST_Nd[] values = new AST_Nd[numChildren];
+      for(int i=0;i<numChildren;i++)
+        values[i] = stack_Value.pop();
+      run_Code(nextDelta, new Environment(nextDelta.linkedEnv, values));
+      return;
+    }
+    createTuple(numChildren);
+    stack_Value.push(rator);
+    applyGamma(currentDelta, node, currentEnv, null, frame);
   }
 
-  private boolean evaluateReservedIdentifiers(AST_Nd rator, AST_Nd rand, Stack<AST_Nd> currentControlStack){
-    switch(rator.value){
-      case "Isinteger":
+  //RULE 4 and RULE 11 for compiled code: the values of a frame, by slot
+  private AST_Nd[] bindSlots(Delta nextDelta, AST_Nd rand){
+    if(nextDelta.boundVars.size()==1)
+      return new AST_Nd[]{rand};
+    if(rand.type!=AST_Nd_Type.TUPLE)
+      Evl_Err.printError(rand.sourceLineNumber, "Expected a tuple; was given \""+valueOf(rand)+"\"");
+
+    AST_Nd[] values = new AST_Nd[nextDelta.boundVars.size()];
+    AST_Nd childNode = rand.child;
+    for(int i=0;i<values.length;i++){
+      values[i] = childNode;
+      if(childNode!=null)
+        childNode = childNode.sibling;
+    }
+    return values;
+  }
+
+  private boolean evaluateReservedIdentifiers(AST_Nd rator, AST_Nd rand, Stack<AST_Nd> currentControlStack, Code_Frame frame){
+    switch(rator.symId){
+      case Sym_Table.ISINTEGER:
         checkTypeAndPushTrueOrFalse(rand, AST_Nd_Type.INTEGER);
         return true;
-      case "Isstring":
+      case Sym_Table.ISSTRING:
         checkTypeAndPushTrueOrFalse(rand, AST_Nd_Type.STRING);
         return true;
-      case "Isdummy":
+      case Sym_Table.ISDUMMY:
         checkTypeAndPushTrueOrFalse(rand, AST_Nd_Type.DUMMY);
         return true;
-      case "Isfunction":
+      case Sym_Table.ISFUNCTION:
         checkTypeAndPushTrueOrFalse(rand, AST_Nd_Type.DELTA);
         return true;
-      case "Istuple":
+      case Sym_Table.ISTUPLE:
         checkTypeAndPushTrueOrFalse(rand, AST_Nd_Type.TUPLE);
         return true;
-      case "Istruthvalue":
+      case Sym_Table.ISTRUTHVALUE:
         if(rand.type==AST_Nd_Type.TRUE||rand.type==AST_Nd_Type.FALSE)
           pushTrueNode();
         else
           pushFalseNode();
         return true;
-      case "Stem":
+      case Sym_Table.STEM:
         stem(rand);
         return true;
-      case "Stern":
+      case Sym_Table.STERN:
         stern(rand);
         return true;
-      case "Conc":
-      case "conc": //typos
-        conc(rand, currentControlStack);
+      case Sym_Table.CONC:
+      case Sym_Table.CONC_LOWER: //typos
+        conc(rand, currentControlStack, frame);
         return true;
-      case "Print":
-      case "print": //typos
+      case Sym_Table.PRINT:
+      case Sym_Table.PRINT_LOWER: //typos
         printNodeValue(rand);
         pushDummyNode();
         return true;
-      case "ItoS":
+      case Sym_Table.ITOS:
         itos(rand);
         return true;
-      case "Order":
+      case Sym_Table.ORDER:
         order(rand);
         return true;
-      case "Null":
+      case Sym_Table.NULL:
         isNullTuple(rand);
         return true;
       default:
@@ -437,7 +608,7 @@ public class CSEMachine{
 
   private void stem(AST_Nd rand){
     if(rand.type!=AST_Nd_Type.STRING)
-      Evl_Err.printError(rand.sourceLineNumber, "Expected a string; was given \""+rand.value+"\"");
+      Evl_Err.printError(rand.sourceLineNumber, "Expected a string; was given \""+valueOf(rand)+"\"");
     
     if(rand.value.isEmpty())
       rand.setValue("");
@@ -449,7 +620,7 @@ public class CSEMachine{
 
   private void stern(AST_Nd rand){
     if(rand.type!=AST_Nd_Type.STRING)
-      Evl_Err.printError(rand.sourceLineNumber, "Expected a string; was given \""+rand.value+"\"");
+      Evl_Err.printError(rand.sourceLineNumber, "Expected a string; was given \""+valueOf(rand)+"\"");
     
     if(rand.value.isEmpty() || rand.value.length()==1)
       rand.setValue("");
@@ -459,11 +630,16 @@ public class CSEMachine{
     stack_Value.push(rand);
   }
 
-  private void conc(AST_Nd rand1, Stack<AST_Nd> currentControlStack){
-    currentControlStack.pop();
+  private void conc(AST_Nd rand1, Stack<AST_Nd> currentControlStack, Code_Frame frame){
+    if(frame!=null){ //the second gamma
+      if(frame.skip()==Delta_Code.APPLY_TUPLE) //its rand is wanted as a tuple after all
+        createTuple(frame.code.args[frame.pc-1]);
+    }
+    else
+      currentControlStack.pop();
     AST_Nd rand2 = stack_Value.pop();
     if(rand1.type!=AST_Nd_Type.STRING || rand2.type!=AST_Nd_Type.STRING)
-      Evl_Err.printError(rand1.sourceLineNumber, "Expected two strings; was given \""+rand1.value+"\", \""+rand2.value+"\"");
+      Evl_Err.printError(rand1.sourceLineNumber, "Expected two strings; was given \""+valueOf(rand1)+"\", \""+valueOf(rand2)+"\"");
 
     AST_Nd result = new AST_Nd();
     result.setType(AST_Nd_Type.STRING);
@@ -474,26 +650,27 @@ public class CSEMachine{
 
   private void itos(AST_Nd rand){
     if(rand.type!=AST_Nd_Type.INTEGER)
-      Evl_Err.printError(rand.sourceLineNumber, "Expected an integer; was given \""+rand.value+"\"");
+      Evl_Err.printError(rand.sourceLineNumber, "Expected an integer; was given \""+valueOf(rand)+"\"");
     
-    rand.setType(AST_Nd_Type.STRING); //all values are stored internally as strings
+    rand.setValue(valueOf(rand));
+    rand.setType(AST_Nd_Type.STRING);
     stack_Value.push(rand);
   }
 
   private void order(AST_Nd rand){
     if(rand.type!=AST_Nd_Type.TUPLE)
-      Evl_Err.printError(rand.sourceLineNumber, "Expected a tuple; was given \""+rand.value+"\"");
+      Evl_Err.printError(rand.sourceLineNumber, "Expected a tuple; was given \""+valueOf(rand)+"\"");
 
     AST_Nd result = new AST_Nd();
     result.setType(AST_Nd_Type.INTEGER);
-    result.setValue(Integer.toString(getNumChildren(rand)));
+    result.setIntValue(getNumChildren(rand));
     
     stack_Value.push(result);
   }
 
   private void isNullTuple(AST_Nd rand){
     if(rand.type!=AST_Nd_Type.TUPLE)
-      Evl_Err.printError(rand.sourceLineNumber, "Expected a tuple; was given \""+rand.value+"\"");
+      Evl_Err.printError(rand.sourceLineNumber, "Expected a tuple; was given \""+valueOf(rand)+"\"");
 
     if(getNumChildren(rand)==0)
       pushTrueNode();
@@ -504,11 +681,11 @@ public class CSEMachine{
   // RULE 10
   private void tupleSelection(Tau rator, AST_Nd rand){
     if(rand.type!=AST_Nd_Type.INTEGER)
-      Evl_Err.printError(rand.sourceLineNumber, "Non-integer tuple selection with \""+rand.value+"\"");
+      Evl_Err.printError(rand.sourceLineNumber, "Non-integer tuple selection with \""+valueOf(rand)+"\"");
 
-    AST_Nd result = getNthTupleChild(rator, Integer.parseInt(rand.value));
+    AST_Nd result = getNthTupleChild(rator, rand.intValue);
     if(result==null)
-      Evl_Err.printError(rand.sourceLineNumber, "Tuple selection index "+rand.value+" out of bounds");
+      Evl_Err.printError(rand.sourceLineNumber, "Tuple selection index "+valueOf(rand)+" out of bounds");
 
     stack_Value.push(result);
   }
@@ -530,17 +707,17 @@ public class CSEMachine{
   }
 
   private void handleIdentifiers(AST_Nd node, Environment currentEnv){
-    if(currentEnv.lookup(node.value)!=null) // RULE 1
-      stack_Value.push(currentEnv.lookup(node.value));
-    else if(isReservedIdentifier(node.value))
+    AST_Nd value = currentEnv.lookup(node.symId);
+    if(value!=null) // RULE 1
+      stack_Value.push(value);
+    else if(Sym_Table.isBuiltin(node.symId))
       stack_Value.push(node);
     else
       Evl_Err.printError(node.sourceLineNumber, "Undeclared identifier \""+node.value+"\"");
   }
 
   //RULE 9
-  private void createTuple(AST_Nd node){
-    int numChildren = getNumChildren(node);
+  private void createTuple(int numChildren){
     Tau tupleNode = new Tau();
     if(numChildren==0){
       stack_Value.push(tupleNode);
@@ -567,15 +744,19 @@ public class CSEMachine{
 
   // RULE 8
   private void handleBeta(Beta node, Stack<AST_Nd> currentControlStack){
+    if(popTruthValue())
+      currentControlStack.addAll(node.then_Part);
+    else
+      currentControlStack.addAll(node.else_Part);
+  }
+
+  private boolean popTruthValue(){
     AST_Nd conditionResultNode = stack_Value.pop();
 
     if(conditionResultNode.type!=AST_Nd_Type.TRUE && conditionResultNode.type!=AST_Nd_Type.FALSE)
-      Evl_Err.printError(conditionResultNode.sourceLineNumber, "Expecting a truthvalue; found \""+conditionResultNode.value+"\"");
+      Evl_Err.printError(conditionResultNode.sourceLineNumber, "Expecting a truthvalue; found \""+valueOf(conditionResultNode)+"\"");
 
-    if(conditionResultNode.type==AST_Nd_Type.TRUE)
-      currentControlStack.addAll(node.then_Part);
-    else
-      currentControlStack.addAll(node.else_Part);
+    return conditionResultNode.type==AST_Nd_Type.TRUE;
   }
 
   private int getNumChildren(AST_Nd node){
@@ -588,35 +769,57 @@ public class CSEMachine{
     return numChildren;
   }
   
+  /**
+   * String literals are unescaped by the scanner, so there is nothing left to do here.
+   */
   private void printNodeValue(AST_Nd rand){
-    String evaluationResult = rand.value;
-    evaluationResult = evaluationResult.replace("\\t", "\t");
-    evaluationResult = evaluationResult.replace("\\n", "\n");
-    System.out.print(evaluationResult);
+    System.out.print(valueOf(rand));
   }
 
-  
-  private boolean isReservedIdentifier(String value){
-    switch(value){
-      case "Isinteger":
-      case "Isstring":
-      case "Istuple":
-      case "Isdummy":
-      case "Istruthvalue":
-      case "Isfunction":
-      case "ItoS":
-      case "Order":
-      case "Conc":
-      case "conc": //typos
-      case "Stern":
-      case "Stem":
-      case "Null":
-      case "Print":
-      case "print": //typos
-      case "neg":
-        return true;
+  /**
+   * Text of a value. Integers computed here only carry intValue; their text is
+   * made when it is needed.
+   */
+  private static String valueOf(AST_Nd node){
+    if(node.value==null && node.type==AST_Nd_Type.INTEGER)
+      return Integer.toString(node.intValue);
+    return node.value;
+  }
+
+  /**
+   * Where a call stands in its compiled code: the next instruction, and the gammas
+   * RULE 13 put back to run before it.
+   */
+  private static class Code_Frame{
+    final Delta_Code code;
+    int pc;
+    int gammas;
+    AST_Nd gamma;
+
+    Code_Frame(Delta_Code code){
+      this.code = code;
+    }
+
+    /**
+     * Drops the next control item, as conc pops it off a control stack; returns
+     * its op.
+     */
+    byte skip(){
+      if(gammas>0){
+        gammas--;
+        return Delta_Code.APPLY;
+      }
+      while(pc<code.ops.length && code.ops[pc]==Delta_Code.JUMP)
+        pc = code.args[pc];
+      if(pc==code.ops.length)
+        throw new EmptyStackException();
+      byte op = code.ops[pc];
+      if(op==Delta_Code.BRANCH) //a Beta; neither part is run
+        pc = code.args[code.args[pc]-1];
+      else
+        pc++;
+      return op;
     }
-    return false;
   }
 
 }
@@ -1,6 +1,7 @@
 package csem;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Stack;
 
@@ -13,13 +14,16 @@ import ast.AST_Nd_Type;
  */
 public class Delta extends AST_Nd{
   public List<String> boundVars;
+  public int[] boundVarIds; //symbol ids of boundVars
   public Environment linkedEnv; 
   public Stack<AST_Nd> body;
+  public Delta_Code code; //body lowered by Delta_Code.compileAll, or null
   public int index;
   
   public Delta(){
     setType(AST_Nd_Type.DELTA);
     boundVars = new ArrayList<String>();
+    boundVarIds = new int[0];
   }
   
   public Delta acceptNode(NodeCopier nodeCopier){
@@ -33,13 +37,19 @@ public class Delta extends AST_Nd{
 
   
   
-  public void addBoundVars(String boundVar){
+  public void addBoundVars(String boundVar, int symId){
     boundVars.add(boundVar);
+    boundVarIds = Arrays.copyOf(boundVarIds, boundVarIds.length+1);
+    boundVarIds[boundVarIds.length-1] = symId;
   }
   
   public void setBoundVars(List<String> boundVars){
     this.boundVars = boundVars;
   }
+
+  public void setBoundVarIds(int[] boundVarIds){
+    this.boundVarIds = boundVarIds;
+  }
   
 
   
@@ -49,6 +59,27 @@ public class Delta extends AST_Nd{
   
 
 
+  public void setCode(Delta_Code code){
+    this.code = code;
+  }
+
+  /**
+   * A closure of this delta over env. The compiled body is not copied per call, so
+   * each evaluation of the lambda makes one of these to hold its own environment.
+   */
+  public Delta closeOver(Environment env){
+    Delta closure = new Delta();
+    closure.setValue(value);
+    closure.setSourceLineNumber(sourceLineNumber);
+    closure.setBoundVars(boundVars);
+    closure.setBoundVarIds(boundVarIds);
+    closure.setBody(body);
+    closure.setCode(code);
+    closure.setIndex(index);
+    closure.setLinkedEnv(env);
+    return closure;
+  }
+
   public void setIndex(int index){
     this.index = index;
   }
@@ -0,0 +1,447 @@
+package csem;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Stack;
+import java.util.zip.CRC32;
+
+import ast.AST_Nd;
+import ast.AST_Nd_Type;
+import scanner.Sym_Table;
+
+/**
+ * On-disk cache of compiled programs: the deltas of a program, as built by
+ * createDeltas(), stored under a hash of its source so a later run of the same
+ * source can skip the front end.
+ *
+ * The key is the SHA-256 of the cache format version, the node types of this
+ * interpreter, the optimizations the tree went through and the source, so a
+ * changed source, interpreter or set of optimizations never finds an old entry;
+ * bump VERSION when the front end changes the deltas it builds. An
+ * entry is written to a temporary file and moved into place, and one that does
+ * not read back cleanly is deleted and treated as a miss.
+ *
+ * Entries are loaded through a memory map. A hit touches the entry's modification
+ * time, and after a store the least recently used entries are deleted until the
+ * cache fits in maxBytes.
+ *
+ * An entry holds every node reachable from the root delta (bodies, Beta parts and
+ * the child and sibling links the machine still reads, e.g. to count the children
+ * of a TAU), so the loaded deltas are the ones that were stored.
+ */
+public class Delta_Cache{
+  public static final int VERSION = 2;
+
+  private static final int MAGIC = 0x52504443; //"RPDC"
+  private static final String SUFFIX = ".deltas";
+  private static final int NONE = -1;
+
+  private static final byte PLAIN = 0;
+  private static final byte DELTA = 1;
+  private static final byte BETA = 2;
+  private static final int NAME = 0x80; //with the type of a node whose value is a name
+
+  private static final AST_Nd_Type[] TYPES = AST_Nd_Type.values();
+
+  private final Path directory;
+  private final long maxBytes;
+
+  public Delta_Cache(Path directory, long maxBytes){
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * The directory in the rpal20.cache system property, or ~/.rpal20/cache.
+   */
+  public static Path defaultDirectory(){
+    String directory = System.getProperty("rpal20.cache");
+    if(directory!=null)
+      return Paths.get(directory);
+    return Paths.get(System.getProperty("user.home"), ".rpal20", "cache");
+  }
+
+  /**
+   * The size cap in the rpal20.cache.max system property (megabytes), or 256 MB.
+   */
+  public static long defaultMaxBytes(){
+    return Long.getLong("rpal20.cache.max", 256)*1024*1024;
+  }
+
+  /**
+   * Key of a source; see the class comment.
+   */
+  public static byte[] key(byte[] source){
+    return key(source, "");
+  }
+
+  /**
+   * Key of a source whose tree went through the optimizations named in options,
+   * in the order they ran, e.g. "-inline -dead".
+   */
+  public static byte[] key(byte[] source, String options){
+    MessageDigest digest;
+    try{
+      digest = MessageDigest.getInstance("SHA-256");
+    }catch(NoSuchAlgorithmException e){
+      throw new IllegalStateException(e);
+    }
+    digest.update(ByteBuffer.allocate(4).putInt(VERSION).array());
+    for(AST_Nd_Type type: TYPES)
+      digest.update((type.name()+' ').getBytes(StandardCharsets.UTF_8));
+    digest.update((options+'\n').getBytes(StandardCharsets.UTF_8));
+    digest.update(source);
+    return digest.digest();
+  }
+
+  /**
+   * The deltas stored under key, or null if there are none.
+   */
+  public Delta load(byte[] key){
+    Path file = entry(key);
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      Delta root = read(buffer, key);
+      if(root==null){
+        Files.deleteIfExists(file);
+        return null;
+      }
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      return root;
+    }catch(NoSuchFileException e){
+      return null;
+    }catch(IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e){
+      try{
+        Files.deleteIfExists(file);
+      }catch(IOException ignored){
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Stores the deltas under key, then evicts entries down to maxBytes. Must be
+   * called before the deltas are run, as running them changes some nodes.
+   */
+  public void store(byte[] key, Delta root) throws IOException{
+    Files.createDirectories(directory);
+    Path temporary = Files.createTempFile(directory, "store", ".tmp");
+    try{
+      try(OutputStream out = Files.newOutputStream(temporary)){
+        write(out, key, root);
+      }
+      Files.move(temporary, entry(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }finally{
+      Files.deleteIfExists(temporary);
+    }
+    evict();
+  }
+
+  private Path entry(byte[] key){
+    StringBuilder name = new StringBuilder();
+    for(byte b: key)
+      name.append(Character.forDigit((b>>4)&0xf, 16)).append(Character.forDigit(b&0xf, 16));
+    return directory.resolve(name.append(SUFFIX).toString());
+  }
+
+  /**
+   * Deletes the least recently used entries until the rest fit in maxBytes.
+   */
+  private void evict() throws IOException{
+    List<Path> entries = new ArrayList<Path>();
+    List<long[]> stats = new ArrayList<long[]>(); //{last used, size}
+    long total = 0;
+    try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*"+SUFFIX)){
+      for(Path file: files){
+        try{
+          long size = Files.size(file);
+          entries.add(file);
+          stats.add(new long[]{Files.getLastModifiedTime(file).toMillis(), size});
+          total += size;
+        }catch(NoSuchFileException e){ //evicted by another run
+        }
+      }
+    }
+    while(total>maxBytes && !entries.isEmpty()){
+      int oldest = 0;
+      for(int i=1;i<entries.size();i++)
+        if(stats.get(i)[0]<stats.get(oldest)[0])
+          oldest = i;
+      Files.deleteIfExists(entries.get(oldest));
+      total -= stats.get(oldest)[1];
+      entries.remove(oldest);
+      stats.remove(oldest);
+    }
+  }
+
+  /**
+   * Layout: magic, version, key, CRC32 of the rest, string count, node count, the strings, the kind of
+   * every node, then every node; node 0 is the root delta. Counts and indexes are
+   * written by Bytes.writeNumber, and a reference to a node or string is its
+   * index+1, 0 for none.
+   *
+   * The nodes are numbered breadth first, and a node's record is encoded as soon
+   * as it comes up, as the nodes it refers to are numbered by then.
+   */
+  private void write(OutputStream out, byte[] key, Delta root) throws IOException{
+    Numbering numbering = new Numbering();
+    Bytes records = new Bytes();
+    numbering.number(root);
+    for(int i=0;i<numbering.nodes.size();i++){
+      AST_Nd node = numbering.nodes.get(i);
+      boolean name = node.symId!=Sym_Table.NONE && node.value!=null; //names are interned again when loaded
+      records.writeByte(node.type.ordinal() | (name ? NAME : 0));
+      records.writeNumber(numbering.string(node.value));
+      records.writeNumber((node.intValue<<1)^(node.intValue>>31));
+      records.writeNumber(node.sourceLineNumber);
+      records.writeNumber(numbering.number(node.child));
+      records.writeNumber(numbering.number(node.sibling));
+      if(node instanceof Delta){
+        Delta delta = (Delta)node;
+        records.writeNumber(delta.index);
+        records.writeNumber(delta.boundVars.size());
+        for(int j=0;j<delta.boundVars.size();j++){
+          String boundVar = delta.boundVars.get(j);
+          records.writeNumber(numbering.string(boundVar));
+          records.writeByte(delta.boundVarIds[j]!=Sym_Table.NONE && boundVar!=null ? 1 : 0);
+        }
+        writeBody(records, delta.body, numbering);
+      }
+      else if(node instanceof Beta){
+        writeBody(records, ((Beta)node).then_Part, numbering);
+        writeBody(records, ((Beta)node).else_Part, numbering);
+      }
+    }
+
+    Bytes contents = new Bytes();
+    contents.writeNumber(numbering.strings.size());
+    contents.writeNumber(numbering.nodes.size());
+    for(String string: numbering.strings){
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      contents.writeNumber(bytes.length);
+      contents.write(bytes);
+    }
+    for(AST_Nd node: numbering.nodes)
+      contents.writeByte(node instanceof Delta ? DELTA : node instanceof Beta ? BETA : PLAIN);
+    CRC32 checksum = new CRC32();
+    contents.update(checksum);
+    records.update(checksum);
+
+    Bytes header = new Bytes();
+    header.writeInt(MAGIC);
+    header.writeInt(VERSION);
+    header.write(key);
+    header.writeInt((int)checksum.getValue());
+    header.writeTo(out);
+    contents.writeTo(out);
+    records.writeTo(out);
+  }
+
+  private static void writeBody(Bytes records, Stack<AST_Nd> body, Numbering numbering){
+    records.writeNumber(body.size());
+    for(AST_Nd bodyNode: body)
+      records.writeNumber(numbering.number(bodyNode)-1);
+  }
+
+  /**
+   * Numbers of the nodes and strings of an entry, in the order they are met.
+   */
+  private static class Numbering{
+    final IdentityHashMap<AST_Nd, Integer> ids = new IdentityHashMap<AST_Nd, Integer>();
+    final List<AST_Nd> nodes = new ArrayList<AST_Nd>();
+    final HashMap<String, Integer> stringIds = new HashMap<String, Integer>();
+    final List<String> strings = new ArrayList<String>();
+
+    /**
+     * Reference to the node (index+1, 0 for null), numbering it if it is new.
+     */
+    int number(AST_Nd node){
+      if(node==null)
+        return 0;
+      Integer id = ids.putIfAbsent(node, nodes.size());
+      if(id!=null)
+        return id+1;
+      if(node.getClass()!=AST_Nd.class && node.getClass()!=Delta.class && node.getClass()!=Beta.class)
+        throw new IllegalStateException("Cannot cache a "+node.getClass().getSimpleName());
+      nodes.add(node);
+      return nodes.size();
+    }
+
+    int string(String string){
+      if(string==null)
+        return 0;
+      Integer id = stringIds.putIfAbsent(string, strings.size());
+      if(id!=null)
+        return id+1;
+      strings.add(string);
+      return strings.size();
+    }
+  }
+
+  /**
+   * Growable byte array an entry is encoded into before it is written out.
+   */
+  private static class Bytes{
+    private byte[] bytes = new byte[1<<16];
+    private int size;
+
+    void writeByte(int b){
+      if(size==bytes.length)
+        bytes = Arrays.copyOf(bytes, 2*size);
+      bytes[size++] = (byte)b;
+    }
+
+    void writeInt(int number){
+      for(int shift=24;shift>=0;shift-=8)
+        writeByte(number>>>shift);
+    }
+
+    /**
+     * Writes a number 7 bits to a byte, low bits first; most take one or two bytes.
+     */
+    void writeNumber(int number){
+      while((number & ~0x7f)!=0){
+        writeByte((number & 0x7f) | 0x80);
+        number >>>= 7;
+      }
+      writeByte(number);
+    }
+
+    void write(byte[] array){
+      for(byte b: array)
+        writeByte(b);
+    }
+
+    void update(CRC32 checksum){
+      checksum.update(bytes, 0, size);
+    }
+
+    void writeTo(OutputStream out) throws IOException{
+      out.write(bytes, 0, size);
+    }
+  }
+
+  private static int readNumber(ByteBuffer in){
+    int number = 0;
+    for(int shift=0;;shift+=7){
+      byte b = in.get();
+      number |= (b & 0x7f)<<shift;
+      if(b>=0)
+        return number;
+      if(shift>=28)
+        throw new IllegalArgumentException("Malformed number");
+    }
+  }
+
+  /**
+   * Reads an entry written by write; null if it is not one for key.
+   */
+  private static Delta read(ByteBuffer in, byte[] key){
+    if(in.getInt()!=MAGIC || in.getInt()!=VERSION)
+      return null;
+    for(byte b: key)
+      if(in.get()!=b)
+        return null;
+    int expected = in.getInt();
+    CRC32 checksum = new CRC32();
+    checksum.update(in.slice());
+    if((int)checksum.getValue()!=expected)
+      return null;
+    String[] strings = new String[readCount(in)];
+    int[] symIds = new int[strings.length]; //of the names, interned once each
+    AST_Nd[] nodes = new AST_Nd[readCount(in)];
+    for(int i=0;i<strings.length;i++){
+      byte[] bytes = new byte[readCount(in)];
+      in.get(bytes);
+      strings[i] = new String(bytes, StandardCharsets.UTF_8);
+      symIds[i] = Sym_Table.NONE;
+    }
+    for(int i=0;i<nodes.length;i++){
+      byte kind = in.get();
+      nodes[i] = kind==DELTA ? new Delta() : kind==BETA ? new Beta() : new AST_Nd();
+    }
+    for(AST_Nd node: nodes){
+      int type = in.get() & 0xff;
+      node.setType(TYPES[type & ~NAME]);
+      int value = readNumber(in)-1;
+      if(value!=NONE){
+        node.setValue(strings[value]);
+        if((type & NAME)!=0)
+          node.setSymId(symId(strings, symIds, value));
+      }
+      int intValue = readNumber(in);
+      node.setIntValue((intValue>>>1)^-(intValue & 1));
+      node.setSourceLineNumber(readNumber(in));
+      int child = readNumber(in)-1;
+      node.setChild(child==NONE ? null : nodes[child]);
+      int sibling = readNumber(in)-1;
+      node.setSibling(sibling==NONE ? null : nodes[sibling]);
+      if(node instanceof Delta){
+        Delta delta = (Delta)node;
+        delta.setIndex(readNumber(in));
+        int boundVars = readCount(in);
+        for(int i=0;i<boundVars;i++){
+          int boundVar = readNumber(in)-1;
+          boolean name = in.get()!=0;
+          if(boundVar==NONE)
+            delta.addBoundVars(null, Sym_Table.NONE);
+          else
+            delta.addBoundVars(strings[boundVar], name ? symId(strings, symIds, boundVar) : Sym_Table.NONE);
+        }
+        delta.setBody(readBody(in, nodes));
+      }
+      else if(node instanceof Beta){
+        ((Beta)node).setThen_Part(readBody(in, nodes));
+        ((Beta)node).setElse_Part(readBody(in, nodes));
+      }
+    }
+    if(nodes.length==0 || !(nodes[0] instanceof Delta) || in.hasRemaining())
+      return null;
+    return (Delta)nodes[0];
+  }
+
+  /**
+   * A count of things that take a byte at least each, so a damaged entry cannot
+   * ask for more than it holds.
+   */
+  private static int readCount(ByteBuffer in){
+    int count = readNumber(in);
+    if(count<0 || count>in.remaining())
+      throw new IllegalArgumentException("Malformed count");
+    return count;
+  }
+
+  private static int symId(String[] strings, int[] symIds, int string){
+    if(symIds[string]==Sym_Table.NONE)
+      symIds[string] = Sym_Table.intern(strings[string]);
+    return symIds[string];
+  }
+
+  private static Stack<AST_Nd> readBody(ByteBuffer in, AST_Nd[] nodes){
+    Stack<AST_Nd> body = new Stack<AST_Nd>();
+    int size = readCount(in);
+    body.ensureCapacity(size);
+    for(int i=0;i<size;i++)
+      body.add(nodes[readNumber(in)]);
+    return body;
+  }
+}
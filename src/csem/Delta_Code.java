@@ -0,0 +1,283 @@
+package csem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Stack;
+
+import ast.AST_Nd;
+import ast.AST_Nd_Type;
+import scanner.Sym_Table;
+
+/**
+ * The body of a delta lowered to flat arrays, in the order the control stack
+ * would pop it: instruction i is ops[i], with nodes[i] as its operand and args[i]
+ * as its count or jump target. A Beta becomes a BRANCH past the then part to the
+ * else part, and the then part ends in a JUMP past the else part, so a
+ * conditional costs one jump instead of copying a part onto the control stack.
+ *
+ * Identifiers are resolved here too. A call's frame holds the values of its
+ * delta's bound variables by slot and links to the frame the delta was closed
+ * over, the one of the delta it is written in; so a variable is found depth frames
+ * up, in slot slots[i], with no names compared at run time.
+ *
+ * A call on a tau, f (a1, ..., an), leaves the tuple unbuilt: the values of a1 to
+ * an stay on the stack under f and APPLY_TUPLE binds them to the slots of a delta
+ * with n bound variables as they are. Only another rator, e.g. Print or a tuple,
+ * gets them as a tuple, built then.
+ */
+public class Delta_Code{
+  static final byte PUSH = 0; //a literal; a copy of nodes[i] is pushed
+  static final byte LOAD = 1; //a variable, args[i] frames up in slot slots[i]
+  static final byte TUPLE = 2; //tau or nil of args[i] elements
+  static final byte CLOSURE = 3; //a lambda; nodes[i] is its Delta
+  static final byte APPLY = 4; //gamma
+  static final byte BINARY = 5; //operator nodes[i].type on two values
+  static final byte UNARY = 6; //operator nodes[i].type on one value
+  static final byte BRANCH = 7; //on false, continue at args[i]
+  static final byte JUMP = 8; //continue at args[i]
+  static final byte BUILTIN = 9; //a builtin function not bound by the program
+  static final byte APPLY_TUPLE = 10; //gamma on a tau of args[i] elements, not built yet
+
+  final byte[] ops;
+  final AST_Nd[] nodes;
+  final int[] args;
+  final int[] slots;
+
+  private Delta_Code(byte[] ops, AST_Nd[] nodes, int[] args, int[] slots){
+    this.ops = ops;
+    this.nodes = nodes;
+    this.args = args;
+    this.slots = slots;
+  }
+
+  /**
+   * Lowers the root delta and every delta nested in it, depth first so the
+   * variables in scope are those of the deltas on the way down. An identifier
+   * that is neither bound nor a builtin is reported here, before anything runs.
+   */
+  public static void compileAll(Delta rootDelta){
+    ArrayList<Delta> pendingDeltas = new ArrayList<Delta>(); //null: leave a delta's scope
+    pendingDeltas.add(rootDelta);
+    Builder builder = new Builder();
+    while(!pendingDeltas.isEmpty()){
+      Delta delta = pendingDeltas.remove(pendingDeltas.size()-1);
+      if(delta==null){
+        builder.scopes.leave();
+        continue;
+      }
+      builder.scopes.enter(delta.boundVarIds);
+      builder.size = 0;
+      builder.arguments.clear();
+      builder.findArguments(delta.body);
+      builder.emit(delta.body);
+      delta.setCode(builder.build());
+      pendingDeltas.add(null);
+      for(int i=0;i<builder.size;i++)
+        if(builder.ops[i]==CLOSURE)
+          pendingDeltas.add((Delta)builder.nodes[i]);
+    }
+  }
+
+  public int length(){
+    return ops.length;
+  }
+
+  private static class Builder{
+    private byte[] ops = new byte[64];
+    private AST_Nd[] nodes = new AST_Nd[64];
+    private int[] args = new int[64];
+    private int[] slots = new int[64];
+    private int size;
+    final Scopes scopes = new Scopes();
+    final IdentityHashMap<AST_Nd, AST_Nd> arguments = new IdentityHashMap<AST_Nd, AST_Nd>(); //tau of 2 or more: its gamma
+
+    /**
+     * Finds the taus of a control stack part, Beta parts included, that are the
+     * rand of a gamma.
+     */
+    void findArguments(Stack<AST_Nd> part){
+      for(AST_Nd node: part){
+        if(node.type==AST_Nd_Type.BETA){
+          findArguments(((Beta)node).then_Part);
+          findArguments(((Beta)node).else_Part);
+        }
+        else if(node.type==AST_Nd_Type.GAMMA && node.child!=null){
+          AST_Nd rand = node.child.sibling;
+          if(rand!=null && rand.type==AST_Nd_Type.TAU && rand.child!=null && rand.child.sibling!=null)
+            arguments.put(rand, node);
+        }
+      }
+    }
+
+    /**
+     * Emits a control stack part from its top down.
+     */
+    void emit(Stack<AST_Nd> part){
+      for(int i=part.size()-1;i>=0;i--){
+        AST_Nd node = part.get(i);
+        if(node.type==AST_Nd_Type.BETA){
+          Beta betaNode = (Beta)node;
+          int branch = add(BRANCH, betaNode, 0);
+          emit(betaNode.then_Part);
+          int jump = add(JUMP, betaNode, 0);
+          args[branch] = size;
+          emit(betaNode.else_Part);
+          args[jump] = size;
+        }
+        else
+          emit(node);
+      }
+    }
+
+    private void emit(AST_Nd node){
+      switch(node.type){
+        case PLUS:
+        case MINUS:
+        case MULT:
+        case DIV:
+        case EXP:
+        case LS:
+        case LE:
+        case GR:
+        case GE:
+        case EQ:
+        case NE:
+        case OR:
+        case AND:
+        case AUG:
+          add(BINARY, node, 0);
+          break;
+        case NOT:
+        case NEG:
+          add(UNARY, node, 0);
+          break;
+        case IDENTIFIER:
+          int binding = scopes.find(node.symId);
+          if(binding>=0){
+            int load = add(LOAD, node, scopes.depth(binding));
+            slots[load] = scopes.slot(binding);
+          }
+          else if(Sym_Table.isBuiltin(node.symId))
+            add(BUILTIN, node, 0);
+          else
+            Evl_Err.printError(node.sourceLineNumber, "Undeclared identifier \""+node.value+"\"");
+          break;
+        case NIL:
+        case TAU:
+          if(!arguments.containsKey(node)) //else left to its gamma
+            add(TUPLE, node, countChildren(node));
+          break;
+        case GAMMA:
+          AST_Nd rand = node.child==null ? null : node.child.sibling;
+          if(rand!=null && arguments.get(rand)==node)
+            add(APPLY_TUPLE, node, countChildren(rand));
+          else
+            add(APPLY, node, 0);
+          break;
+        case DELTA:
+          add(CLOSURE, node, 0);
+          break;
+        default:
+          add(PUSH, node, 0);
+          break;
+      }
+    }
+
+    private static int countChildren(AST_Nd node){
+      int numChildren = 0;
+      for(AST_Nd childNode=node.child;childNode!=null;childNode=childNode.sibling)
+        numChildren++;
+      return numChildren;
+    }
+
+    private int add(byte op, AST_Nd node, int arg){
+      if(size==ops.length){
+        ops = Arrays.copyOf(ops, 2*size);
+        nodes = Arrays.copyOf(nodes, 2*size);
+        args = Arrays.copyOf(args, 2*size);
+        slots = Arrays.copyOf(slots, 2*size);
+      }
+      ops[size] = op;
+      nodes[size] = node;
+      args[size] = arg;
+      slots[size] = 0;
+      return size++;
+    }
+
+    Delta_Code build(){
+      return new Delta_Code(Arrays.copyOf(ops, size), Arrays.copyOf(nodes, size), Arrays.copyOf(args, size),
+                            Arrays.copyOf(slots, size));
+    }
+  }
+
+  /**
+   * The variables in scope while compiling: a stack of bindings, one per bound
+   * variable of each delta entered, with the innermost binding of each symbol id
+   * chained to the one it shadows.
+   */
+  private static class Scopes{
+    private int[] innermost = new int[256]; //per symbol id: 1 + its innermost binding, or 0
+    private int[] symIds = new int[64];
+    private int[] levels = new int[64];
+    private int[] slots = new int[64];
+    private int[] shadowed = new int[64];
+    private int size;
+    private int[] marks = new int[16]; //size when each level was entered
+    private int level = -1;
+
+    void enter(int[] boundVarIds){
+      if(++level==marks.length)
+        marks = Arrays.copyOf(marks, 2*level);
+      marks[level] = size;
+      for(int slot=0;slot<boundVarIds.length;slot++) //a repeated name is bound by its last slot
+        bind(boundVarIds[slot], slot);
+    }
+
+    void leave(){
+      int mark = marks[level--];
+      while(size>mark){
+        size--;
+        if(symIds[size]>=0)
+          innermost[symIds[size]] = shadowed[size];
+      }
+    }
+
+    /**
+     * The innermost binding of a symbol id, or -1.
+     */
+    int find(int symId){
+      if(symId<0 || symId>=innermost.length)
+        return -1;
+      return innermost[symId]-1;
+    }
+
+    int depth(int binding){
+      return level-levels[binding];
+    }
+
+    int slot(int binding){
+      return slots[binding];
+    }
+
+    private void bind(int symId, int slot){
+      if(symId>=innermost.length)
+        innermost = Arrays.copyOf(innermost, Math.max(2*innermost.length, symId+1));
+      if(size==symIds.length){
+        symIds = Arrays.copyOf(symIds, 2*size);
+        levels = Arrays.copyOf(levels, 2*size);
+        slots = Arrays.copyOf(slots, 2*size);
+        shadowed = Arrays.copyOf(shadowed, 2*size);
+      }
+      symIds[size] = symId;
+      levels[size] = level;
+      slots[size] = slot;
+      if(symId<0){ //() binds no name
+        size++;
+        return;
+      }
+      shadowed[size] = innermost[symId];
+      innermost[symId] = ++size;
+    }
+  }
+}
@@ -1,16 +1,31 @@
 package csem;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import ast.AST_Nd;
 
+/**
+ * Bindings of one scope, keyed by symbol id. A scope binds one name, or a few for
+ * a tuple parameter, so the ids are kept in a small array and scanned.
+ *
+ * Compiled code (see {@link Delta_Code}) uses frames instead: the values by slot,
+ * without keys, found by get with the depth and slot resolved at compile time.
+ */
 public class Environment{
   private Environment parent;
-  private Map<String, AST_Nd> nameValueMap;
+  private int[] keys;
+  private AST_Nd[] values;
+  private int size;
   
   public Environment(){
-    nameValueMap = new HashMap<String, AST_Nd>();
+    keys = new int[1];
+    values = new AST_Nd[1];
+  }
+
+  public Environment(Environment parent, AST_Nd[] values){
+    this.parent = parent;
+    this.values = values;
+    size = values.length;
   }
 
   public Environment getParent(){
@@ -24,22 +39,37 @@ public class Environment{
   /**
    * binding of the given key in the mappings of this Environment'
    */
-  public AST_Nd lookup(String key){
-    AST_Nd retValue = null;
-    Map<String, AST_Nd> map = nameValueMap;
-    
-    retValue = map.get(key);
-    
-    if(retValue!=null)
-      return retValue.acceptNode(new NodeCopier());
-    
-    if(parent!=null)
-      return parent.lookup(key);
-    else
-      return null;
+  public AST_Nd lookup(int key){
+    for(Environment env=this;env!=null;env=env.parent){
+      for(int i=env.size-1;i>=0;i--)
+        if(env.keys[i]==key)
+          return env.values[i].acceptNode(new NodeCopier());
+    }
+    return null;
   }
   
-  public void doMapping(String key, AST_Nd value){
-    nameValueMap.put(key, value);
+  /**
+   * value in a slot of the frame depth levels up; copied, as lookup copies it
+   */
+  public AST_Nd get(int depth, int slot){
+    Environment env = this;
+    for(;depth>0;depth--)
+      env = env.parent;
+    return env.values[slot].acceptNode(new NodeCopier());
+  }
+
+  public void doMapping(int key, AST_Nd value){
+    for(int i=0;i<size;i++){
+      if(keys[i]==key){
+        values[i] = value;
+        return;
+      }
+    }
+    if(size==keys.length){
+      keys = Arrays.copyOf(keys, 2*size);
+      values = Arrays.copyOf(values, 2*size);
+    }
+    keys[size] = key;
+    values[size++] = value;
   }
 }
@@ -19,6 +19,8 @@ public class NodeCopier{
       copy.setSibling(astNode.sibling.acceptNode(this));
     copy.setType(astNode.type);
     copy.setValue(astNode.value);
+    copy.setSymId(astNode.symId);
+    copy.setIntValue(astNode.intValue);
     copy.setSourceLineNumber(astNode.sourceLineNumber);
     return copy;
   }
@@ -74,15 +76,22 @@ public class NodeCopier{
     copy.setIndex(delta.index);
     copy.setSourceLineNumber(delta.sourceLineNumber);
     
-    Stack<AST_Nd> bodyCopy = new Stack<AST_Nd>();
-    for(AST_Nd bodyElement: delta.body){
-      bodyCopy.add(bodyElement.acceptNode(this));
+    if(delta.code!=null){ //runs from the compiled code, which is never changed
+      copy.setBody(delta.body);
+      copy.setCode(delta.code);
+    }
+    else{
+      Stack<AST_Nd> bodyCopy = new Stack<AST_Nd>();
+      for(AST_Nd bodyElement: delta.body){
+        bodyCopy.add(bodyElement.acceptNode(this));
+      }
+      copy.setBody(bodyCopy);
     }
-    copy.setBody(bodyCopy);
     
     List<String> boundVarsCopy = new ArrayList<String>();
     boundVarsCopy.addAll(delta.boundVars);
     copy.setBoundVars(boundVarsCopy);
+    copy.setBoundVarIds(delta.boundVarIds.clone());
     
     copy.setLinkedEnv(delta.linkedEnv);
     
@@ -0,0 +1,445 @@
+package parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import ast.AST;
+import ast.AST_Nd;
+import ast.AST_Nd_Type;
+import scanner.Lexer;
+import scanner.Sym_Table;
+import scanner.TKN_Type;
+import scanner.Table_Scanner;
+import scanner.Token;
+
+/**
+ * Front end for a source that is being edited.
+ *
+ * Keeps the tokens and the (unstandardized) tree of the source and brings them up
+ * to date after each edit by re-lexing only the tokens the edit touched, and
+ * re-parsing only the smallest E or D enclosing them. The rest of the tree is
+ * kept as it is.
+ *
+ * Every character belongs to exactly one token (whitespace and comments are
+ * DELETE tokens), so the tokens are kept in order together with the offset each
+ * one starts at. Re-lexing starts at the token holding the character just before
+ * the edit, and stops as soon as a new token starts where an old token after the
+ * edit used to start; from there on the old tokens are kept.
+ *
+ * The parser reports the extent of every E and D it parses, which gives a tree of
+ * spans. The parser always parses an E or a D at the start of such a span,
+ * whatever tokens follow, so the innermost span holding all changed tokens can be
+ * parsed again on its own. The result replaces the old phrase if the new parse
+ * stops at the same (shifted) token; otherwise the enclosing span is tried. The
+ * new phrase is copied into the old phrase's root node, so whatever points at the
+ * old phrase sees the new one.
+ *
+ * Edits that add or remove line breaks, and sources the scanner stops on early (an
+ * unknown character, an unterminated string), are handled by parsing everything
+ * again: every token and node after such an edit carries an absolute line number.
+ *
+ * The names being typed are not interned as they are scanned: the symbol table is
+ * global and never shrinks, and every partial name of a long editing session would
+ * stay in it. A name new to the table has no symbol id in the tokens and the tree
+ * kept here; getAST() interns the names of the tree it hands out.
+ */
+public class Incremental_Front_End{
+  private char[] text;
+  private int textLength;
+  private Token[] tokens;
+  private int[] starts; //starts[i] is the offset of tokens[i], starts[tokenCount] the end of the tokens
+  private int tokenCount;
+  private Span root;
+  private boolean stale; //the next edit has to start from scratch
+  private int relexedTokens;
+  private int reparsedTokens;
+
+  public Incremental_Front_End(String source){
+    text = source.toCharArray();
+    textLength = text.length;
+    rebuild();
+  }
+
+  /**
+   * Replaces removedLength characters at offset with insertedText and updates the
+   * tokens and the tree. Throws Parser_Exception (or Scanner_Exception) if the edited
+   * source does not parse; the next edit then starts from scratch.
+   */
+  public void edit(int offset, int removedLength, String insertedText){
+    if(offset<0 || removedLength<0 || offset+removedLength>textLength)
+      throw new IndexOutOfBoundsException("Edit "+offset+"+"+removedLength+" is outside the source.");
+    int lineDelta = countLines(insertedText.toCharArray(), 0, insertedText.length())-countLines(text, offset, removedLength);
+    replaceText(offset, removedLength, insertedText);
+    if(stale || lineDelta!=0){
+      rebuild();
+      return;
+    }
+
+    stale = true; //until the tokens and the tree are up to date again
+
+    //re-lex from the token holding the character before the edit until the tokens line up again
+    int delta = insertedText.length()-removedLength;
+    int insertedEnd = offset+insertedText.length();
+    int removedEnd = offset+removedLength;
+    int first = offset==0 ? 0 : tokenAt(offset-1);
+    int line = 1;
+    if(first>0)
+      line = tokens[first].sourceLineNumber-(text[starts[first]]=='\n' ? 1 : 0);
+    Table_Scanner scanner = new Table_Scanner(text, starts[first], textLength-starts[first], line);
+    scanner.setInterning(false);
+    Token[] fresh = new Token[8];
+    int[] freshStarts = new int[8];
+    int freshCount = 0;
+    int sync;
+    for(;;){
+      int start = scanner.position();
+      if(start>=insertedEnd && start-delta>=removedEnd){
+        sync = Arrays.binarySearch(starts, first, tokenCount+1, start-delta);
+        if(sync>=0)
+          break;
+      }
+      Token token = scanner.readNextToken();
+      if(token==null){ //the scanner gives up before the end
+        rebuild();
+        return;
+      }
+      if(freshCount==fresh.length){
+        fresh = Arrays.copyOf(fresh, 2*freshCount);
+        freshStarts = Arrays.copyOf(freshStarts, 2*freshCount);
+      }
+      fresh[freshCount] = token;
+      freshStarts[freshCount++] = start;
+    }
+    relexedTokens = freshCount;
+    reparsedTokens = 0;
+
+    //narrow the change down to the tokens that really differ
+    int changedStart = first;
+    int freshFrom = 0;
+    while(changedStart<sync && freshFrom<freshCount && sameToken(tokens[changedStart], fresh[freshFrom])){
+      changedStart++;
+      freshFrom++;
+    }
+    int changedEnd = sync;
+    int freshTo = freshCount;
+    while(changedEnd>changedStart && freshTo>freshFrom && sameToken(tokens[changedEnd-1], fresh[freshTo-1])){
+      changedEnd--;
+      freshTo--;
+    }
+    int tokenDelta = freshCount-(sync-first);
+    spliceTokens(first, sync, fresh, freshStarts, freshCount, delta);
+    if(changedStart==changedEnd && freshFrom==freshTo){ //only whitespace or comments moved
+      stale = false;
+      return;
+    }
+
+    Span span = innermostSpan(changedStart, changedEnd);
+    shiftSpans(changedStart, changedEnd, tokenDelta);
+    while(span!=null && !reparse(span))
+      span = span.parent;
+    if(span==null)
+      reparseAll();
+    stale = false;
+  }
+
+  /**
+   * Root of the unstandardized tree. It is updated in place by later edits. Names
+   * not interned elsewhere have no symbol id in it.
+   */
+  public AST_Nd getRoot(){
+    return root.node;
+  }
+
+  /**
+   * A copy of the current tree, which can be standardized without disturbing the
+   * tree kept here; its names are interned.
+   */
+  public AST getAST(){
+    return new AST(copy(root.node));
+  }
+
+  public String getText(){
+    return new String(text, 0, textLength);
+  }
+
+  /**
+   * Tokens scanned by the last edit.
+   */
+  public int getRelexedTokens(){
+    return relexedTokens;
+  }
+
+  /**
+   * Tokens parsed again by the last edit.
+   */
+  public int getReparsedTokens(){
+    return reparsedTokens;
+  }
+
+  private void rebuild(){
+    stale = true;
+    tokens = new Token[1024];
+    starts = new int[1025];
+    tokenCount = 0;
+    Table_Scanner scanner = new Table_Scanner(text, 0, textLength);
+    scanner.setInterning(false);
+    Token token;
+    int start = 0;
+    while((token = scanner.readNextToken())!=null){
+      if(tokenCount==tokens.length){
+        tokens = Arrays.copyOf(tokens, 2*tokenCount);
+        starts = Arrays.copyOf(starts, 2*tokenCount+1);
+      }
+      tokens[tokenCount] = token;
+      starts[tokenCount++] = start;
+      start = scanner.position();
+    }
+    starts[tokenCount] = start;
+    relexedTokens = tokenCount;
+    reparseAll();
+    stale = start<textLength; //the scanner gave up early
+  }
+
+  private void reparseAll(){
+    stale = true;
+    root = null;
+    Token_List_Lexer lexer = new Token_List_Lexer(0);
+    Recorder recorder = new Recorder(lexer);
+    Parser parser = new Parser(lexer);
+    parser.setSpanRecorder(recorder);
+    parser.startParse();
+    root = recorder.outermost;
+    reparsedTokens = tokenCount;
+    stale = false;
+  }
+
+  /**
+   * Parses the span again on its own and, if it still ends at the same token,
+   * puts the new phrase in place of the old one.
+   */
+  private boolean reparse(Span span){
+    Token_List_Lexer lexer = new Token_List_Lexer(span.start);
+    Recorder recorder = new Recorder(lexer);
+    Parser parser = new Parser(lexer);
+    parser.setSpanRecorder(recorder);
+    AST_Nd node;
+    try{
+      node = parser.parsePhrase(span.definition);
+    }catch(RuntimeException e){ //the error may be in the enclosing phrase's reading
+      return false;
+    }
+    Span phrase = recorder.outermost;
+    AST_Nd old = span.node;
+    if(lexer.current!=span.end || node.sourceLineNumber!=old.sourceLineNumber)
+      return false; //enclosing nodes took their line from this one
+
+    old.type = node.type;
+    old.value = node.value;
+    old.symId = node.symId;
+    old.intValue = node.intValue;
+    old.child = node.child;
+    span.children = phrase.children;
+    ArrayDeque<Span> work = new ArrayDeque<Span>();
+    work.push(phrase);
+    while(!work.isEmpty()){ //parenthesized phrases share their root with the enclosing one
+      Span inner = work.pop();
+      if(inner.node==node)
+        inner.node = old;
+      for(Span child: inner.children){
+        if(inner==phrase)
+          child.parent = span;
+        work.push(child);
+      }
+    }
+    reparsedTokens = span.end-span.start;
+    return true;
+  }
+
+  private Span innermostSpan(int changedStart, int changedEnd){
+    if(root==null || root.start>changedStart || root.end<changedEnd)
+      return null;
+    Span span = root;
+    for(;;){
+      //children are in source order: find the last one starting at or before the change
+      ArrayList<Span> children = span.children;
+      int low = 0;
+      int high = children.size()-1;
+      while(low<=high){
+        int middle = (low+high)>>>1;
+        if(children.get(middle).start<=changedStart)
+          low = middle+1;
+        else
+          high = middle-1;
+      }
+      if(high<0 || children.get(high).end<changedEnd)
+        return span;
+      span = children.get(high);
+    }
+  }
+
+  /**
+   * Moves the span boundaries after the changed tokens by tokenDelta. A span that
+   * starts where tokens were inserted keeps its start; the inserted tokens are its
+   * first ones.
+   */
+  private void shiftSpans(int changedStart, int changedEnd, int tokenDelta){
+    if(tokenDelta==0 || root==null)
+      return;
+    ArrayDeque<Span> work = new ArrayDeque<Span>();
+    work.push(root);
+    while(!work.isEmpty()){
+      Span span = work.pop();
+      if(span.end<changedEnd)
+        continue;
+      if(span.start>=changedEnd && span.start>changedStart)
+        span.start += tokenDelta;
+      span.end += tokenDelta;
+      for(Span child: span.children)
+        work.push(child);
+    }
+  }
+
+  private void spliceTokens(int from, int to, Token[] fresh, int[] freshStarts, int freshCount, int delta){
+    int tokenDelta = freshCount-(to-from);
+    if(tokenCount+tokenDelta>=tokens.length){
+      tokens = Arrays.copyOf(tokens, 2*(tokenCount+tokenDelta)+1);
+      starts = Arrays.copyOf(starts, tokens.length+1);
+    }
+    if(tokenDelta!=0){
+      System.arraycopy(tokens, to, tokens, to+tokenDelta, tokenCount-to);
+      System.arraycopy(starts, to, starts, to+tokenDelta, tokenCount+1-to);
+    }
+    System.arraycopy(fresh, 0, tokens, from, freshCount);
+    System.arraycopy(freshStarts, 0, starts, from, freshCount);
+    tokenCount += tokenDelta;
+    if(delta!=0)
+      for(int i=from+freshCount;i<=tokenCount;i++)
+        starts[i] += delta;
+  }
+
+  private void replaceText(int offset, int removedLength, String insertedText){
+    int length = textLength-removedLength+insertedText.length();
+    if(length>text.length)
+      text = Arrays.copyOf(text, Math.max(length, 2*text.length));
+    if(removedLength!=insertedText.length())
+      System.arraycopy(text, offset+removedLength, text, offset+insertedText.length(), textLength-offset-removedLength);
+    insertedText.getChars(0, insertedText.length(), text, offset);
+    textLength = length;
+  }
+
+  /**
+   * Index of the token holding the character at offset.
+   */
+  private int tokenAt(int offset){
+    int index = Arrays.binarySearch(starts, 0, tokenCount+1, offset);
+    return index>=0 ? index : -index-2;
+  }
+
+  private static int countLines(char[] chars, int offset, int length){
+    int lines = 0;
+    for(int i=offset;i<offset+length;i++)
+      if(chars[i]=='\n')
+        lines++;
+    return lines;
+  }
+
+  private static boolean sameToken(Token a, Token b){
+    if(a.type!=b.type || a.sourceLineNumber!=b.sourceLineNumber)
+      return false;
+    return a.type==TKN_Type.DELETE || a.getValue().equals(b.getValue());
+  }
+
+  private static AST_Nd copy(AST_Nd node){
+    AST_Nd top = copyNode(node);
+    ArrayDeque<AST_Nd[]> work = new ArrayDeque<AST_Nd[]>();
+    work.push(new AST_Nd[]{node, top});
+    while(!work.isEmpty()){
+      AST_Nd[] pair = work.pop();
+      if(pair[0].child!=null){
+        pair[1].setChild(copyNode(pair[0].child));
+        work.push(new AST_Nd[]{pair[0].child, pair[1].child});
+      }
+      if(pair[0]!=node && pair[0].sibling!=null){
+        pair[1].setSibling(copyNode(pair[0].sibling));
+        work.push(new AST_Nd[]{pair[0].sibling, pair[1].sibling});
+      }
+    }
+    return top;
+  }
+
+  private static AST_Nd copyNode(AST_Nd node){
+    AST_Nd copy = new AST_Nd();
+    copy.setType(node.type);
+    copy.setValue(node.value);
+    if(node.type==AST_Nd_Type.IDENTIFIER && node.symId==Sym_Table.NONE)
+      copy.setSymId(Sym_Table.intern(node.value));
+    else
+      copy.setSymId(node.symId);
+    copy.setIntValue(node.intValue);
+    copy.setSourceLineNumber(node.sourceLineNumber);
+    return copy;
+  }
+
+  /**
+   * Extent of an E or D: tokens[start] is its first token and tokens[end] the
+   * token the parser was looking at when the phrase ended.
+   */
+  private static class Span{
+    int start;
+    int end;
+    boolean definition;
+    AST_Nd node;
+    Span parent;
+    ArrayList<Span> children = new ArrayList<Span>();
+  }
+
+  /**
+   * Feeds the parser from the token list, starting anywhere in it.
+   */
+  private class Token_List_Lexer implements Lexer{
+    private int next;
+    int current; //index of the token last handed out, tokenCount at the end
+
+    Token_List_Lexer(int from){
+      next = from;
+    }
+
+    public Token readNextToken(){
+      current = next;
+      if(next==tokenCount)
+        return null;
+      return tokens[next++];
+    }
+  }
+
+  private class Recorder implements Span_Recorder{
+    private final Token_List_Lexer lexer;
+    private final ArrayDeque<Span> open = new ArrayDeque<Span>();
+    Span outermost;
+
+    Recorder(Token_List_Lexer lexer){
+      this.lexer = lexer;
+    }
+
+    public void open(){
+      Span span = new Span();
+      span.start = lexer.current;
+      open.push(span);
+    }
+
+    public void close(AST_Nd node, boolean definition){
+      Span span = open.pop();
+      span.end = lexer.current;
+      span.node = node;
+      span.definition = definition;
+      Span parent = open.peek();
+      if(parent==null)
+        outermost = span;
+      else{
+        span.parent = parent;
+        parent.children.add(span);
+      }
+    }
+  }
+}
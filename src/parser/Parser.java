@@ -1,13 +1,17 @@
 package parser;
 
+import java.util.Arrays;
+import java.util.EmptyStackException;
 import java.util.Stack;
 
 import ast.AST;
+import ast.AST_Arena;
 import ast.AST_Nd;
 import ast.AST_Nd_Type;
-import scanner.Scanner;
+import scanner.Lexer;
+import scanner.Sym_Table;
 import scanner.Token;
-import scanner.TKN_Type;
+import scanner.Token_Kind;
 
 /**
  * Recursive descent parser that complies with RPAL's phrase structure grammar.
@@ -16,64 +20,188 @@ import scanner.TKN_Type;
 
  //group 44
 public class Parser{
-  private Scanner s;
+  private Lexer s;
   private Token currentToken;
   Stack<AST_Nd> stack;
+  private boolean checkOnly;
+  private int checkedTrees;
+  private Span_Recorder spans;
+  private boolean precedenceClimbing;
+  private boolean iterative;
+  private boolean standardizing;
+  private int[] frames; //work stack of the iterative parser, FRAME ints per frame
+  private int frameTop;
+  private AST_Arena arena; //the tree is built here instead, if set
+  private int[] arenaStack;
+  private int arenaTop;
 
-  public Parser(Scanner s){
+  public Parser(Lexer s){
     this.s = s;
     stack = new Stack<AST_Nd>();
   }
   
   public AST buildAST(){
     startParse();
-    return new AST(stack.pop());
+    return new AST(stack.pop(), standardizing);
   }
 
-  public void startParse(){
+  /**
+   * Parses the whole input into an {@link AST_Arena} instead of AST_Nd objects; the
+   * tree is the same.
+   */
+  public AST_Arena buildArena(){
+    arena = new AST_Arena();
+    arenaStack = new int[64];
+    startParse();
+    if(arenaTop==0)
+      throw new EmptyStackException();
+    arena.setRoot(arenaStack[--arenaTop], standardizing);
+    arena.trimToSize();
+    return arena;
+  }
+
+  /**
+   * Parses the whole input without keeping the tree: nodes are only counted, and
+   * terminals never have their text materialized. Memory use does not depend on
+   * the size of the input.
+   */
+  public void checkSyntax(){
+    checkOnly = true;
+    startParse();
+    if(checkedTrees<1)
+      throw new Parser_Exception("Expected a single expression.");
+  }
+
+  /**
+   * Parses the Ta ... R levels of expressions by precedence climbing (see
+   * {@link #procExpression(int)}) instead of one method per level. The trees are
+   * the same.
+   */
+  public void setPrecedenceClimbing(boolean precedenceClimbing){
+    this.precedenceClimbing = precedenceClimbing;
+  }
+
+  /**
+   * Parses with an explicit work stack on the heap instead of Java recursion (see
+   * {@link #parseIteratively(int)}), so how deeply a program can nest is limited
+   * by the heap, not by the thread's stack. The trees are the same.
+   */
+  public void setIterative(boolean iterative){
+    this.iterative = iterative;
+  }
+
+  /**
+   * Standardizes every node as its production is reduced (see
+   * {@link AST#standardizeReduced(AST_Nd)}), so the tree comes out standardized
+   * without another pass over it. Off by default, which keeps the tree as parsed,
+   * e.g. to print it.
+   */
+  public void setStandardizing(boolean standardizing){
+    this.standardizing = standardizing;
+  }
+
+  /**
+   * Reports the extent of every E and D parsed from now on.
+   */
+  void setSpanRecorder(Span_Recorder spans){
+    this.spans = spans;
+  }
+
+  /**
+   * Parses a single E (or D) starting at the next token and returns its tree.
+   */
+  AST_Nd parsePhrase(boolean definition){
     readNT();
-    procE(); 
-    if(currentToken!=null)
-      throw new Parser_Exception("Expected EOF.");
+    if(iterative)
+      parseIteratively(definition ? D_START : E_START);
+    else if(definition)
+      procD();
+    else
+      procE();
+    return stack.get(0);
+  }
+
+  /**
+   * Parses the whole input; the lexer is closed afterwards, also when a
+   * Parser_Exception leaves it before the end.
+   */
+  public void startParse(){
+    try{
+      readNT();
+      if(iterative)
+        parseIteratively(E_START);
+      else
+        procE(); 
+      if(currentToken!=null)
+        throw new Parser_Exception("Expected EOF.");
+    }finally{
+      s.close();
+    }
   }
 
   private void readNT(){
     do{
       currentToken = s.readNextToken(); 
-    }while(isCurrentTokenType(TKN_Type.DELETE));
-    if(null != currentToken){
-      if(currentToken.type==TKN_Type.IDENTIFIER){
-        createTerminalASTNode(AST_Nd_Type.IDENTIFIER, currentToken.value);
-      }
-      else if(currentToken.type==TKN_Type.INTEGER){
-        createTerminalASTNode(AST_Nd_Type.INTEGER, currentToken.value);
-      } 
-      else if(currentToken.type==TKN_Type.STRING){
-        createTerminalASTNode(AST_Nd_Type.STRING, currentToken.value);
-      }
+    }while(kind()==Token_Kind.DELETE);
+    switch(kind()){
+      case Token_Kind.IDENTIFIER:
+        createTerminalASTNode(AST_Nd_Type.IDENTIFIER, currentToken);
+        break;
+      case Token_Kind.INTEGER:
+        createTerminalASTNode(AST_Nd_Type.INTEGER, currentToken);
+        break;
+      case Token_Kind.STRING:
+        createTerminalASTNode(AST_Nd_Type.STRING, currentToken);
+        break;
     }
   }
+
+  /**
+   * Kind of the current token, NONE at the end of the input. The parser looks at
+   * a token only through its kind, classified once by the scanner.
+   */
+  private int kind(){
+    return currentToken==null ? Token_Kind.NONE : currentToken.kind;
+  }
   
-  private boolean isCurrentToken(TKN_Type type, String value){
-    if(currentToken==null)
-      return false;
-    if(currentToken.type!=type || !currentToken.value.equals(value))
-      return false;
-    return true;
+  private boolean isCurrentTerminal(){
+    int kind = kind();
+    return kind==Token_Kind.IDENTIFIER || kind==Token_Kind.INTEGER || kind==Token_Kind.STRING;
   }
   
-  private boolean isCurrentTokenType(TKN_Type type){
-    if(currentToken==null)
-      return false;
-    if(currentToken.type==type)
-      return true;
-    return false;
+  /**
+   * Returns where on the stack the phrase starting at the current token will end up.
+   */
+  private int openSpan(){
+    if(spans==null)
+      return -1;
+    spans.open();
+    return isCurrentTerminal() ? stack.size()-1 : stack.size(); //readNT already pushed the terminal
+  }
+
+  private void closeSpan(int stackPosition, boolean definition){
+    if(spans!=null)
+      spans.close(stack.get(stackPosition), definition);
   }
   
   /**
    * Builds an N-ary AST node
    */
   private void buildNAryASTNode(AST_Nd_Type type, int ariness){
+    if(checkOnly){
+      checkedTrees += 1-ariness;
+      return;
+    }
+    if(arena!=null){
+      if(arenaTop<ariness)
+        throw new EmptyStackException();
+      arenaTop -= ariness;
+      int node = arena.addNode(type, arenaStack, arenaTop, ariness);
+      if(standardizing)
+        arena.standardizeReduced(node);
+      pushArenaNode(node);
+      return;
+    }
     AST_Nd node = new AST_Nd();
     node.setType(type);
     while(ariness>0){
@@ -84,10 +212,37 @@ public class Parser{
       node.setSourceLineNumber(child.sourceLineNumber);
       ariness--;
     }
+    if(standardizing)
+      AST.standardizeReduced(node);
     stack.push(node);
   }
 
+  /**
+   * The token text is only materialized here, when a node actually needs it.
+   * Literals come already decoded by the scanner.
+   */
+  private void createTerminalASTNode(AST_Nd_Type type, Token token){
+    if(arena!=null && !checkOnly){
+      pushArenaNode(arena.addLeaf(type, token.getValue(), token.symId, token.intValue, token.sourceLineNumber));
+      return;
+    }
+    createTerminalASTNode(type, checkOnly ? null : token.getValue());
+    if(!checkOnly){
+      AST_Nd node = stack.peek();
+      node.setSymId(token.symId);
+      node.setIntValue(token.intValue);
+    }
+  }
+
   private void createTerminalASTNode(AST_Nd_Type type, String value){
+    if(checkOnly){
+      checkedTrees++;
+      return;
+    }
+    if(arena!=null){
+      pushArenaNode(arena.addLeaf(type, value, Sym_Table.NONE, 0, currentToken.sourceLineNumber));
+      return;
+    }
     AST_Nd node = new AST_Nd();
     node.setType(type);
     node.setValue(value);
@@ -95,6 +250,12 @@ public class Parser{
     stack.push(node);
   }
   
+  private void pushArenaNode(int node){
+    if(arenaTop==arenaStack.length)
+      arenaStack = Arrays.copyOf(arenaStack, 2*arenaTop);
+    arenaStack[arenaTop++] = node;
+  }
+  
   /******************************
    * Expressions
    *******************************/
@@ -107,37 +268,41 @@ public class Parser{
    * </pre>
    */
   private void procE(){
-    if(isCurrentToken(TKN_Type.RESERVED, "let")){ //E -> 'let' D 'in' E => 'let'
-      readNT();
-      procD();
-      if(!isCurrentToken(TKN_Type.RESERVED, "in"))
-        throw new Parser_Exception("E:  'in' expected");
-      readNT();
-      procE(); //extra readNT in procE()
-      buildNAryASTNode(AST_Nd_Type.LET, 2);
-    }
-    else if(isCurrentToken(TKN_Type.RESERVED, "fn")){ //E -> 'fn' Vb+ '.' E => 'lambda'
-      int treesToPop = 0;
-      
-      readNT();
-      while(isCurrentTokenType(TKN_Type.IDENTIFIER) || isCurrentTokenType(TKN_Type.L_PAREN)){
-        procVB(); //extra readNT in procVB()
-        treesToPop++;
-      }
-      
-      if(treesToPop==0)
-        throw new Parser_Exception("E: at least one 'Vb' expected");
-      
-      if(!isCurrentToken(TKN_Type.OPERATOR, "."))
-        throw new Parser_Exception("E: '.' expected");
-      
-      readNT();
-      procE(); //extra readNT in procE()
-      
-      buildNAryASTNode(AST_Nd_Type.LAMBDA, treesToPop+1); //+1 for the last E 
+    int span = openSpan();
+    switch(kind()){
+      case Token_Kind.LET: //E -> 'let' D 'in' E => 'let'
+        readNT();
+        procD();
+        if(kind()!=Token_Kind.IN)
+          throw new Parser_Exception("E:  'in' expected");
+        readNT();
+        procE(); //extra readNT in procE()
+        buildNAryASTNode(AST_Nd_Type.LET, 2);
+        break;
+      case Token_Kind.FN: //E -> 'fn' Vb+ '.' E => 'lambda'
+        int treesToPop = 0;
+        
+        readNT();
+        while(kind()==Token_Kind.IDENTIFIER || kind()==Token_Kind.L_PAREN){
+          procVB(); //extra readNT in procVB()
+          treesToPop++;
+        }
+        
+        if(treesToPop==0)
+          throw new Parser_Exception("E: at least one 'Vb' expected");
+        
+        if(kind()!=Token_Kind.DOT)
+          throw new Parser_Exception("E: '.' expected");
+        
+        readNT();
+        procE(); //extra readNT in procE()
+        
+        buildNAryASTNode(AST_Nd_Type.LAMBDA, treesToPop+1); //+1 for the last E 
+        break;
+      default: //E -> Ew
+        procEW();
     }
-    else //E -> Ew
-      procEW();
+    closeSpan(span, false);
   }
 
   /**
@@ -149,7 +314,7 @@ public class Parser{
   private void procEW(){
     procT(); //Ew -> T
     //extra readToken done in procT()
-    if(isCurrentToken(TKN_Type.RESERVED, "where")){ //Ew -> T 'where' Dr => 'where'
+    if(kind()==Token_Kind.WHERE){ //Ew -> T 'where' Dr => 'where'
       readNT();
       procDR(); //extra readToken() in procDR()
       buildNAryASTNode(AST_Nd_Type.WHERE, 2);
@@ -170,7 +335,7 @@ public class Parser{
     procTA(); //T -> Ta
     //extra readToken() in procTA()
     int treesToPop = 0;
-    while(isCurrentToken(TKN_Type.OPERATOR, ",")){ //T -> Ta (',' Ta )+ => 'tau'
+    while(kind()==Token_Kind.OPERATOR_COMMA){ //T -> Ta (',' Ta )+ => 'tau'
       readNT();
       procTA(); //extra readToken() done in procTA()
       treesToPop++;
@@ -185,9 +350,13 @@ public class Parser{
    * </pre>
    */
   private void procTA(){
+    if(precedenceClimbing){
+      procExpression(TA);
+      return;
+    }
     procTC(); //Ta -> Tc
     //extra readNT done in procTC()
-    while(isCurrentToken(TKN_Type.RESERVED, "aug")){ //Ta -> Ta 'aug' Tc => 'aug'
+    while(kind()==Token_Kind.AUG){ //Ta -> Ta 'aug' Tc => 'aug'
       readNT();
       procTC(); //extra readNT done in procTC()
       buildNAryASTNode(AST_Nd_Type.AUG, 2);
@@ -203,10 +372,10 @@ public class Parser{
   private void procTC(){
     procB(); //Tc -> B
     //extra readNT in procBT()
-    if(isCurrentToken(TKN_Type.OPERATOR, "->")){ //Tc -> B '->' Tc '|' Tc => '->'
+    if(kind()==Token_Kind.ARROW){ //Tc -> B '->' Tc '|' Tc => '->'
       readNT();
       procTC(); //extra readNT done in procTC
-      if(!isCurrentToken(TKN_Type.OPERATOR, "|"))
+      if(kind()!=Token_Kind.BAR)
         throw new Parser_Exception("TC: '|' expected");
       readNT();
       procTC();  //extra readNT done in procTC
@@ -227,7 +396,7 @@ public class Parser{
   private void procB(){
     procBT(); //B -> Bt
     //extra readNT in procBT()
-    while(isCurrentToken(TKN_Type.RESERVED, "or")){ //B -> B 'or' Bt => 'or'
+    while(kind()==Token_Kind.OR){ //B -> B 'or' Bt => 'or'
       readNT();
       procBT();
       buildNAryASTNode(AST_Nd_Type.OR, 2);
@@ -243,7 +412,7 @@ public class Parser{
   private void procBT(){
     procBS(); //Bt -> Bs;
     //extra readNT in procBS()
-    while(isCurrentToken(TKN_Type.OPERATOR, "&")){ //Bt -> Bt '&' Bs => '&'
+    while(kind()==Token_Kind.AMPERSAND){ //Bt -> Bt '&' Bs => '&'
       readNT();
       procBS(); //extra readNT in procBS()
       buildNAryASTNode(AST_Nd_Type.AND, 2);
@@ -257,7 +426,7 @@ public class Parser{
    * </pre>
    */
   private void procBS(){
-    if(isCurrentToken(TKN_Type.RESERVED, "not")){ //Bs -> 'not' Bp => 'not'
+    if(kind()==Token_Kind.NOT){ //Bs -> 'not' Bp => 'not'
       readNT();
       procBP(); //extra readNT in procBP()
       buildNAryASTNode(AST_Nd_Type.NOT, 1);
@@ -280,36 +449,32 @@ public class Parser{
    */
   private void procBP(){
     procA(); //Bp -> A
-    if(isCurrentToken(TKN_Type.RESERVED,"gr")||isCurrentToken(TKN_Type.OPERATOR,">")){ //Bp -> A('gr' | '>' ) A => 'gr'
-      readNT();
-      procA(); //extra readNT in procA()
-      buildNAryASTNode(AST_Nd_Type.GR, 2);
-    }
-    else if(isCurrentToken(TKN_Type.RESERVED,"ge")||isCurrentToken(TKN_Type.OPERATOR,">=")){ //Bp -> A ('ge' | '>=') A => 'ge'
-      readNT();
-      procA(); //extra readNT in procA()
-      buildNAryASTNode(AST_Nd_Type.GE, 2);
-    }
-    else if(isCurrentToken(TKN_Type.RESERVED,"ls")||isCurrentToken(TKN_Type.OPERATOR,"<")){ //Bp -> A ('ls' | '<' ) A => 'ls'
-      readNT();
-      procA(); //extra readNT in procA()
-      buildNAryASTNode(AST_Nd_Type.LS, 2);
-    }
-    else if(isCurrentToken(TKN_Type.RESERVED,"le")||isCurrentToken(TKN_Type.OPERATOR,"<=")){ //Bp -> A ('le' | '<=') A => 'le'
-      readNT();
-      procA(); //extra readNT in procA()
-      buildNAryASTNode(AST_Nd_Type.LE, 2);
-    }
-    else if(isCurrentToken(TKN_Type.RESERVED,"eq")){ //Bp -> A 'eq' A => 'eq'
-      readNT();
-      procA(); //extra readNT in procA()
-      buildNAryASTNode(AST_Nd_Type.EQ, 2);
-    }
-    else if(isCurrentToken(TKN_Type.RESERVED,"ne")){ //Bp -> A 'ne' A => 'ne'
-      readNT();
-      procA(); //extra readNT in procA()
-      buildNAryASTNode(AST_Nd_Type.NE, 2);
+    AST_Nd_Type type;
+    switch(kind()){
+      case Token_Kind.GR: case Token_Kind.GREATER: //Bp -> A('gr' | '>' ) A => 'gr'
+        type = AST_Nd_Type.GR;
+        break;
+      case Token_Kind.GE: case Token_Kind.GREATER_EQUAL: //Bp -> A ('ge' | '>=') A => 'ge'
+        type = AST_Nd_Type.GE;
+        break;
+      case Token_Kind.LS: case Token_Kind.LESS: //Bp -> A ('ls' | '<' ) A => 'ls'
+        type = AST_Nd_Type.LS;
+        break;
+      case Token_Kind.LE: case Token_Kind.LESS_EQUAL: //Bp -> A ('le' | '<=') A => 'le'
+        type = AST_Nd_Type.LE;
+        break;
+      case Token_Kind.EQ: //Bp -> A 'eq' A => 'eq'
+        type = AST_Nd_Type.EQ;
+        break;
+      case Token_Kind.NE: //Bp -> A 'ne' A => 'ne'
+        type = AST_Nd_Type.NE;
+        break;
+      default:
+        return;
     }
+    readNT();
+    procA(); //extra readNT in procA()
+    buildNAryASTNode(type, 2);
   }
   
   
@@ -327,24 +492,22 @@ public class Parser{
    * </pre>
    */
   private void procA(){
-    if(isCurrentToken(TKN_Type.OPERATOR, "+")){ //A -> '+' At
-      readNT();
-      procAT(); //extra readNT in procAT()
-    }
-    else if(isCurrentToken(TKN_Type.OPERATOR, "-")){ //A -> '-' At => 'neg'
-      readNT();
-      procAT(); //extra readNT in procAT()
-      buildNAryASTNode(AST_Nd_Type.NEG, 1);
+    switch(kind()){
+      case Token_Kind.PLUS: //A -> '+' At
+        readNT();
+        procAT(); //extra readNT in procAT()
+        break;
+      case Token_Kind.MINUS: //A -> '-' At => 'neg'
+        readNT();
+        procAT(); //extra readNT in procAT()
+        buildNAryASTNode(AST_Nd_Type.NEG, 1);
+        break;
+      default:
+        procAT(); //extra readNT in procAT()
     }
-    else
-      procAT(); //extra readNT in procAT()
     
-    boolean plus = true;
-    while(isCurrentToken(TKN_Type.OPERATOR, "+")||isCurrentToken(TKN_Type.OPERATOR, "-")){
-      if(currentToken.value.equals("+"))
-        plus = true;
-      else if(currentToken.value.equals("-"))
-        plus = false;
+    while(kind()==Token_Kind.PLUS || kind()==Token_Kind.MINUS){
+      boolean plus = kind()==Token_Kind.PLUS;
       readNT();
       procAT(); //extra readNT in procAT()
       if(plus) //A -> A '+' At => '+'
@@ -364,12 +527,8 @@ public class Parser{
   private void procAT(){
     procAF(); //At -> Af;
     //extra readNT in procAF()
-    boolean mult = true;
-    while(isCurrentToken(TKN_Type.OPERATOR, "*")||isCurrentToken(TKN_Type.OPERATOR, "/")){
-      if(currentToken.value.equals("*"))
-        mult = true;
-      else if(currentToken.value.equals("/"))
-        mult = false;
+    while(kind()==Token_Kind.TIMES || kind()==Token_Kind.DIVIDE){
+      boolean mult = kind()==Token_Kind.TIMES;
       readNT();
       procAF(); //extra readNT in procAF()
       if(mult) //At -> At '*' Af => '*'
@@ -388,7 +547,7 @@ public class Parser{
   private void procAF(){
     procAP(); // Af -> Ap;
     //extra readNT in procAP()
-    if(isCurrentToken(TKN_Type.OPERATOR, "**")){ //Af -> Ap '**' Af => '**'
+    if(kind()==Token_Kind.POWER){ //Af -> Ap '**' Af => '**'
       readNT();
       procAF();
       buildNAryASTNode(AST_Nd_Type.EXP, 2);
@@ -405,9 +564,9 @@ public class Parser{
   private void procAP(){
     procR(); //Ap -> R;
     //extra readNT in procR()
-    while(isCurrentToken(TKN_Type.OPERATOR, "@")){ //Ap -> Ap '@' '<IDENTIFIER>' R => '@'
+    while(kind()==Token_Kind.AT){ //Ap -> Ap '@' '<IDENTIFIER>' R => '@'
       readNT();
-      if(!isCurrentTokenType(TKN_Type.IDENTIFIER))
+      if(kind()!=Token_Kind.IDENTIFIER)
         throw new Parser_Exception("AP: expected Identifier");
       readNT();
       procR(); //extra readNT in procR()
@@ -415,6 +574,127 @@ public class Parser{
     }
   }
   
+  /******************************
+   * Precedence climbing
+   *******************************/
+
+  //levels of the expression nonterminals, from the loosest binding one
+  private static final int TA = 1;
+  private static final int TC = 2;
+  private static final int B = 3;
+  private static final int BT = 4;
+  private static final int BS = 5;
+  private static final int BP = 6;
+  private static final int A = 7;
+  private static final int AT = 8;
+  private static final int AF = 9;
+  private static final int AP = 10;
+  private static final int R = 11;
+
+  //by token kind: level of the nonterminal an infix operator builds (0 if the kind is no
+  //infix operator), level its left operand must have, and level of its right operand
+  private static final int[] OPERATOR_LEVEL = new int[Token_Kind.DELETE+1];
+  private static final int[] LEFT_LEVEL = new int[Token_Kind.DELETE+1];
+  private static final int[] RIGHT_LEVEL = new int[Token_Kind.DELETE+1];
+  private static final AST_Nd_Type[] OPERATOR_TYPE = new AST_Nd_Type[Token_Kind.DELETE+1];
+
+  static{
+    infix(Token_Kind.AUG, TA, TA, TC, AST_Nd_Type.AUG); //Ta -> Ta 'aug' Tc
+    infix(Token_Kind.ARROW, TC, B, TC, AST_Nd_Type.CONDITIONAL); //Tc -> B '->' Tc '|' Tc
+    infix(Token_Kind.OR, B, B, BT, AST_Nd_Type.OR); //B -> B 'or' Bt
+    infix(Token_Kind.AMPERSAND, BT, BT, BS, AST_Nd_Type.AND); //Bt -> Bt '&' Bs
+    infix(Token_Kind.GR, BP, A, A, AST_Nd_Type.GR); //Bp -> A ('gr' | '>') A
+    infix(Token_Kind.GREATER, BP, A, A, AST_Nd_Type.GR);
+    infix(Token_Kind.GE, BP, A, A, AST_Nd_Type.GE);
+    infix(Token_Kind.GREATER_EQUAL, BP, A, A, AST_Nd_Type.GE);
+    infix(Token_Kind.LS, BP, A, A, AST_Nd_Type.LS);
+    infix(Token_Kind.LESS, BP, A, A, AST_Nd_Type.LS);
+    infix(Token_Kind.LE, BP, A, A, AST_Nd_Type.LE);
+    infix(Token_Kind.LESS_EQUAL, BP, A, A, AST_Nd_Type.LE);
+    infix(Token_Kind.EQ, BP, A, A, AST_Nd_Type.EQ);
+    infix(Token_Kind.NE, BP, A, A, AST_Nd_Type.NE);
+    infix(Token_Kind.PLUS, A, A, AT, AST_Nd_Type.PLUS); //A -> A '+' At
+    infix(Token_Kind.MINUS, A, A, AT, AST_Nd_Type.MINUS);
+    infix(Token_Kind.TIMES, AT, AT, AF, AST_Nd_Type.MULT); //At -> At '*' Af
+    infix(Token_Kind.DIVIDE, AT, AT, AF, AST_Nd_Type.DIV);
+    infix(Token_Kind.POWER, AF, AP, AF, AST_Nd_Type.EXP); //Af -> Ap '**' Af
+    infix(Token_Kind.AT, AP, AP, R, AST_Nd_Type.AT); //Ap -> Ap '@' '<IDENTIFIER>' R
+  }
+
+  private static void infix(int kind, int level, int leftLevel, int rightLevel, AST_Nd_Type type){
+    OPERATOR_LEVEL[kind] = level;
+    LEFT_LEVEL[kind] = leftLevel;
+    RIGHT_LEVEL[kind] = rightLevel;
+    OPERATOR_TYPE[kind] = type;
+  }
+
+  /**
+   * Parses an expression of the nonterminal at the given level (Ta ... R), with
+   * the same trees and the same associativity as procTA() and the methods below it.
+   *
+   * The operand is parsed first: a prefix 'not' or '+'/'-' if the level allows
+   * one, otherwise an R by {@link #procR()}, as in the descent. Then, while the
+   * next token is an infix operator whose level is at least the requested one and
+   * whose left operand may be the tree built so far, its right operand is parsed at
+   * the operator's right level and the two are combined. A left associative
+   * operator's right level is one above its own, so the loop picks up the next one;
+   * a right associative one's is its own, so the recursion does; and a comparison
+   * leaves a tree below the level its left operand needs, so it does not chain.
+   */
+  private void procExpression(int level){
+    int left; //level of the tree built so far
+    int kind = kind();
+    if(kind==Token_Kind.NOT && level<=BS){ //Bs -> 'not' Bp => 'not'
+      readNT();
+      procExpression(BP);
+      buildNAryASTNode(AST_Nd_Type.NOT, 1);
+      left = BS;
+    }
+    else if(kind==Token_Kind.PLUS && level<=A){ //A -> '+' At
+      readNT();
+      procExpression(AT);
+      left = A;
+    }
+    else if(kind==Token_Kind.MINUS && level<=A){ //A -> '-' At => 'neg'
+      readNT();
+      procExpression(AT);
+      buildNAryASTNode(AST_Nd_Type.NEG, 1);
+      left = A;
+    }
+    else{
+      procR(); //extra readNT in procR()
+      left = R;
+    }
+
+    for(;;){
+      kind = kind();
+      int operatorLevel = kind<0 ? 0 : OPERATOR_LEVEL[kind];
+      if(operatorLevel==0 || operatorLevel<level || left<LEFT_LEVEL[kind])
+        return;
+      readNT();
+      if(kind==Token_Kind.ARROW){ //Tc -> B '->' Tc '|' Tc => '->'
+        procExpression(TC);
+        if(kind()!=Token_Kind.BAR)
+          throw new Parser_Exception("TC: '|' expected");
+        readNT();
+        procExpression(TC);
+        buildNAryASTNode(AST_Nd_Type.CONDITIONAL, 3);
+      }
+      else if(kind==Token_Kind.AT){ //Ap -> Ap '@' '<IDENTIFIER>' R => '@'
+        if(kind()!=Token_Kind.IDENTIFIER)
+          throw new Parser_Exception("AP: expected Identifier");
+        readNT();
+        procR(); //extra readNT in procR()
+        buildNAryASTNode(AST_Nd_Type.AT, 3);
+      }
+      else{
+        procExpression(RIGHT_LEVEL[kind]);
+        buildNAryASTNode(OPERATOR_TYPE[kind], 2);
+      }
+      left = operatorLevel;
+    }
+  }
+  
   /******************************
    * Rators and Rands
    *******************************/
@@ -428,14 +708,7 @@ public class Parser{
   private void procR(){
     procRN(); //R -> Rn; NO extra readNT in procRN(). See while loop below for reason.
     readNT();
-    while(isCurrentTokenType(TKN_Type.INTEGER)||
-        isCurrentTokenType(TKN_Type.STRING)|| 
-        isCurrentTokenType(TKN_Type.IDENTIFIER)||
-        isCurrentToken(TKN_Type.RESERVED, "true")||
-        isCurrentToken(TKN_Type.RESERVED, "false")||
-        isCurrentToken(TKN_Type.RESERVED, "nil")||
-        isCurrentToken(TKN_Type.RESERVED, "dummy")||
-        isCurrentTokenType(TKN_Type.L_PAREN)){ //R -> R Rn => 'gamma'
+    while(startsRN()){ //R -> R Rn => 'gamma'
       procRN(); //NO extra readNT in procRN(). This is important because if we do an extra readNT in procRN and currentToken happens to
                 //be an INTEGER, IDENTIFIER, or STRING, it will get pushed on the stack. Then, the GAMMA node that we build will have the
                 //wrong kids. There are workarounds, e.g. keeping the extra readNT in procRN() and checking here if the last token read
@@ -446,6 +719,17 @@ public class Parser{
     }
   }
 
+  private boolean startsRN(){
+    switch(kind()){
+      case Token_Kind.INTEGER: case Token_Kind.STRING: case Token_Kind.IDENTIFIER:
+      case Token_Kind.TRUE: case Token_Kind.FALSE: case Token_Kind.NIL: case Token_Kind.DUMMY:
+      case Token_Kind.L_PAREN:
+        return true;
+      default:
+        return false;
+    }
+  }
+
   /**
    * NOTE: NO extra readNT in procRN. See comments in {@link #procR()} for explanation.
    * <pre>
@@ -460,27 +744,29 @@ public class Parser{
    * </pre>
    */
   private void procRN(){
-    if(isCurrentTokenType(TKN_Type.IDENTIFIER)|| //R -> '<IDENTIFIER>'
-       isCurrentTokenType(TKN_Type.INTEGER)|| //R -> '<INTEGER>' 
-       isCurrentTokenType(TKN_Type.STRING)){ //R-> '<STRING>'
-    }
-    else if(isCurrentToken(TKN_Type.RESERVED, "true")){ //R -> 'true' => 'true'
-      createTerminalASTNode(AST_Nd_Type.TRUE, "true");
-    }
-    else if(isCurrentToken(TKN_Type.RESERVED, "false")){ //R -> 'false' => 'false'
-      createTerminalASTNode(AST_Nd_Type.FALSE, "false");
-    } 
-    else if(isCurrentToken(TKN_Type.RESERVED, "nil")){ //R -> 'nil' => 'nil'
-      createTerminalASTNode(AST_Nd_Type.NIL, "nil");
-    }
-    else if(isCurrentTokenType(TKN_Type.L_PAREN)){
-      readNT();
-      procE(); //extra readNT in procE()
-      if(!isCurrentTokenType(TKN_Type.R_PAREN))
-        throw new Parser_Exception("RN: ')' expected");
-    }
-    else if(isCurrentToken(TKN_Type.RESERVED, "dummy")){ //R -> 'dummy' => 'dummy'
-      createTerminalASTNode(AST_Nd_Type.DUMMY, "dummy");
+    switch(kind()){
+      case Token_Kind.IDENTIFIER: //R -> '<IDENTIFIER>'
+      case Token_Kind.INTEGER: //R -> '<INTEGER>' 
+      case Token_Kind.STRING: //R-> '<STRING>'
+        break;
+      case Token_Kind.TRUE: //R -> 'true' => 'true'
+        createTerminalASTNode(AST_Nd_Type.TRUE, "true");
+        break;
+      case Token_Kind.FALSE: //R -> 'false' => 'false'
+        createTerminalASTNode(AST_Nd_Type.FALSE, "false");
+        break;
+      case Token_Kind.NIL: //R -> 'nil' => 'nil'
+        createTerminalASTNode(AST_Nd_Type.NIL, "nil");
+        break;
+      case Token_Kind.L_PAREN:
+        readNT();
+        procE(); //extra readNT in procE()
+        if(kind()!=Token_Kind.R_PAREN)
+          throw new Parser_Exception("RN: ')' expected");
+        break;
+      case Token_Kind.DUMMY: //R -> 'dummy' => 'dummy'
+        createTerminalASTNode(AST_Nd_Type.DUMMY, "dummy");
+        break;
     }
   }
 
@@ -495,13 +781,15 @@ public class Parser{
    * </pre>
    */
   private void procD(){
+    int span = openSpan();
     procDA(); //D -> Da
     //extra readToken() in procDA()
-    if(isCurrentToken(TKN_Type.RESERVED, "within")){ //D -> Da 'within' D => 'within'
+    if(kind()==Token_Kind.WITHIN){ //D -> Da 'within' D => 'within'
       readNT();
       procD();
       buildNAryASTNode(AST_Nd_Type.WITHIN, 2);
     }
+    closeSpan(span, true);
   }
   
   /**
@@ -514,7 +802,7 @@ public class Parser{
     procDR(); //Da -> Dr
     //extra readToken() in procDR()
     int treesToPop = 0;
-    while(isCurrentToken(TKN_Type.RESERVED, "and")){ //Da -> Dr ( 'and' Dr )+ => 'and'
+    while(kind()==Token_Kind.AND){ //Da -> Dr ( 'and' Dr )+ => 'and'
       readNT();
       procDR(); //extra readToken() in procDR()
       treesToPop++;
@@ -527,7 +815,7 @@ public class Parser{
    *    -> Db;
    */
   private void procDR(){
-    if(isCurrentToken(TKN_Type.RESERVED, "rec")){ //Dr -> 'rec' Db => 'rec'
+    if(kind()==Token_Kind.REC){ //Dr -> 'rec' Db => 'rec'
       readNT();
       procDB(); //extra readToken() in procDB()
       buildNAryASTNode(AST_Nd_Type.REC, 1);
@@ -545,23 +833,23 @@ public class Parser{
    * </pre>
    */
   private void procDB(){
-    if(isCurrentTokenType(TKN_Type.L_PAREN)){ //Db -> '(' D ')'
-      procD();
+    if(kind()==Token_Kind.L_PAREN){ //Db -> '(' D ')'
       readNT();
-      if(!isCurrentTokenType(TKN_Type.R_PAREN))
+      procD(); //extra readNT in procD()
+      if(kind()!=Token_Kind.R_PAREN)
         throw new Parser_Exception("DB: ')' expected");
       readNT();
     }
-    else if(isCurrentTokenType(TKN_Type.IDENTIFIER)){
+    else if(kind()==Token_Kind.IDENTIFIER){
       readNT();
-      if(isCurrentToken(TKN_Type.OPERATOR, ",")){ //Db -> Vl '=' E => '='
+      if(kind()==Token_Kind.OPERATOR_COMMA){ //Db -> Vl '=' E => '='
         readNT();
         procVL(); //extra readNT in procVB()
         //VL makes its COMMA nodes for all the tokens EXCEPT the ones
         //we just read above (i.e., the first identifier and the comma after it)
         //Hence, we must pop the top of the tree VL just made and put it under a
         //comma node with the identifier it missed.
-        if(!isCurrentToken(TKN_Type.OPERATOR, "="))
+        if(kind()!=Token_Kind.EQUALS)
           throw new Parser_Exception("DB: = expected.");
         buildNAryASTNode(AST_Nd_Type.COMMA, 2);
         readNT();
@@ -569,7 +857,7 @@ public class Parser{
         buildNAryASTNode(AST_Nd_Type.EQUAL, 2);
       }
       else{ //Db -> '<IDENTIFIER>' Vb+ '=' E => 'fcn_form'
-        if(isCurrentToken(TKN_Type.OPERATOR, "=")){ //Db -> Vl '=' E => '='; if Vl had only one IDENTIFIER (no commas)
+        if(kind()==Token_Kind.EQUALS){ //Db -> Vl '=' E => '='; if Vl had only one IDENTIFIER (no commas)
           readNT();
           procE(); //extra readNT in procE()
           buildNAryASTNode(AST_Nd_Type.EQUAL, 2);
@@ -577,7 +865,7 @@ public class Parser{
         else{ //Db -> '<IDENTIFIER>' Vb+ '=' E => 'fcn_form'
           int treesToPop = 0;
 
-          while(isCurrentTokenType(TKN_Type.IDENTIFIER) || isCurrentTokenType(TKN_Type.L_PAREN)){
+          while(kind()==Token_Kind.IDENTIFIER || kind()==Token_Kind.L_PAREN){
             procVB(); //extra readNT in procVB()
             treesToPop++;
           }
@@ -585,7 +873,7 @@ public class Parser{
           if(treesToPop==0)
             throw new Parser_Exception("E: at least one 'Vb' expected");
 
-          if(!isCurrentToken(TKN_Type.OPERATOR, "="))
+          if(kind()!=Token_Kind.EQUALS)
             throw new Parser_Exception("DB: = expected.");
 
           readNT();
@@ -609,18 +897,18 @@ public class Parser{
    * </pre>
    */
   private void procVB(){
-    if(isCurrentTokenType(TKN_Type.IDENTIFIER)){ //Vb -> '<IDENTIFIER>'
+    if(kind()==Token_Kind.IDENTIFIER){ //Vb -> '<IDENTIFIER>'
       readNT();
     }
-    else if(isCurrentTokenType(TKN_Type.L_PAREN)){
+    else if(kind()==Token_Kind.L_PAREN){
       readNT();
-      if(isCurrentTokenType(TKN_Type.R_PAREN)){ //Vb -> '(' ')' => '()'
+      if(kind()==Token_Kind.R_PAREN){ //Vb -> '(' ')' => '()'
         createTerminalASTNode(AST_Nd_Type.PAREN, "");
         readNT();
       }
       else{ //Vb -> '(' Vl ')'
         procVL(); //extra readNT in procVB()
-        if(!isCurrentTokenType(TKN_Type.R_PAREN))
+        if(kind()!=Token_Kind.R_PAREN)
           throw new Parser_Exception("VB: ')' expected");
         readNT();
       }
@@ -633,14 +921,14 @@ public class Parser{
    * </pre>
    */
   private void procVL(){
-    if(!isCurrentTokenType(TKN_Type.IDENTIFIER))
+    if(kind()!=Token_Kind.IDENTIFIER)
       throw new Parser_Exception("VL: Identifier expected");
     else{
       readNT();
       int treesToPop = 0;
-      while(isCurrentToken(TKN_Type.OPERATOR, ",")){ //Vl -> '<IDENTIFIER>' list ',' => ','?;
+      while(kind()==Token_Kind.OPERATOR_COMMA){ //Vl -> '<IDENTIFIER>' list ',' => ','?;
         readNT();
-        if(!isCurrentTokenType(TKN_Type.IDENTIFIER))
+        if(kind()!=Token_Kind.IDENTIFIER)
           throw new Parser_Exception("VL: Identifier expected");
         readNT();
         treesToPop++;
@@ -650,5 +938,343 @@ public class Parser{
     }
   }
 
-}
+  /******************************
+   * Iterative parsing
+   *******************************/
+
+  //states of the iterative parser: X_START parses an X, the others continue one
+  //after the phrase it was waiting for has been parsed
+  private static final int E_START = 0;
+  private static final int E_LET_IN = 1;
+  private static final int E_LET_END = 2;
+  private static final int E_LAMBDA_END = 3;
+  private static final int E_AFTER_T = 4;
+  private static final int E_WHERE_END = 5;
+  private static final int T_START = 6;
+  private static final int T_LOOP = 7;
+  private static final int EXPR_START = 8;
+  private static final int EXPR_LOOP = 9;
+  private static final int EXPR_NOT_END = 10;
+  private static final int EXPR_PLUS_END = 11;
+  private static final int EXPR_NEG_END = 12;
+  private static final int EXPR_ARROW_THEN = 13;
+  private static final int EXPR_ARROW_END = 14;
+  private static final int EXPR_AT_END = 15;
+  private static final int EXPR_INFIX_END = 16;
+  private static final int R_START = 17;
+  private static final int R_LOOP = 18;
+  private static final int R_GAMMA_END = 19;
+  private static final int RN_START = 20;
+  private static final int RN_PAREN_END = 21;
+  private static final int D_START = 22;
+  private static final int D_AFTER_DA = 23;
+  private static final int D_WITHIN_END = 24;
+  private static final int DA_START = 25;
+  private static final int DA_LOOP = 26;
+  private static final int DR_START = 27;
+  private static final int DR_REC_END = 28;
+  private static final int DB_START = 29;
+  private static final int DB_PAREN_END = 30;
+  private static final int DB_EQUAL_END = 31;
+  private static final int DB_FCNFORM_END = 32;
+
+  private static final int FRAME = 3; //state and two locals
+
+  /**
+   * Parses the phrase started by the given state with the same grammar, trees and
+   * errors as procE() and procD(), operators by precedence climbing as in
+   * {@link #procExpression(int)}.
+   *
+   * Every call of the recursive parser becomes two frames on the work stack: the
+   * state the caller goes on with, under the state that parses the callee. A
+   * frame has two locals: the stack position of an E's or D's span, the number of
+   * trees of a list, or an expression's level and the level of the tree built so
+   * far (or, until its right operand is parsed, the kind of the operator).
+   * Vb and Vl are not recursive, so procVB() and procVL() are called directly.
+   */
+  private void parseIteratively(int startState){
+    frames = new int[FRAME*64];
+    frameTop = 0;
+    pushFrame(startState, 0, 0);
+    while(frameTop>0){
+      frameTop -= FRAME;
+      int state = frames[frameTop];
+      int a = frames[frameTop+1];
+      int b = frames[frameTop+2];
+      switch(state){
+        case E_START:
+          a = openSpan();
+          if(kind()==Token_Kind.LET){ //E -> 'let' D 'in' E => 'let'
+            readNT();
+            pushFrame(E_LET_IN, a, 0);
+            pushFrame(D_START, 0, 0);
+          }
+          else if(kind()==Token_Kind.FN){ //E -> 'fn' Vb+ '.' E => 'lambda'
+            int treesToPop = 0;
+            readNT();
+            while(kind()==Token_Kind.IDENTIFIER || kind()==Token_Kind.L_PAREN){
+              procVB(); //extra readNT in procVB()
+              treesToPop++;
+            }
+            if(treesToPop==0)
+              throw new Parser_Exception("E: at least one 'Vb' expected");
+            if(kind()!=Token_Kind.DOT)
+              throw new Parser_Exception("E: '.' expected");
+            readNT();
+            pushFrame(E_LAMBDA_END, a, treesToPop);
+            pushFrame(E_START, 0, 0);
+          }
+          else{ //E -> Ew; Ew -> T ('where' Dr)?
+            pushFrame(E_AFTER_T, a, 0);
+            pushFrame(T_START, 0, 0);
+          }
+          break;
+        case E_LET_IN:
+          if(kind()!=Token_Kind.IN)
+            throw new Parser_Exception("E:  'in' expected");
+          readNT();
+          pushFrame(E_LET_END, a, 0);
+          pushFrame(E_START, 0, 0);
+          break;
+        case E_LET_END:
+          buildNAryASTNode(AST_Nd_Type.LET, 2);
+          closeSpan(a, false);
+          break;
+        case E_LAMBDA_END:
+          buildNAryASTNode(AST_Nd_Type.LAMBDA, b+1); //+1 for the last E
+          closeSpan(a, false);
+          break;
+        case E_AFTER_T:
+          if(kind()==Token_Kind.WHERE){ //Ew -> T 'where' Dr => 'where'
+            readNT();
+            pushFrame(E_WHERE_END, a, 0);
+            pushFrame(DR_START, 0, 0);
+          }
+          else
+            closeSpan(a, false);
+          break;
+        case E_WHERE_END:
+          buildNAryASTNode(AST_Nd_Type.WHERE, 2);
+          closeSpan(a, false);
+          break;
+
+        case T_START: //T -> Ta ( ',' Ta )* => 'tau'
+          pushFrame(T_LOOP, 0, 0);
+          pushFrame(EXPR_START, TA, 0);
+          break;
+        case T_LOOP:
+          if(kind()==Token_Kind.OPERATOR_COMMA){
+            readNT();
+            pushFrame(T_LOOP, a+1, 0);
+            pushFrame(EXPR_START, TA, 0);
+          }
+          else if(a>0)
+            buildNAryASTNode(AST_Nd_Type.TAU, a+1);
+          break;
 
+        case EXPR_START: //a: level
+          if(kind()==Token_Kind.NOT && a<=BS){ //Bs -> 'not' Bp => 'not'
+            readNT();
+            pushFrame(EXPR_NOT_END, a, 0);
+            pushFrame(EXPR_START, BP, 0);
+          }
+          else if(kind()==Token_Kind.PLUS && a<=A){ //A -> '+' At
+            readNT();
+            pushFrame(EXPR_PLUS_END, a, 0);
+            pushFrame(EXPR_START, AT, 0);
+          }
+          else if(kind()==Token_Kind.MINUS && a<=A){ //A -> '-' At => 'neg'
+            readNT();
+            pushFrame(EXPR_NEG_END, a, 0);
+            pushFrame(EXPR_START, AT, 0);
+          }
+          else{
+            pushFrame(EXPR_LOOP, a, R);
+            pushFrame(R_START, 0, 0);
+          }
+          break;
+        case EXPR_NOT_END:
+          buildNAryASTNode(AST_Nd_Type.NOT, 1);
+          pushFrame(EXPR_LOOP, a, BS);
+          break;
+        case EXPR_PLUS_END:
+          pushFrame(EXPR_LOOP, a, A);
+          break;
+        case EXPR_NEG_END:
+          buildNAryASTNode(AST_Nd_Type.NEG, 1);
+          pushFrame(EXPR_LOOP, a, A);
+          break;
+        case EXPR_LOOP: //a: level, b: level of the tree built so far
+          int kind = kind();
+          int operatorLevel = kind<0 ? 0 : OPERATOR_LEVEL[kind];
+          if(operatorLevel==0 || operatorLevel<a || b<LEFT_LEVEL[kind])
+            break;
+          readNT();
+          if(kind==Token_Kind.ARROW){ //Tc -> B '->' Tc '|' Tc => '->'
+            pushFrame(EXPR_ARROW_THEN, a, 0);
+            pushFrame(EXPR_START, TC, 0);
+          }
+          else if(kind==Token_Kind.AT){ //Ap -> Ap '@' '<IDENTIFIER>' R => '@'
+            if(kind()!=Token_Kind.IDENTIFIER)
+              throw new Parser_Exception("AP: expected Identifier");
+            readNT();
+            pushFrame(EXPR_AT_END, a, 0);
+            pushFrame(R_START, 0, 0);
+          }
+          else{
+            pushFrame(EXPR_INFIX_END, a, kind);
+            pushFrame(EXPR_START, RIGHT_LEVEL[kind], 0);
+          }
+          break;
+        case EXPR_ARROW_THEN:
+          if(kind()!=Token_Kind.BAR)
+            throw new Parser_Exception("TC: '|' expected");
+          readNT();
+          pushFrame(EXPR_ARROW_END, a, 0);
+          pushFrame(EXPR_START, TC, 0);
+          break;
+        case EXPR_ARROW_END:
+          buildNAryASTNode(AST_Nd_Type.CONDITIONAL, 3);
+          pushFrame(EXPR_LOOP, a, TC);
+          break;
+        case EXPR_AT_END:
+          buildNAryASTNode(AST_Nd_Type.AT, 3);
+          pushFrame(EXPR_LOOP, a, AP);
+          break;
+        case EXPR_INFIX_END: //b: kind of the operator
+          buildNAryASTNode(OPERATOR_TYPE[b], 2);
+          pushFrame(EXPR_LOOP, a, OPERATOR_LEVEL[b]);
+          break;
+
+        case R_START: //R -> R Rn => 'gamma'; as procR()
+          pushFrame(R_LOOP, 0, 0);
+          pushFrame(RN_START, 0, 0);
+          break;
+        case R_GAMMA_END:
+          buildNAryASTNode(AST_Nd_Type.GAMMA, 2);
+          pushFrame(R_LOOP, 0, 0);
+          break;
+        case R_LOOP:
+          readNT();
+          if(startsRN()){
+            pushFrame(R_GAMMA_END, 0, 0);
+            pushFrame(RN_START, 0, 0);
+          }
+          break;
+        case RN_START: //as procRN()
+          if(kind()==Token_Kind.L_PAREN){ //Rn -> '(' E ')'
+            readNT();
+            pushFrame(RN_PAREN_END, 0, 0);
+            pushFrame(E_START, 0, 0);
+          }
+          else
+            procRN();
+          break;
+        case RN_PAREN_END:
+          if(kind()!=Token_Kind.R_PAREN)
+            throw new Parser_Exception("RN: ')' expected");
+          break;
+
+        case D_START: //D -> Da ('within' D)?
+          pushFrame(D_AFTER_DA, openSpan(), 0);
+          pushFrame(DA_START, 0, 0);
+          break;
+        case D_AFTER_DA:
+          if(kind()==Token_Kind.WITHIN){ //D -> Da 'within' D => 'within'
+            readNT();
+            pushFrame(D_WITHIN_END, a, 0);
+            pushFrame(D_START, 0, 0);
+          }
+          else
+            closeSpan(a, true);
+          break;
+        case D_WITHIN_END:
+          buildNAryASTNode(AST_Nd_Type.WITHIN, 2);
+          closeSpan(a, true);
+          break;
+        case DA_START: //Da -> Dr ( 'and' Dr )* => 'and'
+          pushFrame(DA_LOOP, 0, 0);
+          pushFrame(DR_START, 0, 0);
+          break;
+        case DA_LOOP:
+          if(kind()==Token_Kind.AND){
+            readNT();
+            pushFrame(DA_LOOP, a+1, 0);
+            pushFrame(DR_START, 0, 0);
+          }
+          else if(a>0)
+            buildNAryASTNode(AST_Nd_Type.SIMULTDEF, a+1);
+          break;
+        case DR_START:
+          if(kind()==Token_Kind.REC){ //Dr -> 'rec' Db => 'rec'
+            readNT();
+            pushFrame(DR_REC_END, 0, 0);
+          }
+          pushFrame(DB_START, 0, 0);
+          break;
+        case DR_REC_END:
+          buildNAryASTNode(AST_Nd_Type.REC, 1);
+          break;
+        case DB_START: //as procDB()
+          if(kind()==Token_Kind.L_PAREN){ //Db -> '(' D ')'
+            readNT();
+            pushFrame(DB_PAREN_END, 0, 0);
+            pushFrame(D_START, 0, 0);
+          }
+          else if(kind()==Token_Kind.IDENTIFIER){
+            readNT();
+            if(kind()==Token_Kind.OPERATOR_COMMA){ //Db -> Vl '=' E => '='
+              readNT();
+              procVL(); //extra readNT in procVL()
+              if(kind()!=Token_Kind.EQUALS)
+                throw new Parser_Exception("DB: = expected.");
+              buildNAryASTNode(AST_Nd_Type.COMMA, 2);
+              readNT();
+              pushFrame(DB_EQUAL_END, 0, 0);
+            }
+            else if(kind()==Token_Kind.EQUALS){ //Db -> '<IDENTIFIER>' '=' E => '='
+              readNT();
+              pushFrame(DB_EQUAL_END, 0, 0);
+            }
+            else{ //Db -> '<IDENTIFIER>' Vb+ '=' E => 'fcn_form'
+              int treesToPop = 0;
+              while(kind()==Token_Kind.IDENTIFIER || kind()==Token_Kind.L_PAREN){
+                procVB(); //extra readNT in procVB()
+                treesToPop++;
+              }
+              if(treesToPop==0)
+                throw new Parser_Exception("E: at least one 'Vb' expected");
+              if(kind()!=Token_Kind.EQUALS)
+                throw new Parser_Exception("DB: = expected.");
+              readNT();
+              pushFrame(DB_FCNFORM_END, treesToPop, 0);
+            }
+            pushFrame(E_START, 0, 0);
+          }
+          break;
+        case DB_PAREN_END:
+          if(kind()!=Token_Kind.R_PAREN)
+            throw new Parser_Exception("DB: ')' expected");
+          readNT();
+          break;
+        case DB_EQUAL_END:
+          buildNAryASTNode(AST_Nd_Type.EQUAL, 2);
+          break;
+        case DB_FCNFORM_END:
+          buildNAryASTNode(AST_Nd_Type.FCNFORM, a+2); //+1 for the last E and +1 for the first identifier
+          break;
+      }
+    }
+    frames = null;
+  }
+
+  private void pushFrame(int state, int a, int b){
+    if(frameTop==frames.length)
+      frames = Arrays.copyOf(frames, 2*frames.length);
+    frames[frameTop] = state;
+    frames[frameTop+1] = a;
+    frames[frameTop+2] = b;
+    frameTop += FRAME;
+  }
+
+}
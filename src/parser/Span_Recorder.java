@@ -0,0 +1,19 @@
+package parser;
+
+import ast.AST_Nd;
+
+/**
+ * Told by the parser where each E and D phrase starts and ends. The recorder
+ * knows the token positions; the parser only reports the tree it built.
+ */
+interface Span_Recorder{
+  /**
+   * A phrase starts at the current token.
+   */
+  void open();
+
+  /**
+   * The innermost open phrase ends before the current token.
+   */
+  void close(AST_Nd node, boolean definition);
+}
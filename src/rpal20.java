@@ -1,35 +1,306 @@
 import ast.AST;
+import ast.AST_Arena;
+import ast.Common_Subexpression_Eliminator;
+import ast.Dead_Binding_Eliminator;
+import ast.Inliner;
+import ast.Uncurrier;
 import csem.*;
 import scanner.*;
 import parser.*;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ForkJoinPool;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 //group 44
 public class rpal20 {
+    private static boolean tableScanner;
+    private static boolean mappedScanner;
+    private static boolean checkOnly;
+    private static boolean pipelined;
+    private static boolean parallelScanner;
+    private static boolean precedenceClimbing;
+    private static boolean iterative;
+    private static boolean arena;
+    private static boolean onePass;
+    private static boolean cached;
+    private static boolean printAST;
+    private static boolean printST;
+    private static boolean forkJoin;
+    private static boolean programCounter;
+    private static boolean uncurrying;
+    private static boolean inlining;
+    private static boolean folding;
+    private static boolean commonSubexpressions;
+    private static boolean deadBindings;
+
     public static void main(String[] args) throws Exception {
-        String fileName = args[0];//input file
+        String fileName = null;//input file
+        for(String arg: args){
+          if(arg.equals("-table"))//table driven scanner
+            tableScanner = true;
+          else if(arg.equals("-mmap"))//memory mapped scanner
+            mappedScanner = true;
+          else if(arg.equals("-check"))//syntax check only
+            checkOnly = true;
+          else if(arg.equals("-pipe"))//scan on a separate thread
+            pipelined = true;
+          else if(arg.equals("-par"))//scan chunks of the file in parallel
+            parallelScanner = true;
+          else if(arg.equals("-pratt"))//precedence climbing expression parser
+            precedenceClimbing = true;
+          else if(arg.equals("-iterative"))//parse without recursion (deeply nested programs)
+            iterative = true;
+          else if(arg.equals("-arena"))//keep the tree in parallel arrays
+            arena = true;
+          else if(arg.equals("-onepass"))//standardize while parsing
+            onePass = true;
+          else if(arg.equals("-cache"))//reuse the deltas of an unchanged program
+            cached = true;
+          else if(arg.equals("-ast"))//print the abstract syntax tree
+            printAST = true;
+          else if(arg.equals("-st"))//print the standardized tree
+            printST = true;
+          else if(arg.equals("-forkjoin"))//standardize and build the deltas on a pool
+            forkJoin = true;
+          else if(arg.equals("-pc"))//run deltas compiled to flat code
+            programCounter = true;
+          else if(arg.equals("-uncurry"))//pass the arguments of curried functions in one tuple
+            uncurrying = true;
+          else if(arg.equals("-inline"))//inline small lambdas
+            inlining = true;
+          else if(arg.equals("-fold"))//fold constant expressions
+            folding = true;
+          else if(arg.equals("-cse"))//bind repeated pure expressions once
+            commonSubexpressions = true;
+          else if(arg.equals("-dead"))//remove unused bindings
+            deadBindings = true;
+          else
+            fileName = arg;
+        }
+        if(checkOnly){
+          checkSyntax(fileName);
+          return;
+        }
+        if(printAST || printST){
+          printTrees(fileName);
+          return;
+        }
+        if(cached && !fileName.equals("-")){
+          evaluateCached(fileName);
+          return;
+        }
+        if(arena){
+          evaluateArena(fileName);
+          return;
+        }
         AST ast = null;
         ast = buildAST(fileName, true);
         // ast.print();
         ast.standardize();
+        optimize(ast);
         evaluateST(ast);
     
     }
     private static AST buildAST(String fileName, boolean printOutput){
         AST ast = null;
         try{
-          Scanner scanner = new Scanner(fileName);
-          Parser parser = new Parser(scanner);
-          ast = parser.buildAST();
+          ast = createParser(fileName).buildAST();
         }catch(IOException e){
           throw new Parser_Exception("ERROR: Could not read from file: " + fileName);
         }
+        if(forkJoin)
+          ast.setForkJoinPool(ForkJoinPool.commonPool());
         return ast;
       }
+
+      private static void evaluateArena(String fileName){
+        AST_Arena tree;
+        try{
+          tree = createParser(fileName).buildArena();
+        }catch(IOException e){
+          throw new Parser_Exception("ERROR: Could not read from file: " + fileName);
+        }
+        tree.standardize();
+        if(!optimizations().isEmpty()){
+          evaluateST(optimized(tree));
+          return;
+        }
+        CSEMachine cseMachine = new CSEMachine(tree);
+        run(cseMachine);
+      }
+
+      /**
+       * Runs the deltas cached for this source, or builds and caches them first.
+       */
+      private static void evaluateCached(String fileName) throws IOException{
+        byte[] source;
+        try{
+          source = Files.readAllBytes(Paths.get(fileName));
+        }catch(IOException e){
+          throw new Parser_Exception("ERROR: Could not read from file: " + fileName);
+        }
+        Delta_Cache deltaCache = new Delta_Cache(Delta_Cache.defaultDirectory(), Delta_Cache.defaultMaxBytes());
+        byte[] key = Delta_Cache.key(source, optimizations());
+        Delta rootDelta = deltaCache.load(key);
+        if(rootDelta==null){
+          if(arena){
+            AST_Arena tree;
+            try{
+              tree = createParser(fileName).buildArena();
+            }catch(IOException e){
+              throw new Parser_Exception("ERROR: Could not read from file: " + fileName);
+            }
+            tree.standardize();
+            if(optimizations().isEmpty())
+              rootDelta = tree.createDeltas();
+            else
+              rootDelta = optimized(tree).createDeltas();
+          }
+          else{
+            AST ast = buildAST(fileName, true);
+            ast.standardize();
+            optimize(ast);
+            rootDelta = ast.createDeltas();
+          }
+          deltaCache.store(key, rootDelta);
+        }
+        CSEMachine cseMachine = new CSEMachine(rootDelta);
+        run(cseMachine);
+      }
+
+      /**
+       * Prints the tree as parsed and/or standardized, through one buffered writer,
+       * instead of running the program.
+       */
+      private static void printTrees(String fileName) throws IOException{
+        AST ast;
+        try{
+          Parser parser = createParser(fileName);
+          if(printAST)
+            parser.setStandardizing(false);
+          ast = arena ? parser.buildArena().toAST() : parser.buildAST();
+        }catch(IOException e){
+          throw new Parser_Exception("ERROR: Could not read from file: " + fileName);
+        }
+        if(forkJoin)
+          ast.setForkJoinPool(ForkJoinPool.commonPool());
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1<<20);
+        if(printAST)
+          ast.print(out);
+        if(printST){
+          ast.standardize();
+          optimize(ast);
+          ast.print(out);
+        }
+        out.flush();
+      }
+
+      /**
+       * The standardized tree of an arena as AST_Nd objects, which the optimizations
+       * work on, with those asked for run on it.
+       */
+      private static AST optimized(AST_Arena tree){
+        AST ast = tree.toAST();
+        optimize(ast);
+        return ast;
+      }
+
+      /**
+       * The optimization flags that are on, in the order optimize runs them; part of
+       * the key of cached deltas.
+       */
+      private static String optimizations(){
+        StringBuilder options = new StringBuilder();
+        if(uncurrying)
+          options.append(" -uncurry");
+        if(inlining)
+          options.append(" -inline");
+        if(folding)
+          options.append(" -fold");
+        if(commonSubexpressions)
+          options.append(" -cse");
+        if(deadBindings)
+          options.append(" -dead");
+        return options.toString().trim();
+      }
+
+      /**
+       * Runs the optimizations asked for on a standardized tree.
+       */
+      private static void optimize(AST ast){
+        if(uncurrying){
+          Uncurrier uncurrier = ast.raiseArities();
+          System.err.println("uncurried: "+uncurrier.getRaisedFunctions()+" functions, "+uncurrier.getRaisedCalls()
+                             +" calls, "+uncurrier.getWrappers()+" wrappers");
+        }
+        if(inlining){
+          Inliner inliner = ast.inlineLambdas();
+          System.err.println("inlined: "+inliner.getInlinedCalls()+" calls, "+inliner.getReducedBindings()+" bindings");
+        }
+        if(folding)
+          ast.foldConstants();
+        if(commonSubexpressions){
+          Common_Subexpression_Eliminator eliminator = ast.eliminateCommonSubexpressions();
+          System.err.println("common subexpressions: "+eliminator.getIntroducedBindings()+" bound, "
+                             +eliminator.getReplacedUses()+" uses replaced");
+        }
+        if(deadBindings){
+          Dead_Binding_Eliminator eliminator = ast.eliminateDeadBindings();
+          System.err.println("dead bindings: "+eliminator.getRemovedBindings()+" removed, "+eliminator.getRemovedNodes()
+                             +" nodes and "+eliminator.getRemovedDeltas()+" deltas");
+        }
+      }
+
+      private static void checkSyntax(String fileName){
+        try{
+          createParser(fileName).checkSyntax();
+        }catch(IOException e){
+          throw new Parser_Exception("ERROR: Could not read from file: " + fileName);
+        }
+      }
+
+      private static Parser createParser(String fileName) throws IOException{
+        Parser parser = new Parser(createLexer(fileName));
+        parser.setPrecedenceClimbing(precedenceClimbing);
+        parser.setIterative(iterative);
+        parser.setStandardizing(onePass);
+        return parser;
+      }
+
+      private static Lexer createLexer(String fileName) throws IOException{
+        Lexer lexer;
+        if(fileName.equals("-")){ //program streamed in on stdin
+          if(tableScanner || mappedScanner || parallelScanner)
+            lexer = new Stream_Scanner(System.in);
+          else
+            lexer = new Scanner(System.in);
+        }
+        else if(mappedScanner)
+          lexer = new Mapped_Scanner(fileName);
+        else if(parallelScanner)
+          lexer = new Parallel_Lexer(fileName);
+        else if(tableScanner)
+          lexer = new Table_Scanner(fileName);
+        else
+          lexer = new Scanner(fileName);
+        if(pipelined)
+          return new Pipelined_Lexer(lexer);
+        return lexer;
+      }
     
       private static void evaluateST(AST ast){
         CSEMachine cseMachine = new CSEMachine(ast);
+        run(cseMachine);
+      }
+
+      private static void run(CSEMachine cseMachine){
+        if(programCounter)
+          cseMachine.compile();
         cseMachine.evaluate_Program();
         System.out.println();
       }
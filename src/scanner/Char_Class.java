@@ -0,0 +1,66 @@
+package scanner;
+
+/**
+ * Precomputed character classes for the table driven scanner.
+ * 
+ * The table is filled in once from the patterns in {@link Lxcl_Rgx_Patterns}, in the
+ * same order {@code Scanner.buildToken} tries them, so both scanners agree on what
+ * starts and continues each kind of token. Characters outside ASCII are always OTHER.
+ */
+public final class Char_Class{
+  public static final byte OTHER = 0;
+  public static final byte LETTER = 1;
+  public static final byte DIGIT = 2;
+  public static final byte OPERATOR = 3;
+  public static final byte QUOTE = 4;
+  public static final byte SPACE = 5;
+  public static final byte PUNCTUATION = 6;
+
+  private static final byte[] START = new byte[128];
+  private static final boolean[] IDENTIFIER_PART = new boolean[128];
+
+  static{
+    for(int c=0;c<128;c++){
+      String s = Character.toString((char)c);
+      if(Lxcl_Rgx_Patterns.LetterPattern.matcher(s).matches())
+        START[c] = LETTER;
+      else if(Lxcl_Rgx_Patterns.DigitPattern.matcher(s).matches())
+        START[c] = DIGIT;
+      else if(Lxcl_Rgx_Patterns.OpSymbolPattern.matcher(s).matches())
+        START[c] = OPERATOR;
+      else if(c=='\'')
+        START[c] = QUOTE;
+      else if(Lxcl_Rgx_Patterns.SpacePattern.matcher(s).matches())
+        START[c] = SPACE;
+      else if(Lxcl_Rgx_Patterns.PunctuationPattern.matcher(s).matches())
+        START[c] = PUNCTUATION;
+      IDENTIFIER_PART[c] = Lxcl_Rgx_Patterns.IdentifierPattern.matcher(s).matches();
+    }
+  }
+
+  private Char_Class(){
+  }
+
+  /**
+   * Class of a character that starts a token.
+   */
+  public static byte of(int c){
+    return c<128 ? START[c] : OTHER;
+  }
+
+  public static boolean isIdentifierPart(int c){
+    return c<128 && IDENTIFIER_PART[c];
+  }
+
+  public static boolean isDigit(int c){
+    return c<128 && START[c]==DIGIT;
+  }
+
+  public static boolean isOperator(int c){
+    return c<128 && START[c]==OPERATOR;
+  }
+
+  public static boolean isSpace(int c){
+    return c<128 && START[c]==SPACE;
+  }
+}
@@ -0,0 +1,19 @@
+package scanner;
+
+/**
+ * Source of tokens for the parser. Implemented by the regex driven {@link Scanner}
+ * and by the table driven {@link Table_Scanner}.
+ */
+public interface Lexer{
+  /**
+   * Returns the next token in the input, or null at the end of the input.
+   */
+  Token readNextToken();
+
+  /**
+   * Releases what the lexer holds once the parser is done with it, whether it
+   * read to the end or gave up; nothing by default.
+   */
+  default void close(){
+  }
+}
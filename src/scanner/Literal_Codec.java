@@ -0,0 +1,89 @@
+package scanner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns literal tokens into the values the evaluator works with, once, when the
+ * token is scanned.
+ *
+ * Integer literals are decimal and have to fit in an int. In string literals \t
+ * and \n stand for a tab and a newline; every other character stands for itself.
+ */
+public final class Literal_Codec{
+
+  private Literal_Codec(){
+  }
+
+  /**
+   * Value of the digits in buffer[offset..offset+length).
+   */
+  public static int decodeInteger(char[] buffer, int offset, int length, int sourceLineNumber){
+    long value = 0;
+    for(int i=offset;i<offset+length;i++){
+      value = 10*value+(buffer[i]-'0');
+      if(value>Integer.MAX_VALUE)
+        throw overflow(new String(buffer, offset, length), sourceLineNumber);
+    }
+    return (int)value;
+  }
+
+  public static int decodeInteger(ByteBuffer buffer, int offset, int length, int sourceLineNumber){
+    long value = 0;
+    for(int i=offset;i<offset+length;i++){
+      value = 10*value+((buffer.get(i)&0xff)-'0');
+      if(value>Integer.MAX_VALUE){
+        char[] digits = new char[length];
+        for(int j=0;j<length;j++)
+          digits[j] = (char)(buffer.get(offset+j)&0xff);
+        throw overflow(new String(digits), sourceLineNumber);
+      }
+    }
+    return (int)value;
+  }
+
+  public static int decodeInteger(String digits, int sourceLineNumber){
+    long value = 0;
+    for(int i=0;i<digits.length();i++){
+      value = 10*value+(digits.charAt(i)-'0');
+      if(value>Integer.MAX_VALUE)
+        throw overflow(digits, sourceLineNumber);
+    }
+    return (int)value;
+  }
+
+  /**
+   * The string a literal's text (without the quotes) stands for.
+   */
+  public static String unescape(String text){
+    if(text.indexOf('\\')<0)
+      return text;
+    StringBuilder sBuilder = new StringBuilder(text.length());
+    for(int i=0;i<text.length();i++){
+      char c = text.charAt(i);
+      if(c=='\\' && i+1<text.length() && text.charAt(i+1)=='t'){
+        sBuilder.append('\t');
+        i++;
+      }
+      else if(c=='\\' && i+1<text.length() && text.charAt(i+1)=='n'){
+        sBuilder.append('\n');
+        i++;
+      }
+      else
+        sBuilder.append(c);
+    }
+    return sBuilder.toString();
+  }
+
+  /**
+   * Writes tabs and newlines back as \t and \n, for printing trees.
+   */
+  public static String escape(String value){
+    if(value.indexOf('\t')<0 && value.indexOf('\n')<0)
+      return value;
+    return value.replace("\t", "\\t").replace("\n", "\\n");
+  }
+
+  private static Scanner_Exception overflow(String digits, int sourceLineNumber){
+    return new Scanner_Exception("Integer literal "+digits+" on line "+sourceLineNumber+" does not fit in 32 bits.");
+  }
+}
@@ -0,0 +1,164 @@
+package scanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory mapped scanner for large sources.
+ *
+ * The file is mapped read only and scanned byte by byte in place (the source is
+ * taken to be ASCII). Tokens are views into the mapping: nothing is copied out
+ * of it until the parser asks a token for its text, so whitespace, comments and
+ * the source itself never reach the heap. Produces the same tokens as
+ * {@link Table_Scanner}. A single mapping limits the source to 2 GB.
+ */
+public class Mapped_Scanner implements Lexer{
+  private ByteBuffer buffer;
+  private int pos;
+  private int limit;
+  private int sourceLineNumber;
+
+  public Mapped_Scanner(String inputFile) throws IOException{
+    try(FileChannel channel = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ)){
+      if(channel.size()>Integer.MAX_VALUE)
+        throw new IOException("File too large to map: " + inputFile);
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      buffer = mapped;
+      limit = (int)channel.size();
+    }
+    sourceLineNumber = 1;
+  }
+
+  public Token readNextToken(){
+    if(pos>=limit)
+      return null;
+    int c = charAt(pos);
+    switch(Char_Class.of(c)){
+      case Char_Class.LETTER:
+        return buildIdentifierToken();
+      case Char_Class.DIGIT:
+        return buildIntegerToken();
+      case Char_Class.OPERATOR:
+        if(c=='/' && pos+1<limit && charAt(pos+1)=='/')
+          return buildCommentToken();
+        return buildOperatorToken();
+      case Char_Class.QUOTE:
+        return buildStringToken();
+      case Char_Class.SPACE:
+        return buildSpaceToken();
+      case Char_Class.PUNCTUATION:
+        return buildPunctuationToken(c);
+      default:
+        pos++;
+        if(c=='\n')
+          sourceLineNumber++;
+        return null;
+    }
+  }
+
+  private int charAt(int index){
+    return buffer.get(index)&0xff;
+  }
+
+  private Token buildIdentifierToken(){
+    int start = pos++;
+    while(pos<limit && Char_Class.isIdentifierPart(charAt(pos)))
+      pos++;
+    Token identifier_T = newToken(TKN_Type.RESERVED, start);
+    int symId = Sym_Table.reservedId(buffer, start, pos-start);
+    if(symId==Sym_Table.NONE){
+      identifier_T.setType(TKN_Type.IDENTIFIER);
+      symId = Sym_Table.intern(buffer, start, pos-start);
+    }
+    identifier_T.setSymId(symId);
+    identifier_T.setValue(Sym_Table.name(symId)); //canonical, so nothing is copied
+    return identifier_T;
+  }
+
+  private Token buildIntegerToken(){
+    int start = pos++;
+    while(pos<limit && Char_Class.isDigit(charAt(pos)))
+      pos++;
+    Token integer_T = finishToken(newToken(TKN_Type.INTEGER, start), start, pos);
+    integer_T.setIntValue(Literal_Codec.decodeInteger(buffer, start, pos-start, integer_T.sourceLineNumber));
+    return integer_T;
+  }
+
+  private Token buildOperatorToken(){
+    int start = pos++;
+    while(pos<limit && Char_Class.isOperator(charAt(pos)))
+      pos++;
+    Token opSymbol_T = finishToken(newToken(TKN_Type.OPERATOR, start), start, pos);
+    opSymbol_T.setKind(Token_Kind.operator(pos-start, charAt(start), pos-start>1 ? charAt(start+1) : 0));
+    return opSymbol_T;
+  }
+
+  private Token buildStringToken(){
+    Token string_T = newToken(TKN_Type.STRING, pos);
+    int start = ++pos;
+    while(pos<limit && charAt(pos)!='\''){
+      if(charAt(pos)=='\n')
+        sourceLineNumber++;
+      pos++;
+    }
+    if(pos>=limit)
+      return null;
+    finishToken(string_T, start, pos);
+    pos++;
+    return string_T;
+  }
+
+  private Token buildSpaceToken(){
+    int start = pos;
+    Token delete_T = newToken(TKN_Type.DELETE, start);
+    while(pos<limit && Char_Class.isSpace(charAt(pos))){
+      if(charAt(pos)=='\n')
+        sourceLineNumber++;
+      pos++;
+    }
+    return finishToken(delete_T, start, pos);
+  }
+
+  private Token buildCommentToken(){
+    int start = pos;
+    Token comment_T = newToken(TKN_Type.DELETE, start);
+    while(pos<limit && charAt(pos)!='\n')
+      pos++;
+    finishToken(comment_T, start, pos);
+    if(pos<limit){
+      sourceLineNumber++;
+      pos++;
+    }
+    return comment_T;
+  }
+
+  private Token buildPunctuationToken(int c){
+    Token punctuation_T = newToken(null, pos);
+    if(c=='(')
+      punctuation_T.setType(TKN_Type.L_PAREN);
+    else if(c==')')
+      punctuation_T.setType(TKN_Type.R_PAREN);
+    else if(c==';')
+      punctuation_T.setType(TKN_Type.SEMICOLON);
+    else if(c==',')
+      punctuation_T.setType(TKN_Type.COMMA);
+    pos++;
+    return finishToken(punctuation_T, pos-1, pos);
+  }
+
+  private Token newToken(TKN_Type type, int start){
+    Token token = new Token();
+    token.setType(type);
+    token.setSourceLineNumber(charAt(start)=='\n' ? sourceLineNumber+1 : sourceLineNumber);
+    return token;
+  }
+
+  private Token finishToken(Token token, int start, int end){
+    token.setSource(buffer, start, end-start);
+    return token;
+  }
+}
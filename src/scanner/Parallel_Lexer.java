@@ -0,0 +1,239 @@
+package scanner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Lexes a large source in chunks on a ForkJoin pool, then hands the tokens out in
+ * order. The tokens are the same, DELETE tokens and line numbers included, as
+ * {@link Table_Scanner} (and so {@link Scanner}) produces for the whole source.
+ *
+ * Chunks are split after a newline that is followed by a non blank character. Such a
+ * newline ends every token it can be part of (whitespace, and comments, which take
+ * their newline with them) except a string literal, so every split is a token
+ * boundary unless it falls inside a string. Chunks are lexed on the assumption
+ * that it does not; the chunk before a split that does runs into the end of its
+ * range in the middle of the string. The stitching pass notices that, lexes on from
+ * the start of that string over the whole rest of the source, and goes back to the
+ * chunks lexed in parallel at the first split it reaches on a token boundary.
+ *
+ * Line numbers come from counting the newlines of every chunk in parallel first, so
+ * each chunk can start on its own line.
+ *
+ * A Scanner_Exception, e.g. an integer literal too large, stops a chunk like a
+ * character the scanner gives up on. It may be an artifact of a split inside a
+ * string, so it is only thrown if stitching reaches it, and then only once every
+ * token before it has been handed out, as Table_Scanner would throw it.
+ */
+public class Parallel_Lexer implements Lexer{
+  private static final int MIN_CHUNK = 64*1024; //chars
+
+  private final char[] buffer;
+  private final int length;
+  private int[] splits; //chunk i is buffer[splits[i]..splits[i+1])
+  private int[] firstLines;
+  private Chunk[] chunks;
+
+  private final ArrayList<Token[]> stitched = new ArrayList<Token[]>();
+  private final ArrayList<Integer> stitchedCounts = new ArrayList<Integer>();
+  private int batch; //next stitched batch
+  private Token[] current;
+  private int batchCount;
+  private int batchPos;
+  private Scanner_Exception error; //thrown after the stitched tokens, or null
+
+  public Parallel_Lexer(String inputFile) throws IOException{
+    this(new String(Files.readAllBytes(Paths.get(inputFile))).toCharArray(), ForkJoinPool.commonPool());
+  }
+
+  public Parallel_Lexer(char[] source, ForkJoinPool pool){
+    buffer = source;
+    length = source.length;
+    split(Math.max(1, Math.min(4*pool.getParallelism(), length/MIN_CHUNK)));
+    pool.invoke(new Chunk_Task(0, chunks.length, true));
+    countLines();
+    pool.invoke(new Chunk_Task(0, chunks.length, false));
+    stitch();
+  }
+
+  public Token readNextToken(){
+    while(batchPos==batchCount){
+      if(batch==stitched.size()){
+        if(error!=null)
+          throw error;
+        return null;
+      }
+      current = stitched.get(batch);
+      batchCount = stitchedCounts.get(batch++);
+      batchPos = 0;
+    }
+    return current[batchPos++];
+  }
+
+  /**
+   * Puts the splits after the first newline followed by a non blank character at or
+   * after each even share of the source.
+   */
+  private void split(int chunkCount){
+    int[] points = new int[chunkCount+1];
+    int count = 1;
+    for(int i=1;i<chunkCount;i++){
+      int pos = Math.max((int)((long)length*i/chunkCount), points[count-1]+1);
+      while(pos<length && !(buffer[pos-1]=='\n' && !Char_Class.isSpace(buffer[pos])))
+        pos++;
+      if(pos<length)
+        points[count++] = pos;
+    }
+    points[count++] = length;
+    splits = Arrays.copyOf(points, count);
+    chunks = new Chunk[count-1];
+    for(int i=0;i<chunks.length;i++)
+      chunks[i] = new Chunk();
+  }
+
+  private void countLines(){
+    firstLines = new int[chunks.length+1];
+    firstLines[0] = 1;
+    for(int i=0;i<chunks.length;i++)
+      firstLines[i+1] = firstLines[i]+chunks[i].newlines;
+  }
+
+  /**
+   * Joins the chunks' tokens, lexing sequentially across every split that turns out
+   * to be inside a string.
+   */
+  private void stitch(){
+    for(int i=0;i<chunks.length;){
+      Chunk chunk = chunks[i];
+      stitched.add(chunk.tokens);
+      stitchedCounts.add(chunk.count);
+      if(chunk.stop<0){ //ended on the split
+        i++;
+        continue;
+      }
+      if(chunk.error!=null){ //reached, so not an artifact of a split inside a string
+        error = chunk.error;
+        return;
+      }
+      if(buffer[chunk.stop]!='\'' || i==chunks.length-1)
+        return; //an unknown character or an unterminated string ends the input, as in Scanner
+      i = lexAcross(i, chunk.stop);
+      if(i<0)
+        return;
+    }
+  }
+
+  /**
+   * Lexes from the string at offset in chunk i until a later split is reached on a
+   * token boundary, and returns that split's chunk; -1 if the input ended first.
+   */
+  private int lexAcross(int i, int offset){
+    int line = firstLines[i];
+    for(int pos=splits[i];pos<offset;pos++)
+      if(buffer[pos]=='\n')
+        line++;
+    Table_Scanner scanner = new Table_Scanner(buffer, offset, length-offset, line);
+    Token[] tokens = new Token[1024];
+    int count = 0;
+    int next = i+1;
+    for(;;){
+      int pos = scanner.position();
+      while(next<chunks.length && splits[next]<pos)
+        next++;
+      if(next<chunks.length && splits[next]==pos)
+        break;
+      Token token;
+      try{
+        token = scanner.readNextToken();
+      }catch(Scanner_Exception e){
+        error = e;
+        token = null;
+      }
+      if(token==null){
+        next = -1;
+        break;
+      }
+      if(count==tokens.length)
+        tokens = Arrays.copyOf(tokens, 2*count);
+      tokens[count++] = token;
+    }
+    stitched.add(tokens);
+    stitchedCounts.add(count);
+    return next;
+  }
+
+  private static class Chunk{
+    int newlines;
+    Token[] tokens;
+    int count;
+    int stop = -1; //where the scanner gave up before the end of the chunk, or -1
+    Scanner_Exception error; //what it threw there, if it did not just give up
+  }
+
+  /**
+   * Counts the newlines of, or lexes, chunks [from, to), splitting the range in two
+   * until it is a single chunk.
+   */
+  private class Chunk_Task extends RecursiveAction{
+    private static final long serialVersionUID = 1L;
+    private final int from;
+    private final int to;
+    private final boolean counting;
+
+    Chunk_Task(int from, int to, boolean counting){
+      this.from = from;
+      this.to = to;
+      this.counting = counting;
+    }
+
+    protected void compute(){
+      if(to-from>1){
+        int middle = (from+to)>>>1;
+        invokeAll(new Chunk_Task(from, middle, counting), new Chunk_Task(middle, to, counting));
+      }else if(counting)
+        count(from);
+      else
+        lex(from);
+    }
+
+    private void count(int i){
+      int newlines = 0;
+      for(int pos=splits[i];pos<splits[i+1];pos++)
+        if(buffer[pos]=='\n')
+          newlines++;
+      chunks[i].newlines = newlines;
+    }
+
+    private void lex(int i){
+      Chunk chunk = chunks[i];
+      int end = splits[i+1];
+      Table_Scanner scanner = new Table_Scanner(buffer, splits[i], end-splits[i], firstLines[i]);
+      Token[] tokens = new Token[Math.max(16, (end-splits[i])/4)];
+      int count = 0;
+      while(scanner.position()<end){
+        int pos = scanner.position();
+        Token token;
+        try{
+          token = scanner.readNextToken();
+        }catch(Scanner_Exception e){ //left to stitch(), as the chunk may start inside a string
+          chunk.error = e;
+          token = null;
+        }
+        if(token==null){
+          chunk.stop = pos;
+          break;
+        }
+        if(count==tokens.length)
+          tokens = Arrays.copyOf(tokens, 2*count);
+        tokens[count++] = token;
+      }
+      chunk.tokens = tokens;
+      chunk.count = count;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package scanner;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs another lexer on its own thread, ahead of the parser.
+ *
+ * The producer thread drains the source lexer, drops DELETE tokens, and publishes
+ * the rest in fixed size batches through a single producer / single consumer ring
+ * of batches. readNextToken() hands them out on the parser's thread. The input
+ * ends at the first null token; an exception thrown by the source lexer is
+ * rethrown to the parser once it has consumed every token read before it.
+ */
+public class Pipelined_Lexer implements Lexer{
+  private static final int BATCH_SIZE = 512;
+  private static final int RING_SIZE = 64; //batches, power of two
+  private static final int SPINS = 100;
+
+  private final Lexer source;
+  private final Token[][] ring;
+  private volatile long head; //next batch to consume
+  private volatile long tail; //next batch to publish
+  private volatile boolean finished;
+  private volatile Throwable error;
+  private volatile boolean closed;
+
+  private Token[] batch;
+  private int batchPos;
+
+  public Pipelined_Lexer(Lexer source){
+    this.source = source;
+    ring = new Token[RING_SIZE][];
+    Thread producer = new Thread(this::produce, "rpal-lexer");
+    producer.setDaemon(true);
+    producer.start();
+  }
+
+  public Token readNextToken(){
+    if(batch==null || batchPos==batch.length || batch[batchPos]==null){
+      if(!nextBatch())
+        return null;
+    }
+    return batch[batchPos++];
+  }
+
+  /**
+   * Stops the producer early, e.g. after the parser gave up; a producer waiting
+   * on a full ring then returns instead of parking for good.
+   */
+  @Override
+  public void close(){
+    closed = true;
+  }
+
+  private boolean nextBatch(){
+    if(batch!=null)
+      head++; //release the slot of the batch we just finished
+    batch = null;
+    for(int spins=0;head==tail;spins++){
+      if(finished){
+        if(head!=tail)
+          break;
+        rethrow();
+        return false;
+      }
+      idle(spins);
+    }
+    batch = ring[(int)(head&(RING_SIZE-1))];
+    ring[(int)(head&(RING_SIZE-1))] = null;
+    batchPos = 0;
+    if(batch[0]==null){ //empty last batch
+      head++;
+      batch = null;
+      rethrow();
+      return false;
+    }
+    return true;
+  }
+
+  private void produce(){
+    Token[] next = new Token[BATCH_SIZE];
+    int count = 0;
+    try{
+      Token token;
+      while(!closed && (token = source.readNextToken())!=null){
+        if(token.type==TKN_Type.DELETE)
+          continue;
+        next[count++] = token;
+        if(count==BATCH_SIZE){
+          publish(next);
+          next = new Token[BATCH_SIZE];
+          count = 0;
+        }
+      }
+    }catch(Throwable e){
+      error = e;
+    }finally{
+      publish(next); //null terminated, possibly empty
+      finished = true;
+    }
+  }
+
+  private void publish(Token[] next){
+    for(int spins=0;tail-head==RING_SIZE;spins++){
+      if(closed)
+        return;
+      idle(spins);
+    }
+    ring[(int)(tail&(RING_SIZE-1))] = next;
+    tail++; //volatile write publishes the batch
+  }
+
+  private void idle(int spins){
+    if(spins<SPINS)
+      Thread.onSpinWait();
+    else
+      LockSupport.parkNanos(20_000);
+  }
+
+  private void rethrow(){
+    Throwable e = error;
+    if(e==null)
+      return;
+    if(e instanceof RuntimeException)
+      throw (RuntimeException)e;
+    if(e instanceof Error)
+      throw (Error)e;
+    throw new RuntimeException(e);
+  }
+}
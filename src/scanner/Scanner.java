@@ -4,9 +4,8 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.Arrays;
-import java.util.List;
 
 
 //group 44
@@ -14,17 +13,21 @@ import java.util.List;
 /**
  * Scanner
  */
-public class Scanner{
+public class Scanner implements Lexer{
   private BufferedReader buffer;
   private String charRead;
-  private final List<String> reservedID = Arrays.asList(new String[]{"let","in","within","fn","where","aug","or",
-                                                                              "not","gr","ge","ls","le","eq","ne","true",
-                                                                              "false","nil","dummy","rec","and"});
   private int sourceLineNumber;
   
   public Scanner(String inputFile) throws IOException{
+    this(new FileInputStream(new File(inputFile)));
+  }
+
+  /**
+   * Reads the program from a stream, e.g. stdin.
+   */
+  public Scanner(InputStream input){
     sourceLineNumber = 1;
-    buffer = new BufferedReader(new InputStreamReader(new FileInputStream(new File(inputFile))));
+    buffer = new BufferedReader(new InputStreamReader(input));
   }
   
   
@@ -109,10 +112,14 @@ public class Scanner{
     }
     
     String value = sBuilder.toString();
-    if(reservedID.contains(value))
+    int symId = Sym_Table.reservedId(value);
+    if(symId!=Sym_Table.NONE)
       identifier_T.setType(TKN_Type.RESERVED);
+    else
+      symId = Sym_Table.intern(value);
     
-    identifier_T.setValue(value);
+    identifier_T.setSymId(symId);
+    identifier_T.setValue(Sym_Table.name(symId));
     return identifier_T;
   }
 
@@ -136,6 +143,7 @@ public class Scanner{
     }
     
     integer_T.setValue(sBuilder.toString());
+    integer_T.setIntValue(Literal_Codec.decodeInteger(integer_T.value, integer_T.sourceLineNumber));
     return integer_T;
   }
 
@@ -163,6 +171,7 @@ public class Scanner{
     }
     
     opSymbol_T.setValue(sBuilder.toString());
+    opSymbol_T.setKind(Token_Kind.operator(opSymbol_T.value));
     return opSymbol_T;
   }
 
@@ -180,7 +189,7 @@ public class Scanner{
     while(nextChar!=null){ 
       if(nextChar.equals("\'")){ 
         
-        string_T.setValue(sBuilder.toString());
+        string_T.setValue(Literal_Codec.unescape(sBuilder.toString()));
         return string_T;
       }
       else if(Lxcl_Rgx_Patterns.StringPattern.matcher(nextChar).matches()){ 
@@ -0,0 +1,10 @@
+package scanner;
+
+public class Scanner_Exception extends RuntimeException{
+  private static final long serialVersionUID = 1L;
+  
+  public Scanner_Exception(String message){
+    super(message);
+  }
+
+}
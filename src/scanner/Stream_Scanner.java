@@ -0,0 +1,209 @@
+package scanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Table driven scanner over a stream, e.g. a program piped in on stdin.
+ *
+ * Produces the same tokens as {@link Table_Scanner}, but only keeps a fixed size
+ * window of the input: when a token runs into the end of the window, the part of
+ * the token read so far is moved to the front and the rest of the window is
+ * refilled from the stream. The window only grows if a single token is longer
+ * than it, so memory does not depend on the size of the program.
+ */
+public class Stream_Scanner implements Lexer{
+  private static final int BUFFER_SIZE = 64*1024;
+
+  private final Reader reader;
+  private char[] buffer;
+  private int start; //first character of the token being built
+  private int pos;
+  private int limit;
+  private boolean endOfInput;
+  private int sourceLineNumber;
+
+  public Stream_Scanner(InputStream input){
+    this(new InputStreamReader(input));
+  }
+
+  public Stream_Scanner(Reader reader){
+    this.reader = reader;
+    buffer = new char[BUFFER_SIZE];
+    sourceLineNumber = 1;
+  }
+
+  public Token readNextToken(){
+    start = pos;
+    if(!available())
+      return null;
+    char c = buffer[pos];
+    switch(Char_Class.of(c)){
+      case Char_Class.LETTER:
+        return buildIdentifierToken();
+      case Char_Class.DIGIT:
+        return buildIntegerToken();
+      case Char_Class.OPERATOR:
+        pos++;
+        boolean comment = c=='/' && available() && buffer[pos]=='/';
+        pos--;
+        if(comment)
+          return buildCommentToken();
+        return buildOperatorToken();
+      case Char_Class.QUOTE:
+        return buildStringToken();
+      case Char_Class.SPACE:
+        return buildSpaceToken();
+      case Char_Class.PUNCTUATION:
+        return buildPunctuationToken(c);
+      default:
+        pos++;
+        if(c=='\n')
+          sourceLineNumber++;
+        return null;
+    }
+  }
+
+  /**
+   * Whether buffer[pos] holds a character, refilling the window if it does not.
+   */
+  private boolean available(){
+    if(pos<limit)
+      return true;
+    if(endOfInput)
+      return false;
+    if(start>0){ //keep only the token being built
+      System.arraycopy(buffer, start, buffer, 0, limit-start);
+      limit -= start;
+      pos -= start;
+      start = 0;
+    }
+    if(limit==buffer.length) //a single token fills the whole window
+      buffer = Arrays.copyOf(buffer, 2*buffer.length);
+    try{
+      int read = reader.read(buffer, limit, buffer.length-limit);
+      if(read<0){
+        endOfInput = true;
+        reader.close();
+        return false;
+      }
+      limit += read;
+    }catch(IOException e){
+      throw new UncheckedIOException(e);
+    }
+    return pos<limit;
+  }
+
+  private Token buildIdentifierToken(){
+    pos++;
+    while(available() && Char_Class.isIdentifierPart(buffer[pos]))
+      pos++;
+    Token identifier_T = newToken(TKN_Type.RESERVED);
+    int symId = Sym_Table.reservedId(buffer, start, pos-start);
+    if(symId==Sym_Table.NONE){
+      identifier_T.setType(TKN_Type.IDENTIFIER);
+      symId = Sym_Table.intern(buffer, start, pos-start);
+    }
+    identifier_T.setSymId(symId);
+    identifier_T.setValue(Sym_Table.name(symId));
+    return identifier_T;
+  }
+
+  private Token buildIntegerToken(){
+    pos++;
+    while(available() && Char_Class.isDigit(buffer[pos]))
+      pos++;
+    Token integer_T = finishToken(newToken(TKN_Type.INTEGER));
+    integer_T.setIntValue(Literal_Codec.decodeInteger(buffer, start, pos-start, integer_T.sourceLineNumber));
+    return integer_T;
+  }
+
+  private Token buildOperatorToken(){
+    pos++;
+    while(available() && Char_Class.isOperator(buffer[pos]))
+      pos++;
+    Token opSymbol_T = finishToken(newToken(TKN_Type.OPERATOR));
+    opSymbol_T.setKind(Token_Kind.operator(pos-start, buffer[start], pos-start>1 ? buffer[start+1] : 0));
+    return opSymbol_T;
+  }
+
+  /**
+   * The closing quote is consumed but is not part of the value, which is
+   * unescaped. An unterminated string swallows the rest of the input and yields
+   * null, like Scanner does.
+   */
+  private Token buildStringToken(){
+    Token string_T = newToken(TKN_Type.STRING);
+    pos++;
+    while(available() && buffer[pos]!='\''){
+      if(buffer[pos]=='\n')
+        sourceLineNumber++;
+      pos++;
+    }
+    if(!available())
+      return null;
+    string_T.setValue(Literal_Codec.unescape(new String(buffer, start+1, pos-start-1)));
+    pos++;
+    return string_T;
+  }
+
+  private Token buildSpaceToken(){
+    Token delete_T = newToken(TKN_Type.DELETE);
+    while(available() && Char_Class.isSpace(buffer[pos])){
+      if(buffer[pos]=='\n')
+        sourceLineNumber++;
+      pos++;
+    }
+    return finishToken(delete_T);
+  }
+
+  /**
+   * The comment runs up to the end of the line; the newline itself is consumed
+   * but is not part of the value.
+   */
+  private Token buildCommentToken(){
+    Token comment_T = newToken(TKN_Type.DELETE);
+    while(available() && buffer[pos]!='\n')
+      pos++;
+    finishToken(comment_T);
+    if(available()){
+      sourceLineNumber++;
+      pos++;
+    }
+    return comment_T;
+  }
+
+  private Token buildPunctuationToken(char c){
+    Token punctuation_T = newToken(null);
+    if(c=='(')
+      punctuation_T.setType(TKN_Type.L_PAREN);
+    else if(c==')')
+      punctuation_T.setType(TKN_Type.R_PAREN);
+    else if(c==';')
+      punctuation_T.setType(TKN_Type.SEMICOLON);
+    else if(c==',')
+      punctuation_T.setType(TKN_Type.COMMA);
+    pos++;
+    return finishToken(punctuation_T);
+  }
+
+  /**
+   * Scanner stamps a token with the line count after reading its first
+   * character, so a token that starts with a newline is on the next line.
+   */
+  private Token newToken(TKN_Type type){
+    Token token = new Token();
+    token.setType(type);
+    token.setSourceLineNumber(buffer[start]=='\n' ? sourceLineNumber+1 : sourceLineNumber);
+    return token;
+  }
+
+  private Token finishToken(Token token){
+    token.setValue(new String(buffer, start, pos-start));
+    return token;
+  }
+}
@@ -0,0 +1,246 @@
+package scanner;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Symbol table shared by all phases.
+ *
+ * Every identifier is interned into a small integer id with one canonical String
+ * per distinct name, so later phases can compare ids instead of strings. The ids
+ * of the reserved words and of the builtin functions are fixed (the constants
+ * below); ids of user identifiers follow them in order of first appearance.
+ *
+ * Reserved words are recognized with a perfect hash on (first char, last char,
+ * length), so a keyword check is one table probe and one compare.
+ */
+public final class Sym_Table{
+  public static final int NONE = -1;
+
+  //reserved words
+  public static final int LET = 0;
+  public static final int IN = 1;
+  public static final int WITHIN = 2;
+  public static final int FN = 3;
+  public static final int WHERE = 4;
+  public static final int AUG = 5;
+  public static final int OR = 6;
+  public static final int NOT = 7;
+  public static final int GR = 8;
+  public static final int GE = 9;
+  public static final int LS = 10;
+  public static final int LE = 11;
+  public static final int EQ = 12;
+  public static final int NE = 13;
+  public static final int TRUE = 14;
+  public static final int FALSE = 15;
+  public static final int NIL = 16;
+  public static final int DUMMY = 17;
+  public static final int REC = 18;
+  public static final int AND = 19;
+
+  //builtin functions
+  public static final int ISINTEGER = 20;
+  public static final int ISSTRING = 21;
+  public static final int ISTUPLE = 22;
+  public static final int ISDUMMY = 23;
+  public static final int ISTRUTHVALUE = 24;
+  public static final int ISFUNCTION = 25;
+  public static final int ITOS = 26;
+  public static final int ORDER = 27;
+  public static final int CONC = 28;
+  public static final int CONC_LOWER = 29; //typos
+  public static final int STERN = 30;
+  public static final int STEM = 31;
+  public static final int NULL = 32;
+  public static final int PRINT = 33;
+  public static final int PRINT_LOWER = 34; //typos
+  public static final int NEG = 35;
+
+  private static final String[] RESERVED = {"let","in","within","fn","where","aug","or",
+                                            "not","gr","ge","ls","le","eq","ne","true",
+                                            "false","nil","dummy","rec","and"};
+  private static final String[] BUILTINS = {"Isinteger","Isstring","Istuple","Isdummy","Istruthvalue",
+                                            "Isfunction","ItoS","Order","Conc","conc","Stern","Stem",
+                                            "Null","Print","print","neg"};
+
+  //perfect hash of the reserved words: (first + 20*last + length) & 63 is collision free
+  private static final int[] RESERVED_SLOTS = new int[64];
+
+  //open addressing table of all interned names; slots hold id+1, 0 is empty
+  private static int[] slots = new int[1024];
+  private static int[] hashes = new int[64];
+  private static String[] names = new String[64];
+  private static int size;
+
+  static{
+    Arrays.fill(RESERVED_SLOTS, NONE);
+    for(int id=0;id<RESERVED.length;id++){
+      String word = RESERVED[id];
+      int slot = reservedHash(word.charAt(0), word.charAt(word.length()-1), word.length());
+      if(RESERVED_SLOTS[slot]!=NONE)
+        throw new IllegalStateException("reserved word hash is not perfect: "+word);
+      RESERVED_SLOTS[slot] = id;
+      intern(word);
+    }
+    for(String builtin: BUILTINS)
+      intern(builtin);
+  }
+
+  private Sym_Table(){
+  }
+
+  private static int reservedHash(int first, int last, int length){
+    return (first+20*last+length)&63;
+  }
+
+  /**
+   * Id of the reserved word in buffer[offset..offset+length), or NONE.
+   */
+  public static int reservedId(char[] buffer, int offset, int length){
+    int id = RESERVED_SLOTS[reservedHash(buffer[offset], buffer[offset+length-1], length)];
+    if(id==NONE || RESERVED[id].length()!=length)
+      return NONE;
+    for(int i=0;i<length;i++)
+      if(buffer[offset+i]!=RESERVED[id].charAt(i))
+        return NONE;
+    return id;
+  }
+
+  public static int reservedId(ByteBuffer buffer, int offset, int length){
+    int id = RESERVED_SLOTS[reservedHash(buffer.get(offset)&0xff, buffer.get(offset+length-1)&0xff, length)];
+    if(id==NONE || RESERVED[id].length()!=length)
+      return NONE;
+    for(int i=0;i<length;i++)
+      if((buffer.get(offset+i)&0xff)!=RESERVED[id].charAt(i))
+        return NONE;
+    return id;
+  }
+
+  public static int reservedId(String value){
+    int length = value.length();
+    int id = RESERVED_SLOTS[reservedHash(value.charAt(0), value.charAt(length-1), length)];
+    if(id==NONE || !RESERVED[id].equals(value))
+      return NONE;
+    return id;
+  }
+
+  /**
+   * Id of the name in buffer[offset..offset+length) if it is interned already, or
+   * NONE; nothing is added.
+   */
+  public static synchronized int find(char[] buffer, int offset, int length){
+    int hash = 0;
+    for(int i=0;i<length;i++)
+      hash = 31*hash+buffer[offset+i];
+    int mask = slots.length-1;
+    for(int slot=hash&mask;;slot=(slot+1)&mask){
+      int id = slots[slot]-1;
+      if(id<0)
+        return NONE;
+      if(hashes[id]==hash && sameName(names[id], buffer, offset, length))
+        return id;
+    }
+  }
+
+  /**
+   * Id of the name in buffer[offset..offset+length), interning it if it is new.
+   */
+  public static synchronized int intern(char[] buffer, int offset, int length){
+    int hash = 0;
+    for(int i=0;i<length;i++)
+      hash = 31*hash+buffer[offset+i];
+    int mask = slots.length-1;
+    for(int slot=hash&mask;;slot=(slot+1)&mask){
+      int id = slots[slot]-1;
+      if(id<0)
+        return add(new String(buffer, offset, length), hash, slot);
+      if(hashes[id]==hash && sameName(names[id], buffer, offset, length))
+        return id;
+    }
+  }
+
+  public static synchronized int intern(ByteBuffer buffer, int offset, int length){
+    int hash = 0;
+    for(int i=0;i<length;i++)
+      hash = 31*hash+(buffer.get(offset+i)&0xff);
+    int mask = slots.length-1;
+    for(int slot=hash&mask;;slot=(slot+1)&mask){
+      int id = slots[slot]-1;
+      if(id<0){
+        char[] text = new char[length];
+        for(int i=0;i<length;i++)
+          text[i] = (char)(buffer.get(offset+i)&0xff);
+        return add(new String(text), hash, slot);
+      }
+      if(hashes[id]==hash && sameName(names[id], buffer, offset, length))
+        return id;
+    }
+  }
+
+  public static synchronized int intern(String name){
+    int hash = name.hashCode();
+    int mask = slots.length-1;
+    for(int slot=hash&mask;;slot=(slot+1)&mask){
+      int id = slots[slot]-1;
+      if(id<0)
+        return add(name, hash, slot);
+      if(hashes[id]==hash && names[id].equals(name))
+        return id;
+    }
+  }
+
+  /**
+   * Canonical String of an interned id.
+   */
+  public static synchronized String name(int id){
+    return names[id];
+  }
+
+  public static boolean isBuiltin(int id){
+    return id>=ISINTEGER && id<=NEG;
+  }
+
+  private static int add(String name, int hash, int slot){
+    int id = size++;
+    if(id==names.length){
+      names = Arrays.copyOf(names, 2*id);
+      hashes = Arrays.copyOf(hashes, 2*id);
+    }
+    names[id] = name;
+    hashes[id] = hash;
+    slots[slot] = id+1;
+    if(2*size>slots.length)
+      rehash();
+    return id;
+  }
+
+  private static void rehash(){
+    slots = new int[2*slots.length];
+    int mask = slots.length-1;
+    for(int id=0;id<size;id++){
+      int slot = hashes[id]&mask;
+      while(slots[slot]!=0)
+        slot = (slot+1)&mask;
+      slots[slot] = id+1;
+    }
+  }
+
+  private static boolean sameName(String name, char[] buffer, int offset, int length){
+    if(name.length()!=length)
+      return false;
+    for(int i=0;i<length;i++)
+      if(name.charAt(i)!=buffer[offset+i])
+        return false;
+    return true;
+  }
+
+  private static boolean sameName(String name, ByteBuffer buffer, int offset, int length){
+    if(name.length()!=length)
+      return false;
+    for(int i=0;i<length;i++)
+      if(name.charAt(i)!=(buffer.get(offset+i)&0xff))
+        return false;
+    return true;
+  }
+}
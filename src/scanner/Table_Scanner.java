@@ -0,0 +1,201 @@
+package scanner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Table driven scanner.
+ *
+ * Produces the same tokens as {@link Scanner}, but works over a char buffer:
+ * every character is classified through {@link Char_Class} instead of being
+ * turned into a one character String and matched against a regex, and the
+ * token text is cut out of the buffer by offset once the token is complete.
+ */
+public class Table_Scanner implements Lexer{
+  private char[] buffer;
+  private int pos;
+  private int limit;
+  private int sourceLineNumber;
+  private boolean interning = true;
+
+  public Table_Scanner(String inputFile) throws IOException{
+    this(new String(Files.readAllBytes(Paths.get(inputFile))).toCharArray());
+  }
+
+  public Table_Scanner(char[] source){
+    this(source, 0, source.length);
+  }
+
+  /**
+   * Scans source[offset..offset+length).
+   */
+  public Table_Scanner(char[] source, int offset, int length){
+    this(source, offset, length, 1);
+  }
+
+  /**
+   * Scans source[offset..offset+length), which starts on line firstLine.
+   */
+  public Table_Scanner(char[] source, int offset, int length, int firstLine){
+    buffer = source;
+    pos = offset;
+    limit = offset+length;
+    sourceLineNumber = firstLine;
+  }
+
+  /**
+   * With interning off, an identifier that is not in the symbol table yet is not
+   * added to it: its token gets its own String and no symbol id (NONE). Reserved
+   * words, builtins and names interned before still get their ids.
+   */
+  public void setInterning(boolean interning){
+    this.interning = interning;
+  }
+
+  /**
+   * Offset in the buffer of the next character to be scanned.
+   */
+  public int position(){
+    return pos;
+  }
+
+  public Token readNextToken(){
+    if(pos>=limit)
+      return null;
+    char c = buffer[pos];
+    switch(Char_Class.of(c)){
+      case Char_Class.LETTER:
+        return buildIdentifierToken();
+      case Char_Class.DIGIT:
+        return buildIntegerToken();
+      case Char_Class.OPERATOR:
+        if(c=='/' && pos+1<limit && buffer[pos+1]=='/')
+          return buildCommentToken();
+        return buildOperatorToken();
+      case Char_Class.QUOTE:
+        return buildStringToken();
+      case Char_Class.SPACE:
+        return buildSpaceToken();
+      case Char_Class.PUNCTUATION:
+        return buildPunctuationToken(c);
+      default:
+        //Scanner gives up on characters it does not know; so do we
+        pos++;
+        if(c=='\n')
+          sourceLineNumber++;
+        return null;
+    }
+  }
+
+  private Token buildIdentifierToken(){
+    int start = pos++;
+    while(pos<limit && Char_Class.isIdentifierPart(buffer[pos]))
+      pos++;
+    Token identifier_T = newToken(TKN_Type.RESERVED, start);
+    int symId = Sym_Table.reservedId(buffer, start, pos-start);
+    if(symId==Sym_Table.NONE){
+      identifier_T.setType(TKN_Type.IDENTIFIER);
+      symId = interning ? Sym_Table.intern(buffer, start, pos-start) : Sym_Table.find(buffer, start, pos-start);
+    }
+    identifier_T.setSymId(symId);
+    identifier_T.setValue(symId==Sym_Table.NONE ? new String(buffer, start, pos-start) : Sym_Table.name(symId));
+    return identifier_T;
+  }
+
+  private Token buildIntegerToken(){
+    int start = pos++;
+    while(pos<limit && Char_Class.isDigit(buffer[pos]))
+      pos++;
+    Token integer_T = finishToken(newToken(TKN_Type.INTEGER, start), start, pos);
+    integer_T.setIntValue(Literal_Codec.decodeInteger(buffer, start, pos-start, integer_T.sourceLineNumber));
+    return integer_T;
+  }
+
+  private Token buildOperatorToken(){
+    int start = pos++;
+    while(pos<limit && Char_Class.isOperator(buffer[pos]))
+      pos++;
+    Token opSymbol_T = finishToken(newToken(TKN_Type.OPERATOR, start), start, pos);
+    opSymbol_T.setKind(Token_Kind.operator(pos-start, buffer[start], pos-start>1 ? buffer[start+1] : 0));
+    return opSymbol_T;
+  }
+
+  /**
+   * The closing quote is consumed but is not part of the value, which is
+   * unescaped. An unterminated string swallows the rest of the input and yields
+   * null, like Scanner does.
+   */
+  private Token buildStringToken(){
+    Token string_T = newToken(TKN_Type.STRING, pos);
+    int start = ++pos;
+    while(pos<limit && buffer[pos]!='\''){
+      if(buffer[pos]=='\n')
+        sourceLineNumber++;
+      pos++;
+    }
+    if(pos>=limit)
+      return null;
+    string_T.setValue(Literal_Codec.unescape(new String(buffer, start, pos-start)));
+    pos++;
+    return string_T;
+  }
+
+  private Token buildSpaceToken(){
+    int start = pos;
+    Token delete_T = newToken(TKN_Type.DELETE, start);
+    while(pos<limit && Char_Class.isSpace(buffer[pos])){
+      if(buffer[pos]=='\n')
+        sourceLineNumber++;
+      pos++;
+    }
+    return finishToken(delete_T, start, pos);
+  }
+
+  /**
+   * The comment runs up to the end of the line; the newline itself is consumed
+   * but is not part of the value.
+   */
+  private Token buildCommentToken(){
+    int start = pos;
+    Token comment_T = newToken(TKN_Type.DELETE, start);
+    while(pos<limit && buffer[pos]!='\n')
+      pos++;
+    finishToken(comment_T, start, pos);
+    if(pos<limit){
+      sourceLineNumber++;
+      pos++;
+    }
+    return comment_T;
+  }
+
+  private Token buildPunctuationToken(char c){
+    Token punctuation_T = newToken(null, pos);
+    if(c=='(')
+      punctuation_T.setType(TKN_Type.L_PAREN);
+    else if(c==')')
+      punctuation_T.setType(TKN_Type.R_PAREN);
+    else if(c==';')
+      punctuation_T.setType(TKN_Type.SEMICOLON);
+    else if(c==',')
+      punctuation_T.setType(TKN_Type.COMMA);
+    pos++;
+    return finishToken(punctuation_T, pos-1, pos);
+  }
+
+  /**
+   * Scanner stamps a token with the line count after reading its first
+   * character, so a token that starts with a newline is on the next line.
+   */
+  private Token newToken(TKN_Type type, int start){
+    Token token = new Token();
+    token.setType(type);
+    token.setSourceLineNumber(buffer[start]=='\n' ? sourceLineNumber+1 : sourceLineNumber);
+    return token;
+  }
+
+  private Token finishToken(Token token, int start, int end){
+    token.setValue(new String(buffer, start, end-start));
+    return token;
+  }
+}
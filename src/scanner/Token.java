@@ -1,18 +1,38 @@
 package scanner;
 
+import java.nio.ByteBuffer;
+
 /**
  * Token given by the scanner to the parser
  *
+ * A token either carries its text in value, or is a view (offset, length) into
+ * the source buffer, in which case the text is only turned into a String when
+ * getValue() is called. Literals are decoded: an INTEGER carries its value in
+ * intValue, and the value of a STRING is the unescaped string.
+ *
+ * kind is kept up to date by setType and setSymId; scanners set the kind of an
+ * operator from its text with setKind.
  */
 public class Token{
   public TKN_Type type;
   public  String value;
   public int sourceLineNumber;
+  public int symId = Sym_Table.NONE; //identifiers and reserved words only
+  public int intValue; //integers only
+  public int kind = Token_Kind.NONE;
+  private ByteBuffer source;
+  private int offset;
+  private int length;
   
  
   
   public void setType(TKN_Type type){
     this.type = type;
+    this.kind = Token_Kind.of(type);
+  }
+
+  public void setKind(int kind){
+    this.kind = kind;
   }
   
   
@@ -20,7 +40,48 @@ public class Token{
     this.value = value;
   }
 
-  
+  /**
+   * Makes this token a view of source[offset..offset+length) (ASCII).
+   */
+  public void setSource(ByteBuffer source, int offset, int length){
+    this.source = source;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  public String getValue(){
+    if(value==null && source!=null){
+      char[] text = new char[length];
+      for(int i=0;i<length;i++)
+        text[i] = (char)(source.get(offset+i)&0xff);
+      value = type==TKN_Type.STRING ? Literal_Codec.unescape(new String(text)) : new String(text);
+    }
+    return value;
+  }
+
+  /**
+   * Same as getValue().equals(value), without materializing a view.
+   */
+  public boolean hasValue(String value){
+    if(this.value!=null || source==null || type==TKN_Type.STRING)
+      return value.equals(getValue());
+    if(value.length()!=length)
+      return false;
+    for(int i=0;i<length;i++)
+      if((source.get(offset+i)&0xff)!=value.charAt(i))
+        return false;
+    return true;
+  }
+
+  public void setIntValue(int intValue){
+    this.intValue = intValue;
+  }
+
+  public void setSymId(int symId){
+    this.symId = symId;
+    if(type==TKN_Type.RESERVED)
+      kind = symId;
+  }
 
   public void setSourceLineNumber(int sourceLineNumber){
     this.sourceLineNumber = sourceLineNumber;
@@ -0,0 +1,128 @@
+package scanner;
+
+/**
+ * Dense integer kinds of tokens, so the parser can switch on a token once instead
+ * of comparing its type and text against every alternative.
+ *
+ * The kinds of the reserved words are their {@link Sym_Table} ids. Every operator
+ * the grammar mentions has a kind of its own; any other operator is OPERATOR.
+ * The kinds of the remaining token types follow.
+ */
+public final class Token_Kind{
+  //reserved words
+  public static final int LET = Sym_Table.LET;
+  public static final int IN = Sym_Table.IN;
+  public static final int WITHIN = Sym_Table.WITHIN;
+  public static final int FN = Sym_Table.FN;
+  public static final int WHERE = Sym_Table.WHERE;
+  public static final int AUG = Sym_Table.AUG;
+  public static final int OR = Sym_Table.OR;
+  public static final int NOT = Sym_Table.NOT;
+  public static final int GR = Sym_Table.GR;
+  public static final int GE = Sym_Table.GE;
+  public static final int LS = Sym_Table.LS;
+  public static final int LE = Sym_Table.LE;
+  public static final int EQ = Sym_Table.EQ;
+  public static final int NE = Sym_Table.NE;
+  public static final int TRUE = Sym_Table.TRUE;
+  public static final int FALSE = Sym_Table.FALSE;
+  public static final int NIL = Sym_Table.NIL;
+  public static final int DUMMY = Sym_Table.DUMMY;
+  public static final int REC = Sym_Table.REC;
+  public static final int AND = Sym_Table.AND;
+
+  //operators
+  public static final int PLUS = 20;
+  public static final int MINUS = 21;
+  public static final int TIMES = 22;
+  public static final int DIVIDE = 23;
+  public static final int POWER = 24; //**
+  public static final int AT = 25;
+  public static final int AMPERSAND = 26;
+  public static final int BAR = 27;
+  public static final int ARROW = 28; //->
+  public static final int DOT = 29;
+  public static final int EQUALS = 30;
+  public static final int GREATER = 31;
+  public static final int GREATER_EQUAL = 32;
+  public static final int LESS = 33;
+  public static final int LESS_EQUAL = 34;
+  public static final int OPERATOR_COMMA = 35; //',' is an operator symbol
+  public static final int OPERATOR = 36; //any other operator
+
+  //other token types
+  public static final int IDENTIFIER = 37;
+  public static final int INTEGER = 38;
+  public static final int STRING = 39;
+  public static final int L_PAREN = 40;
+  public static final int R_PAREN = 41;
+  public static final int SEMICOLON = 42;
+  public static final int COMMA = 43;
+  public static final int DELETE = 44;
+
+  public static final int NONE = -1; //no type yet, or end of input
+
+  private Token_Kind(){
+  }
+
+  /**
+   * Kind of a token of the given type; the kinds of reserved words and operators
+   * depend on their text as well.
+   */
+  public static int of(TKN_Type type){
+    if(type==null)
+      return NONE;
+    switch(type){
+      case IDENTIFIER: return IDENTIFIER;
+      case INTEGER: return INTEGER;
+      case STRING: return STRING;
+      case OPERATOR: return OPERATOR;
+      case DELETE: return DELETE;
+      case L_PAREN: return L_PAREN;
+      case R_PAREN: return R_PAREN;
+      case SEMICOLON: return SEMICOLON;
+      case COMMA: return COMMA;
+      default: return NONE;
+    }
+  }
+
+  /**
+   * Kind of an operator of the given length that starts with first and second
+   * (second is ignored for a single character); the grammar's operators are at
+   * most two characters long.
+   */
+  public static int operator(int length, int first, int second){
+    if(length==1){
+      switch(first){
+        case '+': return PLUS;
+        case '-': return MINUS;
+        case '*': return TIMES;
+        case '/': return DIVIDE;
+        case '@': return AT;
+        case '&': return AMPERSAND;
+        case '|': return BAR;
+        case '.': return DOT;
+        case '=': return EQUALS;
+        case '>': return GREATER;
+        case '<': return LESS;
+        case ',': return OPERATOR_COMMA;
+        default: return OPERATOR;
+      }
+    }
+    if(length==2){
+      if(first=='*' && second=='*')
+        return POWER;
+      if(first=='-' && second=='>')
+        return ARROW;
+      if(first=='>' && second=='=')
+        return GREATER_EQUAL;
+      if(first=='<' && second=='=')
+        return LESS_EQUAL;
+    }
+    return OPERATOR;
+  }
+
+  public static int operator(String value){
+    return operator(value.length(), value.charAt(0), value.length()>1 ? value.charAt(1) : 0);
+  }
+}